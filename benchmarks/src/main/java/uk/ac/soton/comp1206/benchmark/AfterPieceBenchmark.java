@@ -0,0 +1,81 @@
+package uk.ac.soton.comp1206.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.soton.comp1206.game.GameEngine;
+import uk.ac.soton.comp1206.game.Grid;
+
+/**
+ * Benchmarks for the line clearing logic run after every piece. Game.afterPiece only adds sounds and property
+ * updates around GameEngine.afterPiece, so the engine is measured directly to keep audio out of the numbers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AfterPieceBenchmark {
+
+    /**
+     * Number of rows and columns of the board
+     */
+    @Param({"5", "8", "16", "32", "64"})
+    public int size;
+
+    /**
+     * Engine whose board has no full lines
+     */
+    private GameEngine noLines;
+
+    /**
+     * Engine whose board has a row and a column filled before each call
+     */
+    private GameEngine twoLines;
+
+    /**
+     * Build the engines
+     */
+    @Setup
+    public void setup() {
+        noLines = new GameEngine(size, size);
+        Grid grid = noLines.getGrid();
+        for (int i = 0; i < size - 1; i++) {
+            grid.set(i, i + 1, 1);
+        }
+        twoLines = new GameEngine(size, size);
+    }
+
+    /**
+     * Check for lines after a move which does not complete any
+     * @return number of lines cleared
+     */
+    @Benchmark
+    public int afterPieceNoLines() {
+        return noLines.afterPiece();
+    }
+
+    /**
+     * Fill the first row and column, then clear them
+     * @return number of lines cleared
+     */
+    @Benchmark
+    public int afterPieceTwoLines() {
+        Grid grid = twoLines.getGrid();
+        for (int i = 0; i < size; i++) {
+            grid.set(i, 0, 1);
+            grid.set(0, i, 1);
+        }
+        return twoLines.afterPiece();
+    }
+}
@@ -0,0 +1,30 @@
+package uk.ac.soton.comp1206.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point for the benchmarks jar. Accepts the normal JMH command line options, and always attaches the GC
+ * profiler so the allocation rate of each benchmark is reported next to its throughput.
+ */
+public class BenchmarkRunner {
+
+    /**
+     * Run the benchmarks
+     * @param args JMH command line options, e.g. a benchmark name pattern or "-rf json"
+     * @throws RunnerException if a benchmark fails
+     * @throws CommandLineOptionException if the options cannot be parsed
+     */
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options options = new OptionsBuilder()
+            .parent(new CommandLineOptions(args))
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+    }
+}
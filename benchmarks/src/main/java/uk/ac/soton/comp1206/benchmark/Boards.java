@@ -0,0 +1,53 @@
+package uk.ac.soton.comp1206.benchmark;
+
+import java.util.SplittableRandom;
+import uk.ac.soton.comp1206.game.GamePiece;
+import uk.ac.soton.comp1206.game.Grid;
+import uk.ac.soton.comp1206.game.PieceShape;
+
+/**
+ * Shared fixtures for the benchmarks, so every benchmark sees the same boards and pieces for a given size
+ */
+final class Boards {
+
+    /**
+     * Seed used for every random board, so runs are comparable
+     */
+    static final long SEED = 1206;
+
+    private Boards() {
+    }
+
+    /**
+     * Create a square grid with roughly the given fraction of cells filled
+     * @param size number of rows and columns
+     * @param fill fraction of cells to fill, from 0 to 1
+     * @return the filled grid
+     */
+    static Grid randomGrid(int size, double fill) {
+        SplittableRandom random = new SplittableRandom(SEED);
+        Grid grid = new Grid(size, size);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                if (random.nextDouble() < fill) {
+                    grid.set(x, y, 1 + random.nextInt(GamePiece.PIECES));
+                }
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Create one piece of every type in every rotation
+     * @return all 60 piece and rotation combinations
+     */
+    static GamePiece[] allPieces() {
+        GamePiece[] pieces = new GamePiece[GamePiece.PIECES * PieceShape.ROTATIONS];
+        for (int piece = 0; piece < GamePiece.PIECES; piece++) {
+            for (int rotation = 0; rotation < PieceShape.ROTATIONS; rotation++) {
+                pieces[piece * PieceShape.ROTATIONS + rotation] = GamePiece.createPiece(piece, rotation);
+            }
+        }
+        return pieces;
+    }
+}
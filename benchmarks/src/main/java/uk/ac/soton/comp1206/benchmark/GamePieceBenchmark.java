@@ -0,0 +1,63 @@
+package uk.ac.soton.comp1206.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.soton.comp1206.game.GamePiece;
+
+/**
+ * Benchmarks for creating and rotating pieces
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GamePieceBenchmark {
+
+    /**
+     * Piece that is rotated by the benchmark
+     */
+    private GamePiece piece;
+
+    /**
+     * Counter used to step through the pieces
+     */
+    private int step;
+
+    /**
+     * Create the piece to rotate
+     */
+    @Setup
+    public void setup() {
+        piece = GamePiece.createPiece(5);
+    }
+
+    /**
+     * Rotate a piece once clockwise
+     * @return the rotated piece
+     */
+    @Benchmark
+    public GamePiece rotate() {
+        piece.rotate();
+        return piece;
+    }
+
+    /**
+     * Create a new piece, stepping through every piece in turn
+     * @return the created piece
+     */
+    @Benchmark
+    public GamePiece createPiece() {
+        return GamePiece.createPiece(step++ % GamePiece.PIECES);
+    }
+}
@@ -0,0 +1,115 @@
+package uk.ac.soton.comp1206.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.soton.comp1206.game.GamePiece;
+import uk.ac.soton.comp1206.game.Grid;
+
+/**
+ * Benchmarks for the Grid operations used on every move: checking a placement, playing a piece, and
+ * flattening the board to send to the server.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GridBenchmark {
+
+    /**
+     * Number of rows and columns of the board
+     */
+    @Param({"5", "8", "16", "32", "64"})
+    public int size;
+
+    /**
+     * Board about half full, used for placement checks and flattening
+     */
+    private Grid filledGrid;
+
+    /**
+     * Board that pieces are played onto, cleared whenever it is full
+     */
+    private Grid playGrid;
+
+    /**
+     * Every piece in every rotation
+     */
+    private GamePiece[] pieces;
+
+    /**
+     * The Plus piece, which tiles the board without overlapping when played every 3 cells
+     */
+    private GamePiece plus;
+
+    /**
+     * Counter used to step through pieces and positions
+     */
+    private int step;
+
+    /**
+     * Build the boards and pieces
+     */
+    @Setup
+    public void setup() {
+        filledGrid = Boards.randomGrid(size, 0.5);
+        playGrid = new Grid(size, size);
+        pieces = Boards.allPieces();
+        plus = GamePiece.createPiece(2);
+    }
+
+    /**
+     * Check one piece at one position, stepping through every piece and position in turn
+     * @return whether the piece could be played
+     */
+    @Benchmark
+    public boolean canPlayPiece() {
+        int current = step++;
+        int cell = current % (size * size);
+        return filledGrid.canPlayPiece(pieces[current % pieces.length], cell % size, cell / size);
+    }
+
+    /**
+     * Play a piece onto the board, tiling it with Plus pieces and clearing it once it is covered
+     * @return the board
+     */
+    @Benchmark
+    public Grid playPiece() {
+        int tiles = size / 3;
+        int tile = step++ % (tiles * tiles);
+        if (tile == 0) {
+            playGrid.clear();
+        }
+        playGrid.playPiece(plus, 1 + 3 * (tile % tiles), 1 + 3 * (tile / tiles));
+        return playGrid;
+    }
+
+    /**
+     * Find every legal placement of one piece, stepping through every piece in turn
+     * @return the legal placements
+     */
+    @Benchmark
+    public long[] getLegalPlacements() {
+        return filledGrid.getLegalPlacements(pieces[step++ % pieces.length]);
+    }
+
+    /**
+     * Flatten the board into the string sent to the server
+     * @return the flattened board
+     */
+    @Benchmark
+    public String getFlattenedGrid() {
+        return filledGrid.getFlattenedGrid();
+    }
+}
@@ -0,0 +1,74 @@
+package uk.ac.soton.comp1206.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.soton.comp1206.component.GameBoard;
+import uk.ac.soton.comp1206.component.OtherPlayerBoard;
+
+/**
+ * Benchmarks for applying a board received from the server to an opponent's board. The board is a JavaFX
+ * component, but the toolkit does not need to be running to build it or update its grid.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OtherPlayerBoardBenchmark {
+
+    /**
+     * Number of rows and columns of the board
+     */
+    @Param({"5", "8", "16", "32", "64"})
+    public int size;
+
+    /**
+     * The board being updated
+     */
+    private OtherPlayerBoard board;
+
+    /**
+     * Two different boards, alternated so every update changes cells
+     */
+    private String[] messages;
+
+    /**
+     * Counter used to alternate the boards
+     */
+    private int step;
+
+    /**
+     * Build the board and the messages
+     */
+    @Setup
+    public void setup() {
+        // The single canvas renderer repaints on the JavaFX pulse, which needs the toolkit running
+        System.setProperty(GameBoard.RENDERER_PROPERTY, "blocks");
+        board = new OtherPlayerBoard(size, size, 100, 100);
+        messages = new String[] {
+            Boards.randomGrid(size, 0.5).getFlattenedGrid(),
+            Boards.randomGrid(size, 0.3).getFlattenedGrid()
+        };
+    }
+
+    /**
+     * Apply a full board update
+     * @return the board
+     */
+    @Benchmark
+    public OtherPlayerBoard updateBoard() {
+        board.updateBoard(messages[step++ & 1]);
+        return board;
+    }
+}
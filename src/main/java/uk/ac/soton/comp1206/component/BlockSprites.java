@@ -0,0 +1,207 @@
+package uk.ac.soton.comp1206.component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javafx.application.Platform;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.effect.GaussianBlur;
+import javafx.scene.effect.Glow;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.CycleMethod;
+import javafx.scene.paint.LinearGradient;
+import javafx.scene.paint.Stop;
+import javafx.stage.Screen;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Pre-rendered images of every block colour at one block size, with and without the hover outline. Each sprite is
+ * drawn with the blur and glow effects once, the first time it is needed, and from then on painting a block is a
+ * single image copy.
+ *
+ * Sprites can only be rendered on the JavaFX thread, since that is where canvases are snapshotted. Off that thread
+ * get returns null and blocks fall back to drawing themselves directly.
+ */
+class BlockSprites {
+
+    private static final Logger logger = LogManager.getLogger(BlockSprites.class);
+
+    /**
+     * Sprite sets for each block size, keyed by the width and height
+     */
+    private static final Map<Long, BlockSprites> SIZES = new ConcurrentHashMap<>();
+
+    /**
+     * Width of a block
+     */
+    private final double width;
+
+    /**
+     * Height of a block
+     */
+    private final double height;
+
+    /**
+     * Rendered sprites, indexed by colour and then hover, or null until first needed
+     */
+    private final WritableImage[] sprites = new WritableImage[GameBlock.COLOURS.length * 2];
+
+    /**
+     * Create an empty sprite set
+     * @param width width of a block
+     * @param height height of a block
+     */
+    private BlockSprites(double width, double height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Get the sprites for blocks of a given size, shared by every block of that size
+     * @param width width of a block
+     * @param height height of a block
+     * @return the sprite set
+     */
+    static BlockSprites forSize(double width, double height) {
+        long key = ((long) Float.floatToIntBits((float) width) << 32) | (Float.floatToIntBits((float) height) & 0xFFFFFFFFL);
+        return SIZES.computeIfAbsent(key, k -> new BlockSprites(width, height));
+    }
+
+    /**
+     * Get the sprite for a block, rendering it if this is the first time it has been needed
+     * @param value the block value, which selects the colour
+     * @param hover whether to include the hover outline
+     * @return the sprite, or null if called off the JavaFX thread before it has been rendered
+     */
+    WritableImage get(int value, boolean hover) {
+        int index = value * 2 + (hover ? 1 : 0);
+        WritableImage sprite = sprites[index];
+        if (sprite == null) {
+            if (!Platform.isFxApplicationThread()) return null;
+            sprite = render(value, hover);
+            sprites[index] = sprite;
+        }
+        return sprite;
+    }
+
+    /**
+     * Render a sprite onto an offscreen canvas at the screen's output scale, so it stays sharp on high DPI displays
+     * @param value the block value
+     * @param hover whether to include the hover outline
+     * @return the rendered sprite
+     */
+    private WritableImage render(int value, boolean hover) {
+        double scale = Screen.getPrimary().getOutputScaleX();
+        Canvas canvas = new Canvas(Math.ceil(width * scale), Math.ceil(height * scale));
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        gc.scale(scale, scale);
+        paint(gc, width, height, value, hover);
+
+        SnapshotParameters parameters = new SnapshotParameters();
+        parameters.setFill(Color.TRANSPARENT);
+        logger.debug("Rendering block sprite {}{} at {}x{}", value, hover ? " (hover)" : "", width, height);
+        return canvas.snapshot(parameters, null);
+    }
+
+    /**
+     * Draw a block directly, with all of its effects
+     * @param gc where to draw
+     * @param width width of the block
+     * @param height height of the block
+     * @param value the block value, which selects the colour
+     * @param hover whether to draw the hover outline
+     */
+    static void paint(GraphicsContext gc, double width, double height, int value, boolean hover) {
+        if (value == 0) {
+            paintEmpty(gc, width, height);
+        } else {
+            paintColor(gc, width, height, GameBlock.COLOURS[value]);
+        }
+        if (hover) {
+            // Change outline of the block to red
+            gc.setStroke(Color.RED);
+            gc.setLineWidth(2);
+            gc.strokeRoundRect(4, 4, width - 8, height - 8, 10, 10);
+        }
+    }
+
+    /**
+     * Draw the line clear fade over a block: a green wash which fades away as the effect progresses
+     * @param gc where to draw
+     * @param x left edge of the block
+     * @param y top edge of the block
+     * @param width width of the block
+     * @param height height of the block
+     * @param progress how far through the fade the block is, from 0 to 1
+     */
+    static void paintFade(GraphicsContext gc, double x, double y, double width, double height, double progress) {
+        // Apply the green color with fading opacity
+        gc.setFill(Color.rgb(0, 255, 0, 1.0 - progress));
+        gc.fillRoundRect(x, y, width, height, 10, 10);
+    }
+
+    /**
+     * Draw an empty block
+     * @param gc where to draw
+     * @param width width of the block
+     * @param height height of the block
+     */
+    static void paintEmpty(GraphicsContext gc, double width, double height) {
+        // Semi-transparent grey background
+        Color backgroundColor = Color.rgb(128, 128, 128, 0.3);
+        gc.setFill(backgroundColor);
+        gc.fillRoundRect(0, 0, width, height, 10, 10);
+
+        // Neon sign-like outline
+        gc.setStroke(Color.rgb(0, 0, 0));
+        gc.setLineWidth(2);
+        gc.setEffect(new Glow(0.8));
+        gc.strokeRoundRect(1, 1, width - 2, height - 2, 8, 8);
+        gc.setEffect(null);
+
+        // Inner neon sign-like outline
+        gc.setStroke(Color.rgb(0, 0, 0));
+        gc.setLineWidth(1);
+        gc.setEffect(new Glow(0.6));
+        gc.strokeRoundRect(4, 4, width - 8, height - 8, 6, 6);
+        gc.setEffect(null);
+    }
+
+    /**
+     * Draw a block of the given colour
+     * @param gc where to draw
+     * @param width width of the block
+     * @param height height of the block
+     * @param colour the colour to paint
+     */
+    static void paintColor(GraphicsContext gc, double width, double height, Color colour) {
+        // Neon glow effect
+        Color glowColor = colour.deriveColor(0, 1, 1, 0.8);
+        gc.setEffect(new GaussianBlur(5));
+        gc.setFill(glowColor);
+        gc.fillRoundRect(2, 2, width - 4, height - 4, 15, 15);
+        gc.setEffect(null);
+
+        // Gradient fill
+        Color lightColor = colour.interpolate(Color.WHITE, 0.3);
+        Stop[] stops = new Stop[] {
+                new Stop(0, lightColor),
+                new Stop(1, colour)
+        };
+        LinearGradient gradient = new LinearGradient(0, 0, 0, height, true, CycleMethod.NO_CYCLE, stops);
+        gc.setFill(gradient);
+        gc.fillRoundRect(4, 4, width - 8, height - 8, 10, 10);
+
+        // Reflection effect
+        gc.setFill(Color.color(1, 1, 1, 0.2));
+        gc.fillOval(width * 0.2, height * 0.2, width * 0.6, height * 0.2);
+
+        // Border
+        gc.setStroke(glowColor);
+        gc.setLineWidth(2);
+        gc.strokeRoundRect(4, 4, width - 8, height - 8, 10, 10);
+    }
+}
@@ -0,0 +1,202 @@
+package uk.ac.soton.comp1206.component;
+
+import java.util.Arrays;
+import javafx.animation.AnimationTimer;
+import uk.ac.soton.comp1206.game.Grid;
+
+/**
+ * Runs the timed effects on the cells of a board, such as the line clear fade, from a single AnimationTimer. The
+ * active effects are kept in primitive arrays, and on each pulse every one of them is advanced and its cell
+ * repainted through a CellPainter. The timer only runs while an effect is active.
+ *
+ * An effect is cancelled as soon as its cell is filled, so a piece landing on a cell which is still fading is drawn
+ * straight away rather than underneath the rest of the fade.
+ */
+class BoardAnimator {
+
+    /**
+     * Repaints a cell as an effect progresses
+     */
+    interface CellPainter {
+
+        /**
+         * Repaint a cell
+         * @param x column
+         * @param y row
+         * @param progress how far through its effect the cell is, from 0 to 1, or -1 once the effect has ended
+         */
+        void paintCell(int x, int y, double progress);
+    }
+
+    /**
+     * Number of columns in the grid
+     */
+    private final int cols;
+
+    /**
+     * Repaints cells as their effects progress
+     */
+    private final CellPainter painter;
+
+    /**
+     * Slot in the active arrays of each cell's effect, or -1 if it has none. Indexed by y * cols + x.
+     */
+    private final int[] slots;
+
+    /**
+     * Cell index of each active effect. Only the first active entries are in use.
+     */
+    private final int[] cells;
+
+    /**
+     * When each active effect started, as a System.nanoTime value
+     */
+    private final long[] starts;
+
+    /**
+     * How long each active effect lasts, in nanoseconds
+     */
+    private final long[] durations;
+
+    /**
+     * Progress of each active effect as of the last pulse
+     */
+    private final double[] progress;
+
+    /**
+     * Number of active effects
+     */
+    private int active;
+
+    /**
+     * Advances every active effect once per pulse
+     */
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            advance(now);
+        }
+    };
+
+    /**
+     * Create an animator for a board showing the given grid
+     * @param grid the grid shown by the board, watched so effects on cells which are filled can be cancelled
+     * @param painter repaints cells as their effects progress
+     */
+    BoardAnimator(Grid grid, CellPainter painter) {
+        this.cols = grid.getCols();
+        this.painter = painter;
+
+        int size = grid.getCols() * grid.getRows();
+        slots = new int[size];
+        Arrays.fill(slots, -1);
+        cells = new int[size];
+        starts = new long[size];
+        durations = new long[size];
+        progress = new double[size];
+
+        grid.addListener(this::cellsChanged);
+    }
+
+    /**
+     * Start an effect on a cell, restarting it if the cell already has one
+     * @param x column
+     * @param y row
+     * @param duration how long the effect lasts, in nanoseconds
+     */
+    void start(int x, int y, long duration) {
+        int cell = y * cols + x;
+        int slot = slots[cell];
+        if (slot < 0) {
+            slot = active++;
+            slots[cell] = slot;
+            cells[slot] = cell;
+        }
+        starts[slot] = System.nanoTime();
+        durations[slot] = duration;
+        progress[slot] = 0;
+
+        if (active == 1) {
+            timer.start();
+        }
+        painter.paintCell(x, y, 0);
+    }
+
+    /**
+     * Stop the effect on a cell and repaint it, if it has one
+     * @param x column
+     * @param y row
+     */
+    void cancel(int x, int y) {
+        int cell = y * cols + x;
+        if (slots[cell] < 0) return;
+        remove(slots[cell]);
+        painter.paintCell(x, y, -1);
+    }
+
+    /**
+     * Get how far through its effect a cell is
+     * @param x column
+     * @param y row
+     * @return progress from 0 to 1 as of the last pulse, or -1 if the cell has no effect
+     */
+    double getProgress(int x, int y) {
+        int slot = slots[y * cols + x];
+        return slot < 0 ? -1 : progress[slot];
+    }
+
+    /**
+     * Advance every active effect, repainting its cell, and end the effects which have finished
+     * @param now time of this pulse in nanoseconds
+     */
+    private void advance(long now) {
+        // Walk backwards so ending an effect, which moves the last entry into its slot, does not skip any
+        for (var slot = active - 1; slot >= 0; slot--) {
+            int cell = cells[slot];
+            double done = Math.max(0, (double) (now - starts[slot]) / durations[slot]);
+            if (done >= 1) {
+                remove(slot);
+                painter.paintCell(cell % cols, cell / cols, -1);
+            } else {
+                progress[slot] = done;
+                painter.paintCell(cell % cols, cell / cols, done);
+            }
+        }
+    }
+
+    /**
+     * Remove an active effect, moving the last one into its slot, and stop the timer if none are left
+     * @param slot the slot to remove
+     */
+    private void remove(int slot) {
+        int last = --active;
+        slots[cells[slot]] = -1;
+        if (slot != last) {
+            cells[slot] = cells[last];
+            starts[slot] = starts[last];
+            durations[slot] = durations[last];
+            progress[slot] = progress[last];
+            slots[cells[slot]] = slot;
+        }
+        if (active == 0) {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Cancel the effects on any cells which have been filled
+     * @param grid the grid that changed
+     * @param changedRows bit x of changedRows[y] is set for each cell x, y that changed
+     */
+    private void cellsChanged(Grid grid, long[] changedRows) {
+        if (active == 0) return;
+        for (var y = 0; y < changedRows.length; y++) {
+            for (long remaining = changedRows[y]; remaining != 0; remaining &= remaining - 1) {
+                int x = Long.numberOfTrailingZeros(remaining);
+                if (!grid.isEmpty(x, y)) {
+                    cancel(x, y);
+                }
+            }
+        }
+    }
+}
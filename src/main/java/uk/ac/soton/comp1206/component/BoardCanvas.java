@@ -0,0 +1,268 @@
+package uk.ac.soton.comp1206.component;
+
+import javafx.animation.AnimationTimer;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.WritableImage;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.game.Grid;
+
+/**
+ * Draws a whole Grid on a single Canvas, as an alternative to one GameBlock node per cell. The cells the grid reports
+ * as changed are marked dirty in a bitmask per row, and the dirty cells are repainted from the block sprites on the
+ * next pulse, so the scene graph holds one node however large the grid is and each frame only touches the cells that
+ * changed.
+ *
+ * Cell edges are rounded to whole pixels, so neighbouring cells never share a partially covered pixel and each cell
+ * can be cleared and redrawn on its own.
+ */
+class BoardCanvas extends Canvas {
+
+    private static final Logger logger = LogManager.getLogger(BoardCanvas.class);
+
+    /**
+     * The grid being drawn
+     */
+    private final Grid grid;
+
+    /**
+     * Number of columns in the grid
+     */
+    private final int cols;
+
+    /**
+     * Number of rows in the grid
+     */
+    private final int rows;
+
+    /**
+     * Sprites at the size of a cell
+     */
+    private final BlockSprites sprites;
+
+    /**
+     * Bit x of dirty[y] is set when the cell at x, y needs repainting
+     */
+    private final long[] dirty;
+
+    /**
+     * Bit x of hovered[y] is set when the cell at x, y is drawn with the hover outline
+     */
+    private final long[] hovered;
+
+    /**
+     * Bit x of hinted[y] is set when the cell at x, y is part of a hint, which is drawn with the same outline as
+     * hover but kept apart from it
+     */
+    private final long[] hinted;
+
+    /**
+     * Runs the effects on the cells, and paints their frames straight onto the canvas
+     */
+    private final BoardAnimator animator;
+
+    /**
+     * Whether the repaint timer is running
+     */
+    private boolean scheduled;
+
+    /**
+     * Repaints the dirty cells on the next pulse
+     */
+    private final AnimationTimer repaint = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            repaint(now);
+        }
+    };
+
+    /**
+     * Create a canvas drawing the given grid, and repaint it whenever a cell changes
+     * @param grid the grid to draw
+     * @param width the visual width
+     * @param height the visual height
+     */
+    BoardCanvas(Grid grid, double width, double height) {
+        super(width, height);
+        this.grid = grid;
+        this.cols = grid.getCols();
+        this.rows = grid.getRows();
+        this.sprites = BlockSprites.forSize(width / cols, height / rows);
+        this.dirty = new long[rows];
+        this.hovered = new long[rows];
+        this.hinted = new long[rows];
+        this.animator = new BoardAnimator(grid, this::paintEffect);
+
+        logger.info("Drawing {} x {} grid on a single canvas", cols, rows);
+
+        grid.addListener(this::cellsChanged);
+
+        //Do an initial paint
+        for (var y = 0; y < rows; y++) {
+            for (var x = 0; x < cols; x++) {
+                paintCell(getGraphicsContext2D(), x, y, -1);
+            }
+        }
+    }
+
+    /**
+     * Get the column at a horizontal position on the canvas
+     * @param x position in pixels
+     * @return the column, clamped to the grid
+     */
+    int columnAt(double x) {
+        return Math.max(0, Math.min(cols - 1, (int) (x * cols / getWidth())));
+    }
+
+    /**
+     * Get the row at a vertical position on the canvas
+     * @param y position in pixels
+     * @return the row, clamped to the grid
+     */
+    int rowAt(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) (y * rows / getHeight())));
+    }
+
+    /**
+     * Show or hide the hover outline on a cell
+     * @param x column
+     * @param y row
+     * @param hover whether the outline should be shown
+     */
+    void setHover(int x, int y, boolean hover) {
+        long bit = 1L << x;
+        if (((hovered[y] & bit) != 0) == hover) return;
+        hovered[y] ^= bit;
+        markDirty(x, y);
+    }
+
+    /**
+     * Show or hide the hint outline on a cell
+     * @param x column
+     * @param y row
+     * @param hint whether the cell is part of a hint
+     */
+    void setHint(int x, int y, boolean hint) {
+        long bit = 1L << x;
+        if (((hinted[y] & bit) != 0) == hint) return;
+        hinted[y] ^= bit;
+        markDirty(x, y);
+    }
+
+    /**
+     * Get the animator running the effects on this canvas
+     * @return the animator
+     */
+    BoardAnimator getAnimator() {
+        return animator;
+    }
+
+    /**
+     * Paint a frame of a cell's effect straight away, on the animator's pulse
+     * @param x column
+     * @param y row
+     * @param progress how far through its effect the cell is, or -1 once the effect has ended
+     */
+    private void paintEffect(int x, int y, double progress) {
+        paintCell(getGraphicsContext2D(), x, y, progress);
+    }
+
+    /**
+     * Mark the cells changed in the grid as needing to be repainted on the next pulse
+     * @param grid the grid that changed
+     * @param changedRows bit x of changedRows[y] is set for each cell x, y that changed
+     */
+    private void cellsChanged(Grid grid, long[] changedRows) {
+        for (var y = 0; y < rows; y++) {
+            dirty[y] |= changedRows[y];
+        }
+        schedule();
+    }
+
+    /**
+     * Mark a cell as needing to be repainted on the next pulse
+     * @param x column
+     * @param y row
+     */
+    private void markDirty(int x, int y) {
+        dirty[y] |= 1L << x;
+        schedule();
+    }
+
+    /**
+     * Start the repaint timer, if it is not already running
+     */
+    private void schedule() {
+        if (!scheduled) {
+            scheduled = true;
+            repaint.start();
+        }
+    }
+
+    /**
+     * Repaint every dirty cell, then stop the timer until another cell changes
+     * @param now time of this pulse in nanoseconds
+     */
+    private void repaint(long now) {
+        var gc = getGraphicsContext2D();
+        for (var y = 0; y < rows; y++) {
+            for (long remaining = dirty[y]; remaining != 0; remaining &= remaining - 1) {
+                int x = Long.numberOfTrailingZeros(remaining);
+                paintCell(gc, x, y, animator.getProgress(x, y));
+            }
+            dirty[y] = 0;
+        }
+        repaint.stop();
+        scheduled = false;
+    }
+
+    /**
+     * Clear and redraw a single cell, with its hover or hint outline and any fade in progress
+     * @param gc the canvas graphics context
+     * @param x column
+     * @param y row
+     * @param fade how far through the line clear fade the cell is, or -1 if it is not fading
+     */
+    private void paintCell(GraphicsContext gc, int x, int y, double fade) {
+        double left = cellEdgeX(x);
+        double top = cellEdgeY(y);
+        double width = cellEdgeX(x + 1) - left;
+        double height = cellEdgeY(y + 1) - top;
+        int value = grid.get(x, y);
+        boolean hover = ((hovered[y] | hinted[y]) & (1L << x)) != 0;
+
+        gc.clearRect(left, top, width, height);
+        WritableImage sprite = sprites.get(value, hover);
+        if (sprite != null) {
+            gc.drawImage(sprite, left, top, width, height);
+        } else {
+            gc.save();
+            gc.translate(left, top);
+            BlockSprites.paint(gc, width, height, value, hover);
+            gc.restore();
+        }
+
+        if (fade >= 0) {
+            BlockSprites.paintFade(gc, left, top, width, height, fade);
+        }
+    }
+
+    /**
+     * Get the left edge of a column, rounded to a whole pixel
+     * @param x column, or cols for the right edge of the grid
+     * @return position in pixels
+     */
+    private double cellEdgeX(int x) {
+        return Math.round(x * getWidth() / cols);
+    }
+
+    /**
+     * Get the top edge of a row, rounded to a whole pixel
+     * @param y row, or rows for the bottom edge of the grid
+     * @return position in pixels
+     */
+    private double cellEdgeY(int y) {
+        return Math.round(y * getHeight() / rows);
+    }
+}
@@ -1,20 +1,19 @@
 package uk.ac.soton.comp1206.component;
 
-import javafx.animation.AnimationTimer;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.value.ObservableValue;
 import javafx.scene.canvas.Canvas;
-import javafx.scene.effect.GaussianBlur;
-import javafx.scene.effect.Glow;
-import javafx.scene.paint.*;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 /**
  * The Visual User Interface component representing a single block in the grid.
  * Extends Canvas and is responsible for drawing itself.
- * Displays an empty square (when the value is 0) or a coloured square depending on value.
+ * Displays an empty square (when the value is 0) or a coloured square depending on value, copied from a sprite
+ * shared by every block of the same size.
  * The GameBlock value should be bound to a corresponding block in the Grid model.
  */
 public class GameBlock extends Canvas {
@@ -73,6 +72,21 @@ public class GameBlock extends Canvas {
      */
     private final IntegerProperty value = new SimpleIntegerProperty(0);
 
+    /**
+     * Whether the mouse or keyboard aim is on this block
+     */
+    private boolean hover;
+
+    /**
+     * Whether this block is part of a hint. Kept apart from hover, so moving the aim off the block leaves the hint.
+     */
+    private boolean hint;
+
+    /**
+     * Pre-rendered images of each colour at this block's size
+     */
+    private final BlockSprites sprites;
+
     /**
      * Create a new single Game Block
      * @param gameBoard the board this block belongs to
@@ -87,6 +101,7 @@ public class GameBlock extends Canvas {
         this.height = height;
         this.x = x;
         this.y = y;
+        this.sprites = BlockSprites.forSize(width, height);
 
         //A canvas needs a fixed width and height
         setWidth(width);
@@ -113,147 +128,61 @@ public class GameBlock extends Canvas {
      * Handle painting of the block canvas
      */
     public void paint() {
-        //If the block is empty, paint as empty
-        if(value.get() == 0) {
-            paintEmpty();
-        } else {
-            //If the block is not empty, paint with the colour represented by the value
-            paintColor(COLOURS[value.get()]);
-        }
-    }
-
-    /**
-     * Fading animation for when a block is cleared
-     */
-    public void fadeOut() {
-        var FADE_DURATION = 1.0; // Duration of the fade effect in seconds
-        final double[] fadeProgress = {0.0};
-
-        AnimationTimer timer = new AnimationTimer() {
-            private long startTime = -1; // Start time of the animation
-
-            @Override
-            public void handle(long now) {
-                if (startTime == -1) {
-                    startTime = now; // Set the start time when the animation begins
-                }
-
-                // Calculate the fade progress based on the elapsed time
-                fadeProgress[0] = (now - startTime) / (FADE_DURATION * 1e9);
-
-                if (fadeProgress[0] >= 1.0) {
-                    fadeProgress[0] = 1.0; // Ensure fade progress doesn't exceed 1.0
-                    stop(); // Stop the animation timer when the fade effect is complete
-                }
-
-                var gc = getGraphicsContext2D();
-
-                gc.clearRect(0, 0, width, height); // Clear the canvas
-
-                // Draw the design from paintEmpty()
-                paintEmpty();
-
-                // Apply the green color with fading opacity
-                gc.setFill(Color.rgb(0, 255, 0, 1.0 - fadeProgress[0])); // Green color with opacity
-                gc.fillRoundRect(0, 0, width, height, 10, 10); // Fill the canvas with green color
-            }
-        };
-        timer.start();
+        draw();
     }
 
     /**
-     * Paint this canvas empty
+     * Draw the block from its cached sprite, or directly if the sprite is not available off the JavaFX thread. The
+     * outline is drawn while the block is hovered or part of a hint.
      */
-    private void paintEmpty() {
+    private void draw() {
         var gc = getGraphicsContext2D();
-
-        // Clear
         gc.clearRect(0, 0, width, height);
-
-        // Semi-transparent grey background
-        Color backgroundColor = Color.rgb(128, 128, 128, 0.3);
-        gc.setFill(backgroundColor);
-        gc.fillRoundRect(0, 0, width, height, 10, 10);
-
-        // Neon sign-like outline
-        gc.setStroke(Color.rgb(0, 0, 0));
-        gc.setLineWidth(2);
-        gc.setEffect(new Glow(0.8));
-        gc.strokeRoundRect(1, 1, width - 2, height - 2, 8, 8);
-        gc.setEffect(null);
-
-        // Inner neon sign-like outline
-        gc.setStroke(Color.rgb(0, 0, 0));
-        gc.setLineWidth(1);
-        gc.setEffect(new Glow(0.6));
-        gc.strokeRoundRect(4, 4, width - 8, height - 8, 6, 6);
-        gc.setEffect(null);
+        boolean outline = hover || hint;
+        WritableImage sprite = sprites.get(value.get(), outline);
+        if (sprite != null) {
+            gc.drawImage(sprite, 0, 0, width, height);
+        } else {
+            BlockSprites.paint(gc, width, height, value.get(), outline);
+        }
     }
 
     /**
-     * Paint this canvas with the given colour
-     * @param colour the colour to paint
+     * Paint a frame of the fading animation for when a block is cleared
+     * @param progress how far through the fade the block is, from 0 to 1, or -1 once it has finished
      */
-    private void paintColor(Paint colour) {
-        var gc = getGraphicsContext2D();
-
-        // Clear
-        gc.clearRect(0, 0, width, height);
-
-        // Neon glow effect
-        Color glowColor = ((Color) colour).deriveColor(0, 1, 1, 0.8);
-        gc.setEffect(new GaussianBlur(5));
-        gc.setFill(glowColor);
-        gc.fillRoundRect(2, 2, width - 4, height - 4, 15, 15);
-        gc.setEffect(null);
-
-        // Gradient fill
-        Color lightColor = ((Color) colour).interpolate(Color.WHITE, 0.3);
-        Stop[] stops = new Stop[] {
-                new Stop(0, lightColor),
-                new Stop(1, (Color) colour)
-        };
-        LinearGradient gradient = new LinearGradient(0, 0, 0, height, true, CycleMethod.NO_CYCLE, stops);
-        gc.setFill(gradient);
-        gc.fillRoundRect(4, 4, width - 8, height - 8, 10, 10);
-
-        // Reflection effect
-        gc.setFill(Color.color(1, 1, 1, 0.2));
-        gc.fillOval(width * 0.2, height * 0.2, width * 0.6, height * 0.2);
-
-        // Border
-        gc.setStroke(glowColor);
-        gc.setLineWidth(2);
-        gc.strokeRoundRect(4, 4, width - 8, height - 8, 10, 10);
+    public void paintFade(double progress) {
+        draw();
+        if (progress >= 0) {
+            BlockSprites.paintFade(getGraphicsContext2D(), 0, 0, width, height, progress);
+        }
     }
 
     /**
      * Changes the appearance of a block if it is being hovered over by the mouse
      */
     public void onHover() {
-        var gc = getGraphicsContext2D();
-
         // Change outline of the block to red
-        gc.setStroke(Color.RED);
-        gc.setLineWidth(2);
-        gc.strokeRoundRect(4, 4, width - 8, height - 8, 10, 10);
+        hover = true;
+        draw();
     }
 
     /**
      * Changes the appearance of a hovered block once it is no longer being hovered on by the mouse
      */
     public void offHover() {
-        var gc = getGraphicsContext2D();
-
-        // Clear the stroke
-        gc.clearRect(0, 0, width, height);
+        // Redraw the block without the hover effect, unless it is part of a hint
+        hover = false;
+        draw();
+    }
 
-        // Redraw the block without the hover effect
-        if (getValue() == 0) {
-            paintEmpty();
-        } else {
-            paintColor(COLOURS[getValue()]);
-        }
+    /**
+     * Show or hide the hint outline on this block
+     * @param hint whether the block is part of a hint
+     */
+    public void setHint(boolean hint) {
+        this.hint = hint;
+        draw();
     }
 
     /**
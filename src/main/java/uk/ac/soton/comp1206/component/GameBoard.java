@@ -7,12 +7,13 @@ import org.apache.logging.log4j.Logger;
 import uk.ac.soton.comp1206.event.BlockClickedListener;
 import uk.ac.soton.comp1206.event.RightClickedListener;
 import uk.ac.soton.comp1206.game.Grid;
-
-import java.util.HashSet;
+import uk.ac.soton.comp1206.game.PieceShape;
 
 /**
  * A GameBoard is a visual component to represent the visual GameBoard.
- * It extends a GridPane to hold a grid of GameBlocks.
+ * It extends a GridPane to hold a grid of GameBlocks, or for large grids a single BoardCanvas which draws every cell
+ * itself. The canvas is used when the grid has more than CANVAS_THRESHOLD cells, or always or never when the
+ * tetrecs.board system property is "canvas" or "blocks".
  *
  * The GameBoard can hold an internal grid of its own, for example, for displaying an upcoming block. It also be
  * linked to an external grid, for the main game board.
@@ -24,6 +25,21 @@ public class GameBoard extends GridPane {
 
     private static final Logger logger = LogManager.getLogger(GameBoard.class);
 
+    /**
+     * System property selecting how boards are drawn: "blocks", "canvas", or unset to decide by size
+     */
+    public static final String RENDERER_PROPERTY = "tetrecs.board";
+
+    /**
+     * Boards with more cells than this are drawn on a single canvas unless the renderer property says otherwise
+     */
+    public static final int CANVAS_THRESHOLD = 100;
+
+    /**
+     * How long the line clear fade lasts, in nanoseconds
+     */
+    private static final long FADE_DURATION = 1_000_000_000L;
+
     /**
      * Number of columns in the board
      */
@@ -56,10 +72,20 @@ public class GameBoard extends GridPane {
     private final boolean hoverEnabled;
 
     /**
-     * The blocks inside the grid
+     * The blocks inside the grid, or null when the board is drawn on a single canvas
      */
     GameBlock[][] blocks;
 
+    /**
+     * The canvas the board is drawn on, or null when the board is made of blocks
+     */
+    private BoardCanvas canvas;
+
+    /**
+     * Runs the line clear fades on every cell of the board from one pulse
+     */
+    private BoardAnimator animator;
+
     /**
      * The listener to call when a specific block is clicked
      */
@@ -80,6 +106,11 @@ public class GameBoard extends GridPane {
      */
     private GameBlockCoordinate mouseAim;
 
+    /**
+     * The cells highlighted as a hint, or null if no hint is showing
+     */
+    private GameBlockCoordinate[] hint;
+
     /**
      * Create a new GameBoard, based off a given grid, with a visual width and height.
      * @param grid linked grid
@@ -145,10 +176,53 @@ public class GameBoard extends GridPane {
      * Get a specific block from the GameBoard, specified by its row and column
      * @param x column
      * @param y row
-     * @return game block at the given column and row
+     * @return game block at the given column and row, or null if the board is drawn on a single canvas
      */
     public GameBlock getBlock(int x, int y) {
-        return blocks[x][y];
+        return blocks == null ? null : blocks[x][y];
+    }
+
+    /**
+     * Decide whether a board of the given size should be drawn on a single canvas
+     * @param cols number of columns
+     * @param rows number of rows
+     * @return true to draw on a canvas, false to use a block per cell
+     */
+    private static boolean useCanvas(int cols, int rows) {
+        String renderer = System.getProperty(RENDERER_PROPERTY, "");
+        if (renderer.equals("canvas")) return true;
+        if (renderer.equals("blocks")) return false;
+        return cols * rows > CANVAS_THRESHOLD;
+    }
+
+    /**
+     * Show or hide the hover outline on a cell
+     * @param x column
+     * @param y row
+     * @param hover whether the outline should be shown
+     */
+    protected void setHover(int x, int y, boolean hover) {
+        if (canvas != null) {
+            canvas.setHover(x, y, hover);
+        } else if (hover) {
+            blocks[x][y].onHover();
+        } else {
+            blocks[x][y].offHover();
+        }
+    }
+
+    /**
+     * Show or hide the hint outline on a cell, which stays while the hover outline comes and goes
+     * @param x column
+     * @param y row
+     * @param hint whether the cell is part of a hint
+     */
+    protected void setHint(int x, int y, boolean hint) {
+        if (canvas != null) {
+            canvas.setHint(x, y, hint);
+        } else {
+            blocks[x][y].setHint(hint);
+        }
     }
 
     /**
@@ -162,6 +236,11 @@ public class GameBoard extends GridPane {
 
         setGridLinesVisible(true);
 
+        if (useCanvas(cols, rows)) {
+            buildCanvas();
+            return;
+        }
+
         blocks = new GameBlock[cols][rows];
 
         for(var y = 0; y < rows; y++) {
@@ -169,19 +248,63 @@ public class GameBoard extends GridPane {
                 var temp_block = createBlock(x,y);
                 if (hoverEnabled) {
                     // Add a mouse handler for once the block is hovered
-                    temp_block.setOnMouseEntered((event) -> {
-                        blocks[keyboardAim.getX()][keyboardAim.getY()].offHover();
-                        temp_block.onHover();
-                        mouseAim = new GameBlockCoordinate(temp_block.getX(), temp_block.getY());
-                    });
+                    temp_block.setOnMouseEntered((event) -> mouseEntered(temp_block.getX(), temp_block.getY()));
                     // Add a mouse handler for once the hovered block is no longer hovered
-                    temp_block.setOnMouseExited((event) -> {
-                        blocks[keyboardAim.getX()][keyboardAim.getY()].offHover();
-                        temp_block.offHover();
-                    });
+                    temp_block.setOnMouseExited((event) -> mouseExited(temp_block.getX(), temp_block.getY()));
                 }
             }
         }
+
+        animator = new BoardAnimator(grid, (x, y, progress) -> blocks[x][y].paintFade(progress));
+    }
+
+    /**
+     * Build the GameBoard as a single canvas. Clicks and hovering are mapped to cells from the mouse position.
+     */
+    private void buildCanvas() {
+        canvas = new BoardCanvas(grid, width, height);
+        animator = canvas.getAnimator();
+        add(canvas, 0, 0);
+
+        canvas.setOnMouseClicked((event) -> {
+            if (event.getButton() == MouseButton.PRIMARY) {
+                blockClicked(canvas.columnAt(event.getX()), canvas.rowAt(event.getY()));
+            }
+        });
+        if (hoverEnabled) {
+            canvas.setOnMouseMoved((event) -> {
+                int x = canvas.columnAt(event.getX());
+                int y = canvas.rowAt(event.getY());
+                if (x != mouseAim.getX() || y != mouseAim.getY()) {
+                    mouseExited(mouseAim.getX(), mouseAim.getY());
+                    mouseEntered(x, y);
+                }
+            });
+            canvas.setOnMouseEntered((event) ->
+                mouseEntered(canvas.columnAt(event.getX()), canvas.rowAt(event.getY())));
+            canvas.setOnMouseExited((event) -> mouseExited(mouseAim.getX(), mouseAim.getY()));
+        }
+    }
+
+    /**
+     * Called when the mouse moves onto a cell. Highlights it in place of the keyboard aim.
+     * @param x column
+     * @param y row
+     */
+    private void mouseEntered(int x, int y) {
+        setHover(keyboardAim.getX(), keyboardAim.getY(), false);
+        setHover(x, y, true);
+        mouseAim = new GameBlockCoordinate(x, y);
+    }
+
+    /**
+     * Called when the mouse moves off a cell
+     * @param x column
+     * @param y row
+     */
+    private void mouseExited(int x, int y) {
+        setHover(keyboardAim.getX(), keyboardAim.getY(), false);
+        setHover(x, y, false);
     }
 
     /**
@@ -209,7 +332,7 @@ public class GameBoard extends GridPane {
         // Add a mouse click handler to the block to trigger GameBoard blockClicked method
         block.setOnMouseClicked((event) -> {
             if (event.getButton() == MouseButton.PRIMARY) {
-                blockClicked(block);
+                blockClicked(x, y);
             }
         });
 
@@ -217,13 +340,45 @@ public class GameBoard extends GridPane {
     }
 
     /**
-     * Calls the fading animation on all the GameBlockCoordinates passed to it
-     * @param coordinates HashSet of GameBlockCoordinates to call the fading animation on
+     * Starts the fading animation on every block in the given rows and columns. A block which is filled again
+     * before its fade finishes stops fading.
+     * @param clearedRows bitmask with bit y set for each row y to fade out
+     * @param clearedCols bitmask with bit x set for each column x to fade out
+     */
+    public void fadeOut(long clearedRows, long clearedCols) {
+        for (var y = 0; y < rows; y++) {
+            for (var x = 0; x < cols; x++) {
+                if ((clearedRows & (1L << y)) != 0 || (clearedCols & (1L << x)) != 0) {
+                    animator.start(x, y, FADE_DURATION);
+                }
+            }
+        }
+    }
+
+    /**
+     * Highlight the cells a piece would cover if played at the given position, replacing any previous hint
+     * @param shape the shape of the piece
+     * @param placeX placement column
+     * @param placeY placement row
+     */
+    public void showHint(PieceShape shape, int placeX, int placeY) {
+        clearHint();
+        hint = new GameBlockCoordinate[shape.getBlockCount()];
+        for (var block = 0; block < shape.getBlockCount(); block++) {
+            hint[block] = new GameBlockCoordinate(placeX + shape.getOffsetX(block), placeY + shape.getOffsetY(block));
+            setHint(hint[block].getX(), hint[block].getY(), true);
+        }
+    }
+
+    /**
+     * Remove the highlight shown by showHint, if there is one
      */
-    public void fadeOut(HashSet<GameBlockCoordinate> coordinates) {
-        for (GameBlockCoordinate coordinate : coordinates) {
-            getBlock(coordinate.getX(), coordinate.getY()).fadeOut();
+    public void clearHint() {
+        if (hint == null) return;
+        for (GameBlockCoordinate cell : hint) {
+            setHint(cell.getX(), cell.getY(), false);
         }
+        hint = null;
     }
 
     /**
@@ -255,13 +410,14 @@ public class GameBoard extends GridPane {
 
     /**
      * Triggered when a block is clicked. Call the attached listener.
-     * @param block block clicked on
+     * @param x column of the block clicked on
+     * @param y row of the block clicked on
      */
-    private void blockClicked(GameBlock block) {
-        logger.info("Block clicked: {}", block);
+    private void blockClicked(int x, int y) {
+        logger.info("Block clicked: {},{}", x, y);
 
         if(blockClickedListener != null) {
-            blockClickedListener.blockClicked(block);
+            blockClickedListener.blockClicked(x, y);
         }
     }
 
@@ -269,7 +425,7 @@ public class GameBoard extends GridPane {
      * Places a pieces in the location the keyboard is aiming at
      */
     public void placeKeyboardAim() {
-        blockClicked(blocks[keyboardAim.getX()][keyboardAim.getY()]);
+        blockClicked(keyboardAim.getX(), keyboardAim.getY());
     }
 
     /**
@@ -277,10 +433,10 @@ public class GameBoard extends GridPane {
      */
     public void moveKeyboardAimUp() {
         if (keyboardAim.getY() != 0) {
-            blocks[mouseAim.getX()][mouseAim.getY()].offHover();
-            blocks[keyboardAim.getX()][keyboardAim.getY()].offHover();
+            setHover(mouseAim.getX(), mouseAim.getY(), false);
+            setHover(keyboardAim.getX(), keyboardAim.getY(), false);
             keyboardAim = keyboardAim.subtract(0, 1);
-            blocks[keyboardAim.getX()][keyboardAim.getY()].onHover();
+            setHover(keyboardAim.getX(), keyboardAim.getY(), true);
         }
     }
 
@@ -288,11 +444,11 @@ public class GameBoard extends GridPane {
      * Moves the keyboard aim one block down
      */
     public void moveKeyboardAimDown() {
-        if (keyboardAim.getY() != 4) {
-            blocks[mouseAim.getX()][mouseAim.getY()].offHover();
-            blocks[keyboardAim.getX()][keyboardAim.getY()].offHover();
+        if (keyboardAim.getY() != rows - 1) {
+            setHover(mouseAim.getX(), mouseAim.getY(), false);
+            setHover(keyboardAim.getX(), keyboardAim.getY(), false);
             keyboardAim = keyboardAim.add(0, 1);
-            blocks[keyboardAim.getX()][keyboardAim.getY()].onHover();
+            setHover(keyboardAim.getX(), keyboardAim.getY(), true);
         }
     }
 
@@ -300,11 +456,11 @@ public class GameBoard extends GridPane {
      * Moves the keyboard aim one block to the right
      */
     public void moveKeyboardAimRight() {
-        if (keyboardAim.getX() != 4) {
-            blocks[mouseAim.getX()][mouseAim.getY()].offHover();
-            blocks[keyboardAim.getX()][keyboardAim.getY()].offHover();
+        if (keyboardAim.getX() != cols - 1) {
+            setHover(mouseAim.getX(), mouseAim.getY(), false);
+            setHover(keyboardAim.getX(), keyboardAim.getY(), false);
             keyboardAim = keyboardAim.add(1, 0);
-            blocks[keyboardAim.getX()][keyboardAim.getY()].onHover();
+            setHover(keyboardAim.getX(), keyboardAim.getY(), true);
         }
     }
 
@@ -313,10 +469,10 @@ public class GameBoard extends GridPane {
      */
     public void moveKeyboardAimLeft() {
         if (keyboardAim.getX() != 0) {
-            blocks[mouseAim.getX()][mouseAim.getY()].offHover();
-            blocks[keyboardAim.getX()][keyboardAim.getY()].offHover();
+            setHover(mouseAim.getX(), mouseAim.getY(), false);
+            setHover(keyboardAim.getX(), keyboardAim.getY(), false);
             keyboardAim = keyboardAim.subtract(1, 0);
-            blocks[keyboardAim.getX()][keyboardAim.getY()].onHover();
+            setHover(keyboardAim.getX(), keyboardAim.getY(), true);
         }
     }
 
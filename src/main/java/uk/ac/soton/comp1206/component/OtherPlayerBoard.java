@@ -1,5 +1,8 @@
 package uk.ac.soton.comp1206.component;
 
+import uk.ac.soton.comp1206.game.Grid;
+import uk.ac.soton.comp1206.network.BoardCodec;
+
 /**
  * Used to show another player's board in the multiplayer game.
  */
@@ -18,25 +21,20 @@ public class OtherPlayerBoard extends GameBoard {
     }
 
     /**
-     * Updates the grid of this board based on a string representation of the flattened grid.
-     * The string should contain space separated integers, with each integer representing the value
-     * of the GameBlock at that location.
-     * @param flattenedGrid A string representing the flattened grid data
+     * Updates the grid of this board based on a board received from the server, either a full flattened grid of
+     * space separated integers, one for the value of the GameBlock at each location, or a delta listing only the
+     * changed cells. The board is applied as one batch, so only the cells which differ are repainted, once.
+     * @param board A string representing the full or delta board
      */
-    public void updateBoard(String flattenedGrid) {
-        grid.clear();
-
-        String[] flattenedGridArray = flattenedGrid.split(" ");
-
-        /**
-         * Loops over each element of the grid, and then sets its value to the corresponding value
-         * in the flattenedGrid String representation
-         */
-        for (int columnIndex = 0; columnIndex < getRows(); columnIndex++) {
-            for (int rowIndex = 0; rowIndex < getCols(); rowIndex++) {
-                grid.set(columnIndex, rowIndex, Integer.valueOf(flattenedGridArray[(columnIndex * getCols()) + rowIndex]));
-            }
-        }
+    public void updateBoard(String board) {
+        BoardCodec.decode(board, 0, grid);
+    }
 
+    /**
+     * Show a copy of another grid on this board, such as the last known board of a different player
+     * @param source the grid to show
+     */
+    public void showGrid(Grid source) {
+        grid.copyFrom(source);
     }
 }
@@ -28,13 +28,14 @@ public class PieceBoard extends GameBoard {
 
     /**
      * Displays a single piece on the PieceBoard
-     * @param nextPiece piece to be displayed
+     * @param nextPiece piece to be displayed, or null to show an empty board while the piece is still on its way
      */
     public void displayPiece(GamePiece nextPiece) {
         this.grid.clear();
+        if (nextPiece == null) return;
         this.grid.playPiece(nextPiece, 1, 1);
         if (hover) {
-            getBlock(1, 1).onHover();
+            setHover(1, 1, true);
         }
     }
 }
@@ -0,0 +1,44 @@
+package uk.ac.soton.comp1206.component;
+
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
+
+/**
+ * A bar showing how long is left to play the current piece. It shrinks from full width to nothing as the deadline
+ * approaches, fading from green through yellow to red. The bar keeps no time of its own: it is redrawn from the game
+ * clock's deadline on every frame, so it can never drift from when the piece actually expires.
+ */
+public class TimerBar extends Rectangle {
+
+    /**
+     * Width of the bar when the full time is left
+     */
+    private final double fullWidth;
+
+    /**
+     * Create a full timer bar
+     * @param width width of the bar when the full time is left
+     * @param height height of the bar
+     */
+    public TimerBar(double width, double height) {
+        super(width, height);
+        this.fullWidth = width;
+        setFill(Color.GREEN);
+    }
+
+    /**
+     * Redraw the bar for a frame
+     * @param now the time of the frame, in nanoseconds
+     * @param deadline when the player runs out of time, in nanoseconds
+     * @param period the total time allowed for the piece, in nanoseconds
+     */
+    public void update(long now, long deadline, long period) {
+        double left = period <= 0 ? 0 : Math.max(0, Math.min(1, (double) (deadline - now) / period));
+        setWidth(fullWidth * left);
+        if (left > 0.5) {
+            setFill(Color.YELLOW.interpolate(Color.GREEN, (left - 0.5) * 2));
+        } else {
+            setFill(Color.RED.interpolate(Color.YELLOW, left * 2));
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package uk.ac.soton.comp1206.event;
+
+import java.util.List;
+
+/**
+ * Handles changes to the list of channels on the server. Only called when the list has changed, with just the
+ * channels which were added or removed.
+ */
+public interface ChannelListListener {
+
+    /**
+     * Called when channels have been created or removed on the server.
+     * @param added   The new channels, in the order the server lists them.
+     * @param removed The channels which no longer exist.
+     */
+    public void channelsChanged(List<String> added, List<String> removed);
+}
@@ -0,0 +1,17 @@
+package uk.ac.soton.comp1206.event;
+
+/**
+ * Called on every frame while a game is running, with the game clock's view of the deadline for playing the
+ * current piece. All times are on the System.nanoTime clock, so the listener can draw the time left without keeping
+ * a clock of its own.
+ */
+public interface ClockTickListener {
+
+    /**
+     * Handles a frame
+     * @param now the time of the frame, in nanoseconds
+     * @param deadline when the player runs out of time, in nanoseconds
+     * @param period the total time allowed for the piece, in nanoseconds
+     */
+    public void tick(long now, long deadline, long period);
+}
@@ -0,0 +1,51 @@
+package uk.ac.soton.comp1206.event;
+
+/**
+ * Receives every change the GameEngine makes to the state of a game, in the order they happen. Together with the
+ * size of the grid, these events are enough to reconstruct the game, which is what replays are recorded from.
+ * Every method does nothing by default, so implementations only need to override the events they care about.
+ */
+public interface GameEventListener {
+
+    /**
+     * Called when a new piece is dealt
+     * @param piece the piece number
+     */
+    default void pieceSpawned(int piece) {
+    }
+
+    /**
+     * Called when the current piece is rotated
+     * @param rotations number of 90 degree clockwise rotations
+     */
+    default void pieceRotated(int rotations) {
+    }
+
+    /**
+     * Called when the current and next pieces are swapped
+     */
+    default void piecesSwapped() {
+    }
+
+    /**
+     * Called when the current piece is played, before the grid is updated
+     * @param x placement column
+     * @param y placement row
+     */
+    default void piecePlayed(int x, int y) {
+    }
+
+    /**
+     * Called when the player runs out of time to play a piece
+     */
+    default void timerExpired() {
+    }
+
+    /**
+     * Called when lines are cleared
+     * @param clearedRows bitmask of the rows cleared
+     * @param clearedCols bitmask of the columns cleared
+     */
+    default void linesCleared(long clearedRows, long clearedCols) {
+    }
+}
@@ -0,0 +1,18 @@
+package uk.ac.soton.comp1206.event;
+
+import uk.ac.soton.comp1206.game.Grid;
+
+/**
+ * Handles cells in a Grid changing. Called once for each operation on the grid, or once when a batch of operations
+ * is committed, with every cell that changed.
+ */
+public interface GridListener {
+
+    /**
+     * Called after cells in the grid have changed
+     * @param grid the grid that changed
+     * @param changedRows bit x of changedRows[y] is set for each cell x, y that changed. The array is only valid
+     *                    for the duration of the call.
+     */
+    public void cellsChanged(Grid grid, long[] changedRows);
+}
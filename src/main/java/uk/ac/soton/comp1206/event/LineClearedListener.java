@@ -1,17 +1,14 @@
 package uk.ac.soton.comp1206.event;
 
-import uk.ac.soton.comp1206.component.GameBlockCoordinate;
-
-import java.util.HashSet;
-
 /**
- *  Handles what happens when a line in the game needs to be cleared. Needs to be passed the list of blocks
+ *  Handles what happens when a line in the game needs to be cleared. Needs to be passed the rows and columns
  *  that need to be cleared.
  */
 public interface LineClearedListener {
     /**
      * Handle a line cleared event
-     * @param blocksToBeCleared the set of blocks that need to be cleared
+     * @param clearedRows bitmask with bit y set for each row y that is being cleared
+     * @param clearedCols bitmask with bit x set for each column x that is being cleared
      */
-    void handle(HashSet<GameBlockCoordinate> blocksToBeCleared);
-}
\ No newline at end of file
+    void handle(long clearedRows, long clearedCols);
+}
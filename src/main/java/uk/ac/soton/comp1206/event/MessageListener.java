@@ -0,0 +1,17 @@
+package uk.ac.soton.comp1206.event;
+
+import uk.ac.soton.comp1206.network.Message;
+
+/**
+ * Handles one type of decoded message received by the Communicator. Only messages of the type the listener was
+ * added for are passed to it.
+ * @param <T> the type of message handled
+ */
+public interface MessageListener<T extends Message> {
+
+    /**
+     * Handle a decoded message
+     * @param message the message that was received
+     */
+    public void receiveMessage(T message);
+}
@@ -0,0 +1,13 @@
+package uk.ac.soton.comp1206.event;
+
+/**
+ * Handles a piece arriving from the server while the game is waiting for one. Called on the network thread, so the
+ * waiting pieces must be dealt on whichever thread runs the game.
+ */
+public interface PieceArrivedListener {
+
+    /**
+     * Called when a piece arrives which the game was waiting for.
+     */
+    public void pieceArrived();
+}
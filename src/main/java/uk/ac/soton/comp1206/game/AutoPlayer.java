@@ -0,0 +1,682 @@
+package uk.ac.soton.comp1206.game;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The AutoPlayer picks a move for a GameEngine. Every legal placement of every distinct rotation of the current
+ * piece, and of the next piece if it were swapped in, is played out on a copy of the grid and then scored by running
+ * Monte-Carlo rollouts: short random continuations of the game from the resulting board. The candidate with the
+ * best immediate score plus average rollout score is chosen.
+ *
+ * Candidates and rollouts are fork/join tasks, so a search spreads over every worker in the pool. Each task works
+ * on its own copies of the grid and its own split of the random generator, so nothing is shared between workers
+ * apart from the read-only snapshot taken when the search starts.
+ */
+public class AutoPlayer {
+
+    private static final Logger logger = LogManager.getLogger(AutoPlayer.class);
+
+    /**
+     * Default number of rollouts run for each candidate move
+     */
+    public static final int DEFAULT_ROLLOUTS = 32;
+
+    /**
+     * Default number of pieces played in each rollout
+     */
+    public static final int DEFAULT_DEPTH = 6;
+
+    /**
+     * Rollouts below this count are run on one worker rather than split further
+     */
+    private static final int ROLLOUTS_PER_TASK = 4;
+
+    /**
+     * Number of random placements a rollout tries for each piece, keeping the one that clears the most lines
+     */
+    private static final int PLACEMENT_SAMPLES = 4;
+
+    /**
+     * Score taken off a rollout that reaches a piece it cannot place
+     */
+    private static final int STUCK_PENALTY = 1000;
+
+    /**
+     * Score added for every empty cell left at the end of a rollout, to prefer open boards
+     */
+    private static final int EMPTY_CELL_BONUS = 2;
+
+    /**
+     * The pool searches run in
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Number of rollouts run for each candidate move
+     */
+    private final int rollouts;
+
+    /**
+     * Number of pieces played in each rollout
+     */
+    private final int depth;
+
+    /**
+     * Source of randomness, split for each search. Only used while holding the lock on this AutoPlayer.
+     */
+    private final SplittableRandom random;
+
+    /**
+     * Create an AutoPlayer with the default settings, searching in the common fork/join pool
+     */
+    public AutoPlayer() {
+        this(ForkJoinPool.commonPool(), DEFAULT_ROLLOUTS, DEFAULT_DEPTH, new SplittableRandom());
+    }
+
+    /**
+     * Create an AutoPlayer
+     * @param pool the pool to search in
+     * @param rollouts number of rollouts run for each candidate move
+     * @param depth number of pieces played in each rollout
+     * @param random source of randomness for the rollouts
+     */
+    public AutoPlayer(ForkJoinPool pool, int rollouts, int depth, SplittableRandom random) {
+        if (rollouts < 1 || depth < 0) {
+            throw new IllegalArgumentException("Need at least one rollout and a depth of zero or more");
+        }
+        this.pool = pool;
+        this.rollouts = rollouts;
+        this.depth = depth;
+        this.random = random;
+    }
+
+    /**
+     * Find the best move for the current state of the engine, blocking until the search is done
+     * @param engine the engine to find a move for
+     * @return the best move, or null if no piece can be placed anywhere
+     */
+    public Move findBestMove(GameEngine engine) {
+        SearchTask search = createSearch(engine);
+        return search == null ? null : pool.invoke(search);
+    }
+
+    /**
+     * Find the best move for the current state of the engine without blocking. The state of the engine is copied
+     * before this returns, so the engine may carry on being used while the search runs.
+     * @param engine the engine to find a move for
+     * @return the best move once found, or null if no piece can be placed anywhere
+     */
+    public CompletableFuture<Move> findBestMoveAsync(GameEngine engine) {
+        SearchTask search = createSearch(engine);
+        if (search == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.supplyAsync(search::invoke, pool);
+    }
+
+    /**
+     * Snapshot the engine into a search task
+     * @param engine the engine to find a move for
+     * @return the search, or null if no piece has been dealt yet
+     */
+    private SearchTask createSearch(GameEngine engine) {
+        GamePiece current = engine.getCurrentPiece();
+        GamePiece next = engine.getNextPiece();
+        if (current == null) {
+            return null;
+        }
+        SplittableRandom searchRandom;
+        synchronized (this) {
+            searchRandom = random.split();
+        }
+        return new SearchTask(engine.getGrid().copy(), current.getPieceNumber(),
+            next == null ? -1 : next.getPieceNumber(), engine.getMultiplier(), searchRandom);
+    }
+
+    /**
+     * Play a move on an engine, swapping and rotating the current piece as needed
+     * @param engine the engine to play on
+     * @param move the move to play
+     * @return true if the piece was played, false if it does not fit or the move was found for other pieces
+     */
+    public static boolean playMove(GameEngine engine, Move move) {
+        if (!move.isFor(engine)) return false;
+        if (move.isSwap()) {
+            engine.swapCurrentPiece();
+        }
+        int turns = (move.getRotation() - engine.getCurrentPiece().getRotation()) & (PieceShape.ROTATIONS - 1);
+        if (turns != 0) {
+            engine.rotateCurrentPiece(turns);
+        }
+        return engine.playPiece(move.getX(), move.getY());
+    }
+
+    /**
+     * Clear any full lines on a grid, as the engine would after a piece is played
+     * @param grid the grid to clear
+     * @param multiplier the current score multiplier
+     * @return the score gained, or -1 if no lines were cleared
+     */
+    private static int clearLines(Grid grid, int multiplier) {
+        long fullRows = grid.getFullRows();
+        long fullCols = grid.getFullCols();
+        int lines = Long.bitCount(fullRows) + Long.bitCount(fullCols);
+        if (lines == 0) {
+            return -1;
+        }
+        int blocks = grid.countCells(fullRows, fullCols);
+        grid.clearLines(fullRows, fullCols);
+        return lines * blocks * 10 * multiplier;
+    }
+
+    /**
+     * Check whether a rotation of a piece covers the same cells as an earlier rotation
+     * @param piece the piece number
+     * @param rotation the rotation to check
+     * @return true if an earlier rotation has the same shape
+     */
+    private static boolean isDuplicateRotation(int piece, int rotation) {
+        PieceShape shape = GamePiece.getShape(piece, rotation);
+        for (var earlier = 0; earlier < rotation; earlier++) {
+            PieceShape other = GamePiece.getShape(piece, earlier);
+            if (other.getRowMask(0) == shape.getRowMask(0) && other.getRowMask(1) == shape.getRowMask(1)
+                && other.getRowMask(2) == shape.getRowMask(2)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A move chosen by the AutoPlayer
+     */
+    public static final class Move {
+
+        /**
+         * Whether the current and next pieces are swapped before playing
+         */
+        private final boolean swap;
+
+        /**
+         * The piece number played
+         */
+        private final int piece;
+
+        /**
+         * The rotation the piece is played in
+         */
+        private final int rotation;
+
+        /**
+         * Placement column
+         */
+        private final int x;
+
+        /**
+         * Placement row
+         */
+        private final int y;
+
+        /**
+         * The estimated value of the move
+         */
+        private final double value;
+
+        /**
+         * Create a move
+         * @param swap whether the pieces are swapped first
+         * @param piece the piece number played
+         * @param rotation the rotation the piece is played in
+         * @param x placement column
+         * @param y placement row
+         * @param value estimated value of the move
+         */
+        private Move(boolean swap, int piece, int rotation, int x, int y, double value) {
+            this.swap = swap;
+            this.piece = piece;
+            this.rotation = rotation;
+            this.x = x;
+            this.y = y;
+            this.value = value;
+        }
+
+        /**
+         * Whether the current and next pieces should be swapped before playing
+         * @return true to swap first
+         */
+        public boolean isSwap() {
+            return swap;
+        }
+
+        /**
+         * Get the piece number that is played
+         * @return piece number
+         */
+        public int getPiece() {
+            return piece;
+        }
+
+        /**
+         * Get the rotation the piece is played in
+         * @return rotation, from 0 to 3
+         */
+        public int getRotation() {
+            return rotation;
+        }
+
+        /**
+         * Get the shape of the piece as it is played
+         * @return piece shape
+         */
+        public PieceShape getShape() {
+            return GamePiece.getShape(piece, rotation);
+        }
+
+        /**
+         * Get the placement column
+         * @return placement column
+         */
+        public int getX() {
+            return x;
+        }
+
+        /**
+         * Get the placement row
+         * @return placement row
+         */
+        public int getY() {
+            return y;
+        }
+
+        /**
+         * Get the estimated value of the move: the score it gains plus the average score of the rollouts after it
+         * @return estimated value
+         */
+        public double getValue() {
+            return value;
+        }
+
+        /**
+         * Check the move still fits the engine's pieces: the piece it plays must be the one which would be current
+         * after any swap. The pieces can change while the move is being searched for, if the timer runs out or the
+         * player swaps, and a move found for other pieces must not be played.
+         * @param engine the engine to play the move on
+         * @return true if the move can be played on the engine's current pieces
+         */
+        public boolean isFor(GameEngine engine) {
+            GamePiece played = swap ? engine.getNextPiece() : engine.getCurrentPiece();
+            return played != null && played.getPieceNumber() == piece;
+        }
+
+        /**
+         * Describe the move
+         * @return description of the move
+         */
+        @Override
+        public String toString() {
+            return (swap ? "swap, " : "") + GamePiece.getShape(piece, rotation).getName() + " rotation " + rotation
+                + " at " + x + "," + y + " (" + String.format("%.1f", value) + ")";
+        }
+    }
+
+    /**
+     * Searches every candidate move from a snapshot of the game
+     */
+    private class SearchTask extends RecursiveTask<Move> {
+
+        /**
+         * Tasks are never serialized, but RecursiveTask is Serializable
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Copy of the grid when the search started
+         */
+        private final Grid grid;
+
+        /**
+         * The current piece number
+         */
+        private final int current;
+
+        /**
+         * The next piece number, or -1 if there is none
+         */
+        private final int next;
+
+        /**
+         * The score multiplier when the search started
+         */
+        private final int multiplier;
+
+        /**
+         * Randomness for this search
+         */
+        private final SplittableRandom random;
+
+        /**
+         * Create a search
+         * @param grid copy of the grid
+         * @param current current piece number
+         * @param next next piece number, or -1 if there is none
+         * @param multiplier score multiplier
+         * @param random randomness for this search
+         */
+        SearchTask(Grid grid, int current, int next, int multiplier, SplittableRandom random) {
+            this.grid = grid;
+            this.current = current;
+            this.next = next;
+            this.multiplier = multiplier;
+            this.random = random;
+        }
+
+        /**
+         * Evaluate every candidate in parallel and pick the best
+         * @return the best move, or null if there is none
+         */
+        @Override
+        protected Move compute() {
+            List<CandidateTask> candidates = new ArrayList<>();
+            long[] placements = new long[grid.getRows()];
+            addCandidates(candidates, false, current, next, placements);
+            if (next >= 0 && next != current) {
+                addCandidates(candidates, true, next, current, placements);
+            }
+            if (candidates.isEmpty()) {
+                return null;
+            }
+
+            invokeAll(candidates);
+
+            CandidateTask best = candidates.get(0);
+            for (CandidateTask candidate : candidates) {
+                if (candidate.join() > best.join()) {
+                    best = candidate;
+                }
+            }
+            Move move = new Move(best.swap, best.piece, best.rotation, best.x, best.y, best.join());
+            logger.trace("Chose {} out of {} candidates", move, candidates.size());
+            return move;
+        }
+
+        /**
+         * Add a candidate for every legal placement of every distinct rotation of a piece
+         * @param candidates list to add to
+         * @param swap whether the pieces are swapped first
+         * @param piece the piece to play
+         * @param following the piece dealt after it, or -1 if unknown
+         * @param placements scratch array for the legal placements
+         */
+        private void addCandidates(List<CandidateTask> candidates, boolean swap, int piece, int following,
+                                   long[] placements) {
+            for (var rotation = 0; rotation < PieceShape.ROTATIONS; rotation++) {
+                if (isDuplicateRotation(piece, rotation)) continue;
+                grid.getLegalPlacements(GamePiece.getShape(piece, rotation), placements);
+                for (var y = 0; y < placements.length; y++) {
+                    for (long row = placements[y]; row != 0; row &= row - 1) {
+                        candidates.add(new CandidateTask(grid, swap, piece, rotation, Long.numberOfTrailingZeros(row),
+                            y, following, multiplier, random.split()));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Plays one candidate move and averages the rollouts after it
+     */
+    private class CandidateTask extends RecursiveTask<Double> {
+
+        /**
+         * Tasks are never serialized, but RecursiveTask is Serializable
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The grid before the move, shared and read only
+         */
+        private final Grid grid;
+
+        /**
+         * Whether the pieces are swapped first
+         */
+        private final boolean swap;
+
+        /**
+         * The piece played
+         */
+        private final int piece;
+
+        /**
+         * The rotation it is played in
+         */
+        private final int rotation;
+
+        /**
+         * Placement column
+         */
+        private final int x;
+
+        /**
+         * Placement row
+         */
+        private final int y;
+
+        /**
+         * The piece dealt after this one, or -1 if unknown
+         */
+        private final int following;
+
+        /**
+         * Score multiplier before the move
+         */
+        private final int multiplier;
+
+        /**
+         * Randomness for this candidate
+         */
+        private final SplittableRandom random;
+
+        /**
+         * Create a candidate
+         * @param grid the grid before the move
+         * @param swap whether the pieces are swapped first
+         * @param piece the piece played
+         * @param rotation the rotation it is played in
+         * @param x placement column
+         * @param y placement row
+         * @param following the piece dealt after this one, or -1 if unknown
+         * @param multiplier score multiplier before the move
+         * @param random randomness for this candidate
+         */
+        CandidateTask(Grid grid, boolean swap, int piece, int rotation, int x, int y, int following, int multiplier,
+                      SplittableRandom random) {
+            this.grid = grid;
+            this.swap = swap;
+            this.piece = piece;
+            this.rotation = rotation;
+            this.x = x;
+            this.y = y;
+            this.following = following;
+            this.multiplier = multiplier;
+            this.random = random;
+        }
+
+        /**
+         * Play the move then run the rollouts
+         * @return the score gained by the move plus the average rollout score
+         */
+        @Override
+        protected Double compute() {
+            Grid after = grid.copy();
+            after.playShape(GamePiece.getShape(piece, rotation), x, y);
+            int gained = clearLines(after, multiplier);
+            int nextMultiplier = gained < 0 ? 1 : multiplier + 1;
+
+            double total = new RolloutTask(after, following, nextMultiplier, rollouts, random).compute();
+            return Math.max(gained, 0) + total / rollouts;
+        }
+    }
+
+    /**
+     * Runs a number of rollouts from one board, splitting them between workers
+     */
+    private class RolloutTask extends RecursiveTask<Double> {
+
+        /**
+         * Tasks are never serialized, but RecursiveTask is Serializable
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The board the rollouts start from, shared and read only
+         */
+        private final Grid start;
+
+        /**
+         * The first piece played in each rollout, or -1 to pick at random
+         */
+        private final int first;
+
+        /**
+         * Score multiplier at the start
+         */
+        private final int multiplier;
+
+        /**
+         * Number of rollouts to run
+         */
+        private final int count;
+
+        /**
+         * Randomness for these rollouts
+         */
+        private final SplittableRandom random;
+
+        /**
+         * Create a batch of rollouts
+         * @param start the board to start from
+         * @param first the first piece played, or -1 to pick at random
+         * @param multiplier score multiplier at the start
+         * @param count number of rollouts
+         * @param random randomness for these rollouts
+         */
+        RolloutTask(Grid start, int first, int multiplier, int count, SplittableRandom random) {
+            this.start = start;
+            this.first = first;
+            this.multiplier = multiplier;
+            this.count = count;
+            this.random = random;
+        }
+
+        /**
+         * Run the rollouts, forking half of them if there are too many for one worker
+         * @return the total score of the rollouts
+         */
+        @Override
+        protected Double compute() {
+            if (count > ROLLOUTS_PER_TASK) {
+                int half = count / 2;
+                RolloutTask forked = new RolloutTask(start, first, multiplier, half, random.split());
+                forked.fork();
+                double own = new RolloutTask(start, first, multiplier, count - half, random).compute();
+                return own + forked.join();
+            }
+
+            Grid board = new Grid(start.getCols(), start.getRows());
+            long[] placements = new long[start.getRows()];
+            double total = 0;
+            for (var i = 0; i < count; i++) {
+                board.copyFrom(start);
+                total += rollout(board, placements);
+            }
+            return total;
+        }
+
+        /**
+         * Play random pieces on the board, preferring placements which clear lines
+         * @param board the board to play on
+         * @param placements scratch array for the legal placements
+         * @return the score of the rollout
+         */
+        private int rollout(Grid board, long[] placements) {
+            int score = 0;
+            int rolloutMultiplier = multiplier;
+            for (var step = 0; step < depth; step++) {
+                int piece = step == 0 && first >= 0 ? first : random.nextInt(GamePiece.PIECES);
+
+                int best = -1;
+                int bestLines = -1;
+                for (var sample = 0; sample < PLACEMENT_SAMPLES; sample++) {
+                    int placement = randomPlacement(board, piece, placements);
+                    if (placement < 0) break;
+                    int lines = board.countCompletedLines(GamePiece.getShape(piece, placement >>> 12),
+                        placement & 63, (placement >>> 6) & 63);
+                    if (lines > bestLines) {
+                        best = placement;
+                        bestLines = lines;
+                    }
+                }
+                if (best < 0) {
+                    return score - STUCK_PENALTY;
+                }
+
+                board.playShape(GamePiece.getShape(piece, best >>> 12), best & 63, (best >>> 6) & 63);
+                int gained = clearLines(board, rolloutMultiplier);
+                if (gained < 0) {
+                    rolloutMultiplier = 1;
+                } else {
+                    score += gained;
+                    rolloutMultiplier++;
+                }
+            }
+
+            int filled = 0;
+            for (var y = 0; y < board.getRows(); y++) {
+                filled += Long.bitCount(board.getRowMask(y));
+            }
+            return score + EMPTY_CELL_BONUS * (board.getRows() * board.getCols() - filled);
+        }
+
+        /**
+         * Pick a random legal placement of a piece, trying each rotation in turn from a random one
+         * @param board the board to play on
+         * @param piece the piece to place
+         * @param placements scratch array for the legal placements
+         * @return the placement packed as rotation, row and column, or -1 if the piece cannot be placed
+         */
+        private int randomPlacement(Grid board, int piece, long[] placements) {
+            int firstRotation = random.nextInt(PieceShape.ROTATIONS);
+            for (var turn = 0; turn < PieceShape.ROTATIONS; turn++) {
+                int rotation = (firstRotation + turn) & (PieceShape.ROTATIONS - 1);
+                board.getLegalPlacements(GamePiece.getShape(piece, rotation), placements);
+                int legal = 0;
+                for (long row : placements) {
+                    legal += Long.bitCount(row);
+                }
+                if (legal == 0) continue;
+
+                int chosen = random.nextInt(legal);
+                for (var y = 0; y < placements.length; y++) {
+                    int inRow = Long.bitCount(placements[y]);
+                    if (chosen < inRow) {
+                        long row = placements[y];
+                        for (var skip = 0; skip < chosen; skip++) {
+                            row &= row - 1;
+                        }
+                        return (rotation << 12) | (y << 6) | Long.numberOfTrailingZeros(row);
+                    }
+                    chosen -= inRow;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package uk.ac.soton.comp1206.game;
+
+import java.util.OptionalLong;
+import java.util.SplittableRandom;
+
+/**
+ * Deals pieces from a shuffled bag holding one of every piece, refilling and reshuffling the bag once it is empty.
+ * Every piece comes up once in each run of GamePiece.PIECES pieces, so there are no long droughts of a piece.
+ */
+public class BagPieceSource implements PieceSource {
+
+    /**
+     * The seed the generator was built from
+     */
+    private final long seed;
+
+    /**
+     * The generator the bag is shuffled with
+     */
+    private final SplittableRandom random;
+
+    /**
+     * The pieces in the bag, dealt from the front
+     */
+    private final int[] bag = new int[GamePiece.PIECES];
+
+    /**
+     * Index of the next piece in the bag to deal
+     */
+    private int position = GamePiece.PIECES;
+
+    /**
+     * Create a source with a freshly picked seed
+     */
+    public BagPieceSource() {
+        this(new SplittableRandom().nextLong());
+    }
+
+    /**
+     * Create a source which deals the same pieces as any other bag source with the same seed
+     * @param seed the seed
+     */
+    public BagPieceSource(long seed) {
+        this.seed = seed;
+        this.random = new SplittableRandom(seed);
+        for (var i = 0; i < bag.length; i++) {
+            bag[i] = i;
+        }
+    }
+
+    /**
+     * Deal the next piece from the bag, shuffling a new bag first if it is empty
+     * @return the piece number
+     */
+    @Override
+    public int next() {
+        if (position == bag.length) {
+            // Fisher-Yates shuffle
+            for (var i = bag.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int temp = bag[i];
+                bag[i] = bag[j];
+                bag[j] = temp;
+            }
+            position = 0;
+        }
+        return bag[position++];
+    }
+
+    /**
+     * Get the seed this source was built from
+     * @return the seed
+     */
+    @Override
+    public OptionalLong getSeed() {
+        return OptionalLong.of(seed);
+    }
+}
@@ -1,32 +1,34 @@
 package uk.ac.soton.comp1206.game;
 
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javafx.animation.AnimationTimer;
 import javafx.application.Platform;
 import javafx.beans.property.SimpleIntegerProperty;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import uk.ac.soton.comp1206.component.GameBlock;
-import uk.ac.soton.comp1206.component.GameBlockCoordinate;
+import uk.ac.soton.comp1206.event.ClockTickListener;
 import uk.ac.soton.comp1206.event.GameLoopListener;
 import uk.ac.soton.comp1206.event.LineClearedListener;
 import uk.ac.soton.comp1206.event.NextPieceListener;
+import uk.ac.soton.comp1206.replay.ReplayRecorder;
 import uk.ac.soton.comp1206.utility.Multimedia;
 
-import java.util.HashSet;
-import java.util.Random;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.io.IOException;
 
 /**
- * The Game class handles the main logic, state and properties of a single player game. Methods to
- * manipulate the game state and to handle actions made by the player should take place inside this
- * class.
+ * The Game class connects a single player GameEngine to the user interface. The rules and state of the game live in
+ * the engine; this class runs the game timer, plays sounds, and exposes the engine state as properties the scenes can
+ * bind to. Actions made by the player should be passed in through this class.
  */
 public class Game {
 
     private static final Logger logger = LogManager.getLogger(Game.class);
 
-    private Random random = new Random();
+    /**
+     * The engine holding the rules and state of the game
+     */
+    protected final GameEngine engine;
 
     /**
      * Number of rows
@@ -39,19 +41,19 @@ public class Game {
     protected final int cols;
 
     /**
-     * Listener for handling when the next piece
+     * The grid model linked to the game
      */
-    private NextPieceListener nextPieceListener;
+    protected final Grid grid;
 
     /**
-     * Listener for handling when a line needs to be cleared
+     * Listener for handling the game timer being reset
      */
-    private LineClearedListener lineClearedListener;
+    private GameLoopListener gameLoopListener;
 
     /**
-     * Listener for handling the game timer being reset
+     * Listener for handling when a line needs to be cleared
      */
-    private GameLoopListener gameLoopListener;
+    private LineClearedListener lineClearedListener;
 
     /**
      * User score
@@ -71,39 +73,100 @@ public class Game {
     /**
      * How many lives the user has left
      */
-    private final SimpleIntegerProperty livesRemaining = new SimpleIntegerProperty(3);
+    private final SimpleIntegerProperty livesRemaining = new SimpleIntegerProperty(GameEngine.STARTING_LIVES);
 
     /**
-     * Game timer which counts down how long the user has left to play a piece
+     * System property choosing the game clock: "pulse" for a PulseGameClock, anything else for a GameTimer
      */
-    private ScheduledExecutorService gameTimer;
+    public static final String CLOCK_PROPERTY = "tetrecs.clock";
 
     /**
-     * The grid model linked to the game
+     * Game timer which counts down how long the user has left to play a piece. Expiries are delivered on the
+     * JavaFX thread.
      */
-    protected final Grid grid;
+    private final GameClock gameTimer;
+
+    /**
+     * Told about every frame while the game timer is running, to draw the time left
+     */
+    private ClockTickListener clockTickListener;
 
     /**
-     * The current piece that the user can place and swap with the nextPiece if they want to
+     * Produces frame ticks when the game timer does not run on the JavaFX pulse itself
      */
-    private GamePiece currentPiece;
+    private final AnimationTimer frameTicker = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            tick(now, gameTimer.getDeadline(), TimeUnit.MILLISECONDS.toNanos(gameTimer.getPeriod()));
+        }
+    };
 
     /**
-     * The next piece that the user can place and swap with the currentPiece if they want to
+     * Records the game to a replay file, or null if not recording
      */
-    private GamePiece nextPiece;
+    private ReplayRecorder recorder;
 
     /**
-     * Create a new game with the specified rows and columns. Creates a corresponding grid model.
+     * Create a new game with the specified rows and columns. Creates a corresponding engine and grid model.
      * @param cols number of columns
      * @param rows number of rows
      */
     public Game(int cols, int rows) {
-        this.cols = cols;
-        this.rows = rows;
+        this(new GameEngine(cols, rows));
+    }
 
-        //Create a new grid model to represent the game state
-        this.grid = new Grid(cols,rows);
+    /**
+     * Create a new game with the specified rows and columns, dealing pieces from the given source
+     * @param cols number of columns
+     * @param rows number of rows
+     * @param pieceSource deals the pieces
+     */
+    public Game(int cols, int rows, PieceSource pieceSource) {
+        this(new GameEngine(cols, rows, pieceSource));
+    }
+
+    /**
+     * Create a new game with the specified rows and columns, dealing pieces from the given source and timing each
+     * piece on the given scheduler
+     * @param cols number of columns
+     * @param rows number of rows
+     * @param pieceSource deals the pieces
+     * @param scheduler schedules the game timer
+     */
+    public Game(int cols, int rows, PieceSource pieceSource, ScheduledExecutorService scheduler) {
+        this(new GameEngine(cols, rows, pieceSource), scheduler);
+    }
+
+    /**
+     * Create a new game driving the given engine
+     * @param engine the engine holding the rules and state of the game
+     */
+    protected Game(GameEngine engine) {
+        this(engine, null);
+    }
+
+    /**
+     * Create a new game driving the given engine, timing each piece on the given scheduler
+     * @param engine the engine holding the rules and state of the game
+     * @param scheduler schedules the game timer, or null to use the timer's own
+     */
+    protected Game(GameEngine engine, ScheduledExecutorService scheduler) {
+        this.engine = engine;
+        this.cols = engine.getCols();
+        this.rows = engine.getRows();
+        this.grid = engine.getGrid();
+
+        if ("pulse".equals(System.getProperty(CLOCK_PROPERTY))) {
+            gameTimer = new PulseGameClock(this::gameLoop, this::tick);
+        } else {
+            gameTimer = scheduler == null
+                ? new GameTimer(this::gameLoop, Platform::runLater)
+                : new GameTimer(this::gameLoop, Platform::runLater, scheduler);
+        }
+
+        // Whenever the engine restarts the time allowed for a piece, restart the game timer to match
+        engine.setGameLoopListener(this::restartGameTimer);
+        engine.setOnLineClear(this::lineCleared);
     }
 
     /**
@@ -111,125 +174,149 @@ public class Game {
      */
     public void start() {
         logger.info("Starting single player game");
+        startRecording();
         initialiseGame();
     }
 
+    /**
+     * Start recording the game to a new file in the replay directory. Must be called before any pieces are dealt.
+     */
+    protected void startRecording() {
+        try {
+            recorder = ReplayRecorder.create(ReplayRecorder.getDefaultDirectory(), engine);
+        } catch (IOException e) {
+            logger.error("Unable to record a replay of this game", e);
+        }
+    }
+
+    /**
+     * Finish the replay file, if the game is being recorded
+     */
+    private void stopRecording() {
+        if (recorder == null) return;
+        try {
+            recorder.close();
+        } catch (IOException e) {
+            logger.error("Unable to save the replay of this game", e);
+        }
+        recorder = null;
+    }
+
     /**
      * Initialise a new game and set up anything that needs to be done at the start
      */
     public void initialiseGame() {
-        logger.info("Initialising single player game");
-        gameTimer = Executors.newSingleThreadScheduledExecutor();
-        gameTimer.scheduleAtFixedRate(this::gameLoop, getTimerDelay(), getTimerDelay(), TimeUnit.MILLISECONDS);
-        gameLoopListener.handle(getTimerDelay());
-        nextPiece = spawnPiece();
-        nextPiece();
+        logger.info("Initialising single player game with seed {}", engine.getSeed());
+        engine.start();
     }
 
     /**
-     * Method that is repeatedly called by the game loop. Handles the logic for what happens when
+     * Restart the game timer so it fires after the given delay, and tell the GameLoopListener
+     * @param delay how long the user has to play a piece, in milliseconds
+     */
+    private void restartGameTimer(int delay) {
+        gameTimer.start(delay);
+        if (!(gameTimer instanceof PulseGameClock)) {
+            frameTicker.start();
+        }
+        if (gameLoopListener != null) {
+            gameLoopListener.handle(delay);
+        }
+    }
+
+    /**
+     * Pass a frame on to the ClockTickListener
+     * @param now the time of the frame, in nanoseconds
+     * @param deadline when the player runs out of time, in nanoseconds
+     * @param period the total time allowed for the piece, in nanoseconds
+     */
+    private void tick(long now, long deadline, long period) {
+        if (clockTickListener != null) {
+            clockTickListener.tick(now, deadline, period);
+        }
+    }
+
+    /**
+     * Called on the JavaFX thread each time the game timer expires. Handles the logic for what happens when
      * the user doesn't play a piece within the given time.
      */
     private void gameLoop() {
-        logger.info("Single player game loop triggered");
-        // If user loses a life and has greater than 0 lives
-        if (livesRemaining.get() > 0) {
-            Platform.runLater(() -> {
-                livesRemaining.set(livesRemaining.get() - 1);
-                Multimedia.switchAudioFile("lifelose.wav");
-                logger.info("Lives remaining: {}", livesRemaining.get());
-                nextPiece();
-                scoreMultiplier.set(1);
-            });
+        logger.info("Game loop triggered");
+        //The player cannot be out of time for a piece they have not been dealt. The timer restarts when it arrives.
+        if (engine.isWaitingForPiece()) {
+            logger.info("Still waiting for the current piece, no life lost");
+            return;
+        }
+        boolean alive = engine.timerExpired();
+        syncProperties();
+        if (alive) {
+            Multimedia.switchAudioFile("lifelose.wav");
+            logger.info("Lives remaining: {}", engine.getLives());
+            lifeLost();
         } else {
-            // If user loses a life and has less than 0 lives
-            Platform.runLater(() -> {
-                livesRemaining.set(livesRemaining.get() - 1);
-            });
             logger.info("Game over");
             Multimedia.switchAudioFile("explode.wav");
-            gameTimer.shutdown();
+            gameTimer.cancel();
+            frameTicker.stop();
+            stopRecording();
+            gameOver();
         }
     }
 
+    /**
+     * Called on the JavaFX thread after the player has lost a life but still has lives left
+     */
+    protected void lifeLost() {
+    }
+
+    /**
+     * Called on the JavaFX thread once the player has run out of lives
+     */
+    protected void gameOver() {
+    }
+
+    /**
+     * Called on the JavaFX thread after the player has successfully played a piece
+     */
+    protected void piecePlayed() {
+    }
+
     /**
      * Shuts down the game timer
      */
     public void gameTimerShutdown() {
-        gameTimer.shutdown();
+        gameTimer.cancel();
+        frameTicker.stop();
+        stopRecording();
     }
 
     /**
-     * Calculates how long the user has to play a piece depending on the level
-     * @return how long the user has to play a piece
+     * Copy the engine state into the properties the user interface is bound to
      */
-    private int getTimerDelay() {
-        return 12000 - (500 * gameLevel.intValue());
+    protected void syncProperties() {
+        userScore.set(engine.getScore());
+        scoreMultiplier.set(engine.getMultiplier());
+        gameLevel.set(engine.getLevel());
+        livesRemaining.set(engine.getLives());
     }
 
     /**
      * Handles line clearing logic
      */
     public void afterPiece() {
-        // loop through rows
-        HashSet<GameBlockCoordinate> blocksToBeCleared = new HashSet<>();
-        int lineCounter = 0;
-
-        // looking for horizontal lines
-        for (int i = 0; i < rows; i++) {
-            int rowSum = 0;
-            for (int j = 0; j < cols; j++) {
-                if (grid.get(i, j) > 0) {
-                    rowSum++;
-                }
-            }
-            // if a line is found
-            if (rowSum >= rows) {
-                for (int temp = 0; temp < rows; temp++) {
-                    blocksToBeCleared.add(new GameBlockCoordinate(i, temp));
-                }
-                lineCounter++;
-            }
-        }
+        int oldGameLevel = engine.getLevel();
+        engine.afterPiece();
+        levelChanged(oldGameLevel);
+        syncProperties();
+    }
 
-        // looking for vertical lines
-        for (int i = 0; i < rows; i++) {
-            int colSum = 0;
-            for (int j = 0; j < cols; j++) {
-                if (grid.get(j, i) > 0) {
-                    colSum++;
-                }
-            }
-            // if a line is found
-            if (colSum >= cols) {
-                for (int temp = 0; temp < cols; temp++) {
-                    blocksToBeCleared.add(new GameBlockCoordinate(temp, i));
-                }
-                lineCounter++;
-            }
-        }
-        logger.info("Line clearing function: found {} lines containing {} blocks", lineCounter, blocksToBeCleared.size());
-        // Clear the lines
-        if (!blocksToBeCleared.isEmpty()) {
-            Multimedia.switchAudioFile("clear.wav");
-            lineCleared(blocksToBeCleared);
-            for (GameBlockCoordinate x : blocksToBeCleared) {
-                grid.set(x.getX(), x.getY(), 0);
-            }
-            // Find value to update the score by and increase the score
-            int oldGameLevel = gameLevel.intValue();
-            int incScoreBy = calculateScore(lineCounter, blocksToBeCleared.size());
-            userScore.set(userScore.get() + incScoreBy);
-            logger.info("Increasing score by {}, new score = {}", incScoreBy, userScore);
-            scoreMultiplier.set(scoreMultiplier.get() + 1);
-            gameLevel.set(userScore.get() / 1000);
-
-            // If levelled up, play the level up sound
-            if (gameLevel.intValue() != oldGameLevel) {
-                Multimedia.switchAudioFile("level.wav");
-            }
-        } else {
-            scoreMultiplier.set(1);
+    /**
+     * Play the level up sound if the level has changed
+     * @param oldGameLevel the level before the last piece was played
+     */
+    private void levelChanged(int oldGameLevel) {
+        if (engine.getLevel() != oldGameLevel) {
+            Multimedia.switchAudioFile("level.wav");
         }
     }
 
@@ -238,8 +325,7 @@ public class Game {
      */
     public void rotateCurrentPiece() {
         Multimedia.switchAudioFile("rotate.wav");
-        currentPiece.rotate();
-        nextPieceListener.nextPiece(currentPiece, nextPiece);
+        engine.rotateCurrentPiece(1);
     }
 
     /**
@@ -249,78 +335,70 @@ public class Game {
      * @return value to increment current score by (or points gained by last play)
      */
     public int calculateScore(int linesCleared, int blocksCleared) {
-        return linesCleared * blocksCleared * 10 * scoreMultiplier.getValue();
+        return engine.calculateScore(linesCleared, blocksCleared);
     }
 
     /**
      * Updates currentPiece to a new randomly generated piece
      */
     public void nextPiece() {
-        currentPiece = nextPiece;
-        logger.info("The next piece is: {}", currentPiece);
-
-        nextPiece = spawnPiece();
-        logger.info("The following piece is: {}", nextPiece);
-
-        if (nextPieceListener != null) {
-            logger.info("Passing new piece to the nextPieceListener");
-            nextPieceListener.nextPiece(currentPiece, nextPiece);
-        }
+        engine.nextPiece();
     }
 
     /**
-     * Generates a new random piece
-     * @return randomly-generated piece
+     * Deals a new piece from the piece source
+     * @return the new piece
      */
     public GamePiece spawnPiece() {
-        int maxPieces = GamePiece.PIECES;
-        int randomPiece = random.nextInt(maxPieces);
-        logger.info("Picking random piece: {}", randomPiece);
-        var piece = GamePiece.createPiece(randomPiece);
-        return piece;
+        return engine.spawnPiece();
     }
 
     /**
-     * Handle what should happen when a particular block is clicked
-     * @param gameBlock the block that was clicked
+     * Play the current piece at the given position, playing the matching sound
+     * @param x placement column
+     * @param y placement row
      */
-    public void blockClicked(GameBlock gameBlock) {
-        // Get the position of this block
-        int x = gameBlock.getX();
-        int y = gameBlock.getY();
+    public void playPiece(int x, int y) {
+        int oldGameLevel = engine.getLevel();
 
-        if (grid.canPlayPiece(currentPiece, x, y)) {
+        if (engine.playPiece(x, y)) {
             // Can play the piece
             Multimedia.switchAudioFile("place.wav");
-
-            // Resets the timer to 0 and starts it again if the user correctly places a piece
-            // Timer is set to a new timer delay (in case the timer delay has changed)
-            gameTimer.shutdownNow();
-            gameTimer = Executors.newSingleThreadScheduledExecutor();
-            gameTimer.scheduleAtFixedRate(this::gameLoop, getTimerDelay(), getTimerDelay(), TimeUnit.MILLISECONDS);
-            if (gameLoopListener != null) {
-                gameLoopListener.handle(getTimerDelay());
-            }
-
-            grid.playPiece(currentPiece, x, y);
-            nextPiece();
-            afterPiece();
+            levelChanged(oldGameLevel);
+            syncProperties();
+            piecePlayed();
         } else {
             // Can't play the piece
             Multimedia.switchAudioFile("fail.wav");
         }
     }
 
+    /**
+     * Play a move chosen by the AutoPlayer, swapping and rotating the current piece first as needed
+     * @param move the move to play
+     * @return false if the pieces have changed since the move was found, so it was not played
+     */
+    public boolean playMove(AutoPlayer.Move move) {
+        if (!move.isFor(engine)) return false;
+        if (move.isSwap()) {
+            swapCurrentPiece();
+        }
+        int turns = (move.getRotation() - engine.getCurrentPiece().getRotation()) & (PieceShape.ROTATIONS - 1);
+        if (turns != 0) {
+            Multimedia.switchAudioFile("rotate.wav");
+            engine.rotateCurrentPiece(turns);
+        }
+        playPiece(move.getX(), move.getY());
+        return true;
+    }
+
     /**
      * Swaps the current piece with the next piece
      */
     public void swapCurrentPiece() {
         logger.info("Swapping current piece with the upcoming piece");
-        var temp = nextPiece;
-        nextPiece = currentPiece;
-        currentPiece = temp;
         Multimedia.switchAudioFile("rotate.wav");
-        nextPieceListener.nextPiece(currentPiece, nextPiece);
+        engine.swapCurrentPiece();
     }
 
     /**
@@ -328,7 +406,7 @@ public class Game {
      * @param nextPieceListener NextPieceListener to be attached to the Game instance
      */
     public void setNextPieceListener(NextPieceListener nextPieceListener) {
-        this.nextPieceListener = nextPieceListener;
+        engine.setNextPieceListener(nextPieceListener);
     }
 
     /**
@@ -339,6 +417,19 @@ public class Game {
         this.lineClearedListener = lineClearedListener;
     }
 
+    /**
+     * Plays the line clear sound and calls code that handles what happens when a line needs to be cleared
+     * @param clearedRows bitmask of the rows that need to be cleared
+     * @param clearedCols bitmask of the columns that need to be cleared
+     */
+    private void lineCleared(long clearedRows, long clearedCols) {
+        logger.info("Clearing {} lines", Long.bitCount(clearedRows) + Long.bitCount(clearedCols));
+        Multimedia.switchAudioFile("clear.wav");
+        if (lineClearedListener != null) {
+            lineClearedListener.handle(clearedRows, clearedCols);
+        }
+    }
+
     /**
      * Attaches a GameLoopListener to the Game instance
      * @param gameLoopListener GameLoopListener to be attached to the Game instance
@@ -348,13 +439,27 @@ public class Game {
     }
 
     /**
-     * Calls code that handles what happens when a line needs to be cleared
-     * @param blocksToBeCleared
+     * Attaches a ClockTickListener to the Game instance, told about every frame while the game timer is running
+     * @param clockTickListener ClockTickListener to be attached to the Game instance
      */
-    private void lineCleared(HashSet<GameBlockCoordinate> blocksToBeCleared) {
-        if(lineClearedListener != null) {
-            lineClearedListener.handle(blocksToBeCleared);
-        }
+    public void setOnClockTick(ClockTickListener clockTickListener) {
+        this.clockTickListener = clockTickListener;
+    }
+
+    /**
+     * Get the engine holding the rules and state of this game
+     * @return game engine
+     */
+    public GameEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Get the game timer, for example to find the deadline for playing the current piece
+     * @return game timer
+     */
+    public GameClock getGameTimer() {
+        return gameTimer;
     }
 
     /**
@@ -413,4 +518,4 @@ public class Game {
         return livesRemaining;
     }
 
-}
\ No newline at end of file
+}
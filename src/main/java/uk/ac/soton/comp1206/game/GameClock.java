@@ -0,0 +1,43 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * Counts down the time the player has to play a piece, expiring repeatedly at a fixed period until it is restarted
+ * or cancelled. Deadlines are on the System.nanoTime clock.
+ */
+public interface GameClock {
+
+    /**
+     * Start the countdown again, expiring after the given delay and then every delay after that
+     * @param delay the time allowed, in milliseconds
+     */
+    void start(long delay);
+
+    /**
+     * Stop the countdown
+     */
+    void cancel();
+
+    /**
+     * Check whether the clock is counting down
+     * @return true if started and not cancelled
+     */
+    boolean isRunning();
+
+    /**
+     * Get when the clock next expires, on the System.nanoTime clock
+     * @return the deadline, which is only meaningful while the clock is running
+     */
+    long getDeadline();
+
+    /**
+     * Get the time between expiries
+     * @return the period, in milliseconds
+     */
+    long getPeriod();
+
+    /**
+     * Get how long is left until the clock next expires
+     * @return the time remaining in milliseconds, or 0 if the clock is not running
+     */
+    long getRemaining();
+}
@@ -0,0 +1,486 @@
+package uk.ac.soton.comp1206.game;
+
+import java.util.OptionalLong;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.event.GameEventListener;
+import uk.ac.soton.comp1206.event.GameLoopListener;
+import uk.ac.soton.comp1206.event.LineClearedListener;
+import uk.ac.soton.comp1206.event.NextPieceListener;
+
+/**
+ * The GameEngine holds the rules and state of a game: the grid, the score, multiplier, level and lives, and the
+ * current and next pieces. It has no dependency on the JavaFX toolkit, audio or timers, so it can be run headless,
+ * for example by bots, simulations or a server validating moves.
+ *
+ * The engine does not keep time itself. Whenever the time allowed to play a piece restarts it notifies its
+ * GameLoopListener, and whoever owns the clock calls timerExpired if the player runs out of time.
+ *
+ * Pieces dealt by the server may not have arrived when they are needed. The engine then leaves the current or next
+ * piece empty until whoever runs the engine calls dealWaitingPieces, so the engine itself never waits.
+ *
+ * A GameEngine is not thread safe. Each engine should only be used from one thread at a time.
+ */
+public class GameEngine {
+
+    private static final Logger logger = LogManager.getLogger(GameEngine.class);
+
+    /**
+     * Number of lives the player starts with
+     */
+    public static final int STARTING_LIVES = 3;
+
+    /**
+     * Deals the pieces
+     */
+    private final PieceSource pieceSource;
+
+    /**
+     * Number of rows
+     */
+    protected final int rows;
+
+    /**
+     * Number of columns
+     */
+    protected final int cols;
+
+    /**
+     * The grid model linked to the game
+     */
+    protected final Grid grid;
+
+    /**
+     * Listener for handling when the next piece changes
+     */
+    private NextPieceListener nextPieceListener;
+
+    /**
+     * Listener for handling when a line needs to be cleared
+     */
+    private LineClearedListener lineClearedListener;
+
+    /**
+     * Listener for handling the game timer being reset
+     */
+    private GameLoopListener gameLoopListener;
+
+    /**
+     * Listener for every change to the game state, used to record replays
+     */
+    private GameEventListener gameEventListener;
+
+    /**
+     * User score
+     */
+    private int score = 0;
+
+    /**
+     * Score multiplier
+     */
+    private int multiplier = 1;
+
+    /**
+     * What level the user is on
+     */
+    private int level = 0;
+
+    /**
+     * How many lives the user has left. The game is over once this drops below 0.
+     */
+    private int lives = STARTING_LIVES;
+
+    /**
+     * The current piece that the user can place and swap with the nextPiece if they want to
+     */
+    private GamePiece currentPiece;
+
+    /**
+     * The next piece that the user can place and swap with the currentPiece if they want to
+     */
+    private GamePiece nextPiece;
+
+    /**
+     * Create a new game engine with the specified rows and columns, dealing random pieces from a fresh seed.
+     * Creates a corresponding grid model.
+     * @param cols number of columns
+     * @param rows number of rows
+     */
+    public GameEngine(int cols, int rows) {
+        this(cols, rows, new RandomPieceSource());
+    }
+
+    /**
+     * Create a new game engine with the specified rows and columns, dealing pieces from the given source.
+     * Creates a corresponding grid model.
+     * @param cols number of columns
+     * @param rows number of rows
+     * @param pieceSource deals the pieces
+     */
+    public GameEngine(int cols, int rows, PieceSource pieceSource) {
+        this.cols = cols;
+        this.rows = rows;
+        this.pieceSource = pieceSource;
+
+        //Create a new grid model to represent the game state
+        this.grid = new Grid(cols, rows);
+    }
+
+    /**
+     * Start the game by starting the timer and dealing the first two pieces
+     */
+    public void start() {
+        restartTimer();
+        initialisePieces();
+    }
+
+    /**
+     * Deal the current and next pieces at the start of the game
+     */
+    public void initialisePieces() {
+        currentPiece = null;
+        nextPiece = null;
+        dealPieces();
+        firePiecesChanged();
+    }
+
+    /**
+     * Notify the GameLoopListener that the player has the full timer delay to play the current piece
+     */
+    public void restartTimer() {
+        if (gameLoopListener != null) {
+            gameLoopListener.handle(getTimerDelay());
+        }
+    }
+
+    /**
+     * Calculates how long the user has to play a piece depending on the level
+     * @return how long the user has to play a piece, in milliseconds
+     */
+    public int getTimerDelay() {
+        return 12000 - (500 * level);
+    }
+
+    /**
+     * Play the current piece at the given position if it fits, then deal the next piece and clear any lines
+     * @param x placement column
+     * @param y placement row
+     * @return true if the piece was played, false if it does not fit or no piece has been dealt yet
+     */
+    public boolean playPiece(int x, int y) {
+        if (currentPiece == null || !grid.canPlayPiece(currentPiece, x, y)) {
+            return false;
+        }
+
+        if (gameEventListener != null) {
+            gameEventListener.piecePlayed(x, y);
+        }
+
+        // Timer is restarted with the delay for the current level before the piece is played
+        restartTimer();
+
+        // The placement and any lines it clears reach the views as one update
+        grid.beginBatch();
+        try {
+            grid.playPiece(currentPiece, x, y);
+            nextPiece();
+            afterPiece();
+        } finally {
+            grid.commitBatch();
+        }
+        return true;
+    }
+
+    /**
+     * Handles line clearing logic. The grid keeps track of which rows and columns are full as pieces
+     * are played, so no scan of the grid is needed.
+     * @return the number of lines cleared
+     */
+    public int afterPiece() {
+        long fullRows = grid.getFullRows();
+        long fullCols = grid.getFullCols();
+        int lineCounter = Long.bitCount(fullRows) + Long.bitCount(fullCols);
+
+        if (lineCounter > 0) {
+            int blocksCleared = grid.countCells(fullRows, fullCols);
+            logger.trace("Clearing {} lines containing {} blocks", lineCounter, blocksCleared);
+
+            if (gameEventListener != null) {
+                gameEventListener.linesCleared(fullRows, fullCols);
+            }
+            if (lineClearedListener != null) {
+                lineClearedListener.handle(fullRows, fullCols);
+            }
+            grid.clearLines(fullRows, fullCols);
+
+            // Find value to update the score by and increase the score
+            score += calculateScore(lineCounter, blocksCleared);
+            multiplier++;
+            level = score / 1000;
+        } else {
+            multiplier = 1;
+        }
+        return lineCounter;
+    }
+
+    /**
+     * Calculates how much the score should increase by given the number of blocks and lines cleared
+     * @param linesCleared number of lines cleared
+     * @param blocksCleared number of blocks cleared
+     * @return value to increment current score by (or points gained by last play)
+     */
+    public int calculateScore(int linesCleared, int blocksCleared) {
+        return linesCleared * blocksCleared * 10 * multiplier;
+    }
+
+    /**
+     * Handle the player running out of time to play a piece: lose a life, reset the multiplier and
+     * discard the current piece. Once there are no lives left the game is over.
+     * @return true if the game continues, false if it is now over
+     */
+    public boolean timerExpired() {
+        if (gameEventListener != null) {
+            gameEventListener.timerExpired();
+        }
+        lives--;
+        if (lives < 0) {
+            logger.trace("Game over");
+            return false;
+        }
+        nextPiece();
+        multiplier = 1;
+        return true;
+    }
+
+    /**
+     * Make the next piece the current piece and deal a new next piece
+     */
+    public void nextPiece() {
+        currentPiece = nextPiece;
+        nextPiece = null;
+        dealPieces();
+        logger.trace("The next piece is: {}, the following piece is: {}", currentPiece, nextPiece);
+        firePiecesChanged();
+    }
+
+    /**
+     * Deal the pieces which were not ready when they were needed, once the piece source has them. If the player was
+     * waiting for the current piece, they get the full timer delay to play it.
+     * @return true if any piece was dealt
+     */
+    public boolean dealWaitingPieces() {
+        boolean waited = currentPiece == null;
+        if (!dealPieces()) return false;
+        logger.trace("Dealt waiting pieces, the next piece is: {}, the following piece is: {}", currentPiece,
+            nextPiece);
+        if (waited && currentPiece != null) {
+            restartTimer();
+        }
+        firePiecesChanged();
+        return true;
+    }
+
+    /**
+     * Check whether the current piece is still waiting to be dealt
+     * @return true if there is no current piece to play
+     */
+    public boolean isWaitingForPiece() {
+        return currentPiece == null;
+    }
+
+    /**
+     * Deals a new piece from the piece source
+     * @return the new piece
+     */
+    public GamePiece spawnPiece() {
+        return GamePiece.createPiece(pieceSource.next());
+    }
+
+    /**
+     * Fill the current and then the next piece from the piece source, for as long as it has pieces ready, telling
+     * the GameEventListener about each one
+     * @return true if any piece was dealt
+     */
+    private boolean dealPieces() {
+        boolean dealt = false;
+        while (currentPiece == null || nextPiece == null) {
+            int number = pieceSource.poll();
+            if (number == PieceSource.NONE) break;
+            GamePiece piece = GamePiece.createPiece(number);
+            if (gameEventListener != null) {
+                gameEventListener.pieceSpawned(number);
+            }
+            if (currentPiece == null) {
+                currentPiece = piece;
+            } else {
+                nextPiece = piece;
+            }
+            dealt = true;
+        }
+        return dealt;
+    }
+
+    /**
+     * Rotates the current piece clockwise the given number of times, if it has been dealt
+     * @param rotations number of 90 degree clockwise rotations
+     */
+    public void rotateCurrentPiece(int rotations) {
+        if (currentPiece == null) return;
+        if (gameEventListener != null) {
+            gameEventListener.pieceRotated(rotations);
+        }
+        currentPiece.rotate(rotations);
+        firePiecesChanged();
+    }
+
+    /**
+     * Swaps the current piece with the next piece, unless either is still waiting to be dealt
+     */
+    public void swapCurrentPiece() {
+        if (currentPiece == null || nextPiece == null) return;
+        if (gameEventListener != null) {
+            gameEventListener.piecesSwapped();
+        }
+        var temp = nextPiece;
+        nextPiece = currentPiece;
+        currentPiece = temp;
+        firePiecesChanged();
+    }
+
+    /**
+     * Tell the NextPieceListener about the current and next pieces
+     */
+    private void firePiecesChanged() {
+        if (nextPieceListener != null) {
+            nextPieceListener.nextPiece(currentPiece, nextPiece);
+        }
+    }
+
+    /**
+     * Attaches a NextPieceListener to the engine
+     * @param nextPieceListener NextPieceListener to be attached
+     */
+    public void setNextPieceListener(NextPieceListener nextPieceListener) {
+        this.nextPieceListener = nextPieceListener;
+    }
+
+    /**
+     * Attaches a LineClearedListener to the engine
+     * @param lineClearedListener LineClearedListener to be attached
+     */
+    public void setOnLineClear(LineClearedListener lineClearedListener) {
+        this.lineClearedListener = lineClearedListener;
+    }
+
+    /**
+     * Attaches a GameLoopListener to the engine
+     * @param gameLoopListener GameLoopListener to be attached
+     */
+    public void setGameLoopListener(GameLoopListener gameLoopListener) {
+        this.gameLoopListener = gameLoopListener;
+    }
+
+    /**
+     * Attaches a GameEventListener to the engine
+     * @param gameEventListener GameEventListener to be attached
+     */
+    public void setGameEventListener(GameEventListener gameEventListener) {
+        this.gameEventListener = gameEventListener;
+    }
+
+    /**
+     * Get the grid model representing the state of the board
+     * @return game grid model
+     */
+    public Grid getGrid() {
+        return grid;
+    }
+
+    /**
+     * Get the source the pieces are dealt from
+     * @return piece source
+     */
+    public PieceSource getPieceSource() {
+        return pieceSource;
+    }
+
+    /**
+     * Get the seed the pieces are dealt from, which together with the moves made reproduces the game
+     * @return the seed, or empty if the pieces do not come from a seed
+     */
+    public OptionalLong getSeed() {
+        return pieceSource.getSeed();
+    }
+
+    /**
+     * Get the number of columns in this game
+     * @return number of columns
+     */
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * Get the number of rows in this game
+     * @return number of rows
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Get the user's current score
+     * @return current score
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Get the current score multiplier
+     * @return current score multiplier
+     */
+    public int getMultiplier() {
+        return multiplier;
+    }
+
+    /**
+     * Get the current game level
+     * @return current game level
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Get the number of lives the user has remaining
+     * @return lives remaining, which is -1 once the game is over
+     */
+    public int getLives() {
+        return lives;
+    }
+
+    /**
+     * Check whether the game is over
+     * @return true if the player has run out of lives
+     */
+    public boolean isGameOver() {
+        return lives < 0;
+    }
+
+    /**
+     * Get the piece the user is currently placing
+     * @return current piece
+     */
+    public GamePiece getCurrentPiece() {
+        return currentPiece;
+    }
+
+    /**
+     * Get the piece that will be dealt next
+     * @return next piece
+     */
+    public GamePiece getNextPiece() {
+        return nextPiece;
+    }
+}
@@ -7,7 +7,8 @@ import org.apache.logging.log4j.Logger;
  * Instances of GamePiece Represents the model of a specific Game Piece with it's block makeup.
  *
  * The GamePiece class also contains a factory for producing a GamePiece of a particular shape, as specified by it's
- * number.
+ * number. The shapes of every piece in every rotation are precomputed once and shared, so a GamePiece only tracks
+ * which piece it is and how far it has been rotated.
  */
 public class GamePiece {
 
@@ -19,19 +20,70 @@ public class GamePiece {
     public static final int PIECES = 15;
 
     /**
-     * The 2D grid representation of the shape of this piece
+     * Every piece in every rotation, indexed by piece number and then rotation. Built once, so creating
+     * and rotating pieces never builds a new block array.
      */
-    private int[][] blocks;
+    private static final PieceShape[][] SHAPES = {
+        //Line
+        PieceShape.rotations("Line", 1, new int[][] {{0, 0, 0}, {1, 1, 1}, {0, 0, 0}}),
+
+        //C
+        PieceShape.rotations("C", 2, new int[][] {{0, 0, 0}, {1, 1, 1}, {1, 0, 1}}),
+
+        //Plus
+        PieceShape.rotations("Plus", 3, new int[][] {{0, 1, 0}, {1, 1, 1}, {0, 1, 0}}),
+
+        //Dot
+        PieceShape.rotations("Dot", 4, new int[][] {{0, 0, 0}, {0, 1, 0}, {0, 0, 0}}),
+
+        //Square
+        PieceShape.rotations("Square", 5, new int[][] {{1, 1, 0}, {1, 1, 0}, {0, 0, 0}}),
+
+        //L
+        PieceShape.rotations("L", 6, new int[][] {{0, 0, 0}, {1, 1, 1}, {0, 0, 1}}),
+
+        //J
+        PieceShape.rotations("J", 7, new int[][] {{0, 0, 1}, {1, 1, 1}, {0, 0, 0}}),
+
+        //S
+        PieceShape.rotations("S", 8, new int[][] {{0, 0, 0}, {0, 1, 1}, {1, 1, 0}}),
+
+        //Z
+        PieceShape.rotations("Z", 9, new int[][] {{1, 1, 0}, {0, 1, 1}, {0, 0, 0}}),
+
+        //T
+        PieceShape.rotations("T", 10, new int[][] {{1, 0, 0}, {1, 1, 0}, {1, 0, 0}}),
+
+        //X
+        PieceShape.rotations("X", 11, new int[][] {{1, 0, 1}, {0, 1, 0}, {1, 0, 1}}),
+
+        //Corner
+        PieceShape.rotations("Corner", 12, new int[][] {{0, 0, 0}, {1, 1, 0}, {1, 0, 0}}),
+
+        //Inverse Corner
+        PieceShape.rotations("Inverse Corner", 13, new int[][] {{1, 0, 0}, {1, 1, 0}, {0, 0, 0}}),
+
+        //Diagonal
+        PieceShape.rotations("Diagonal", 14, new int[][] {{1, 0, 0}, {0, 1, 0}, {0, 0, 1}}),
+
+        //Double
+        PieceShape.rotations("Double", 15, new int[][] {{0, 1, 0}, {0, 1, 0}, {0, 0, 0}})
+    };
+
+    /**
+     * The piece number of this piece
+     */
+    private final int piece;
 
     /**
-     * The value of this piece
+     * How many times this piece has been rotated clockwise, from 0 to 3
      */
-    private final int value;
+    private int rotation;
 
     /**
-     * The name of this piece
+     * The shape of this piece in its current rotation
      */
-    private final String name;
+    private PieceShape shape;
 
     /**
      * Create a new GamePiece of the specified piece number
@@ -39,100 +91,7 @@ public class GamePiece {
      * @return the created GamePiece
      */
     public static GamePiece createPiece(int piece) {
-        switch (piece) {
-            //Line
-            case 0 -> {
-                int[][] blocks = {{0, 0, 0}, {1, 1, 1}, {0, 0, 0}};
-                return new GamePiece("Line", blocks, 1);
-            }
-
-            //C
-            case 1 -> {
-                int[][] blocks = {{0, 0, 0}, {1, 1, 1}, {1, 0, 1}};
-                return new GamePiece("C", blocks, 2);
-            }
-
-            //Plus
-            case 2 -> {
-                int[][] blocks = {{0, 1, 0}, {1, 1, 1}, {0, 1, 0}};
-                return new GamePiece("Plus", blocks, 3);
-            }
-
-            //Dot
-            case 3 -> {
-                int[][] blocks = {{0, 0, 0}, {0, 1, 0}, {0, 0, 0}};
-                return new GamePiece("Dot", blocks, 4);
-            }
-
-            //Square
-            case 4 -> {
-                int[][] blocks = {{1, 1, 0}, {1, 1, 0}, {0, 0, 0}};
-                return new GamePiece("Square", blocks, 5);
-            }
-
-            //L
-            case 5 -> {
-                int[][] blocks = {{0, 0, 0}, {1, 1, 1}, {0, 0, 1}};
-                return new GamePiece("L", blocks, 6);
-            }
-
-            //J
-            case 6 -> {
-                int[][] blocks = {{0, 0, 1}, {1, 1, 1}, {0, 0, 0}};
-                return new GamePiece("J", blocks, 7);
-            }
-
-            //S
-            case 7 -> {
-                int[][] blocks = {{0, 0, 0}, {0, 1, 1}, {1, 1, 0}};
-                return new GamePiece("S", blocks, 8);
-            }
-
-            //Z
-            case 8 -> {
-                int[][] blocks = {{1, 1, 0}, {0, 1, 1}, {0, 0, 0}};
-                return new GamePiece("Z", blocks, 9);
-            }
-
-            //T
-            case 9 -> {
-                int[][] blocks = {{1, 0, 0}, {1, 1, 0}, {1, 0, 0}};
-                return new GamePiece("T", blocks, 10);
-            }
-
-            //X
-            case 10 -> {
-                int[][] blocks = {{1, 0, 1}, {0, 1, 0}, {1, 0, 1}};
-                return new GamePiece("X", blocks, 11);
-            }
-
-            //Corner
-            case 11 -> {
-                int[][] blocks = {{0, 0, 0}, {1, 1, 0}, {1, 0, 0}};
-                return new GamePiece("Corner", blocks, 12);
-            }
-
-            //Inverse Corner
-            case 12 -> {
-                int[][] blocks = {{1, 0, 0}, {1, 1, 0}, {0, 0, 0}};
-                return new GamePiece("Inverse Corner", blocks, 13);
-            }
-
-            //Diagonal
-            case 13 -> {
-                int[][] blocks = {{1, 0, 0}, {0, 1, 0}, {0, 0, 1}};
-                return new GamePiece("Diagonal", blocks, 14);
-            }
-
-            //Double
-            case 14 -> {
-                int[][] blocks = {{0, 1, 0}, {0, 1, 0}, {0, 0, 0}};
-                return new GamePiece("Double", blocks, 15);
-            }
-        }
-
-        //Not a valid piece number
-        throw new IndexOutOfBoundsException("No such piece: " + piece);
+        return createPiece(piece, 0);
     }
 
     /**
@@ -142,31 +101,33 @@ public class GamePiece {
      * @return the created GamePiece
      */
     public static GamePiece createPiece(int piece, int rotation) {
-        var newPiece = createPiece(piece);
+        if (piece < 0 || piece >= PIECES) {
+            //Not a valid piece number
+            throw new IndexOutOfBoundsException("No such piece: " + piece);
+        }
+        return new GamePiece(piece, rotation);
+    }
 
-        newPiece.rotate(rotation);
-        return newPiece;
+    /**
+     * Get the precomputed shape of a piece in a given rotation
+     * @param piece piece number
+     * @param rotation number of times rotated clockwise
+     * @return the shared shape
+     */
+    public static PieceShape getShape(int piece, int rotation) {
+        return SHAPES[piece][rotation & (PieceShape.ROTATIONS - 1)];
     }
 
     /**
-     * Create a new GamePiece with the given name, block makeup and value. Should not be called directly, only via the
+     * Create a new GamePiece with the given piece number and rotation. Should not be called directly, only via the
      * factory.
-     * @param name name of the piece
-     * @param blocks block makeup of the piece
-     * @param value the value of this piece
-     */
-    private GamePiece(String name, int[][] blocks, int value) {
-        this.name = name;
-        this.blocks = blocks;
-        this.value = value;
-
-        //Use the shape of the block to create a grid with either 0 (empty) or the value of this shape for each block.
-        for(int x = 0; x < blocks.length; x++) {
-            for (int y = 0; y < blocks[x].length; y++) {
-                if(blocks[x][y] == 0) continue;
-                blocks[x][y] = value;
-            }
-        }
+     * @param piece piece number
+     * @param rotation number of times to rotate
+     */
+    private GamePiece(int piece, int rotation) {
+        this.piece = piece;
+        this.rotation = rotation & (PieceShape.ROTATIONS - 1);
+        this.shape = SHAPES[piece][this.rotation];
     }
 
     /**
@@ -174,15 +135,39 @@ public class GamePiece {
      * @return piece value
      */
     public int getValue() {
-        return value;
+        return shape.getValue();
+    }
+
+    /**
+     * Get the piece number of this piece
+     * @return piece number
+     */
+    public int getPieceNumber() {
+        return piece;
     }
 
     /**
-     * Get the block makeup of this piece
+     * Get how many times this piece has been rotated clockwise
+     * @return rotation, from 0 to 3
+     */
+    public int getRotation() {
+        return rotation;
+    }
+
+    /**
+     * Get the precomputed shape of this piece in its current rotation
+     * @return shape of the piece
+     */
+    public PieceShape getShape() {
+        return shape;
+    }
+
+    /**
+     * Get the block makeup of this piece. The array is shared between pieces, so must not be modified.
      * @return 2D grid of the blocks representing the piece shape
      */
     public int[][] getBlocks() {
-        return blocks;
+        return shape.getBlocks();
     }
 
     /**
@@ -190,29 +175,15 @@ public class GamePiece {
      * @param rotations number of rotations
      */
     public void rotate(int rotations) {
-        for(int rotated = 0; rotated < rotations; rotated ++) {
-            rotate();
-        }
+        rotation = (rotation + rotations) & (PieceShape.ROTATIONS - 1);
+        shape = SHAPES[piece][rotation];
     }
 
     /**
-     * Rotate this piece exactly once clockwise by rotating its 3x3 grid
+     * Rotate this piece exactly once clockwise
      */
     public void rotate() {
-        int[][] rotated = new int[blocks.length][blocks[0].length];
-        rotated[2][0] = blocks[0][0];
-        rotated[1][0] = blocks[0][1];
-        rotated[0][0] = blocks[0][2];
-
-        rotated[2][1] = blocks[1][0];
-        rotated[1][1] = blocks[1][1];
-        rotated[0][1] = blocks[1][2];
-
-        rotated[2][2] = blocks[2][0];
-        rotated[1][2] = blocks[2][1];
-        rotated[0][2] = blocks[2][2];
-
-        blocks = rotated;
+        rotate(1);
     }
 
     /**
@@ -220,9 +191,7 @@ public class GamePiece {
      * @return the name of this piece
      */
     public String toString() {
-        return this.name;
+        return shape.getName();
     }
 
-
-
 }
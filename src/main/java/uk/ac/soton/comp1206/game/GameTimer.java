@@ -0,0 +1,196 @@
+package uk.ac.soton.comp1206.game;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The default game clock, which counts down on a background thread. Timers share one long-lived scheduler thread, so
+ * restarting the countdown after each piece only replaces a scheduled task rather than starting a new thread. In the
+ * game that is the client's scheduler; timers created without one share a scheduler of their own.
+ *
+ * Once started, the timer expires repeatedly at a fixed period until it is restarted or cancelled. Each start or
+ * cancel begins a new generation, and an expiry is only delivered if its generation is still current when it runs
+ * on the callback executor. As long as the timer is started and cancelled on that same executor's thread, an expiry
+ * that was already on its way when the player played a piece is therefore dropped rather than costing a life.
+ */
+public class GameTimer implements GameClock {
+
+    /**
+     * Holds the scheduler shared by timers created without one, so its thread is only started if one is
+     */
+    private static class DefaultScheduler {
+
+        /**
+         * The scheduler thread shared by timers created without one
+         */
+        private static final ScheduledThreadPoolExecutor SCHEDULER = createScheduler();
+    }
+
+    /**
+     * Schedules the expiries
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Called when the timer expires
+     */
+    private final Runnable onExpiry;
+
+    /**
+     * Runs the expiry callback, for example on the JavaFX thread
+     */
+    private final Executor callbackExecutor;
+
+    /**
+     * Increases every time the timer is started or cancelled
+     */
+    private long generation;
+
+    /**
+     * The scheduled expiry, or null if the timer is not running
+     */
+    private ScheduledFuture<?> pending;
+
+    /**
+     * Time between expiries, in nanoseconds
+     */
+    private long period;
+
+    /**
+     * When the timer next expires, as a System.nanoTime value
+     */
+    private long deadline;
+
+    /**
+     * Create a stopped timer on the shared default scheduler
+     * @param onExpiry called each time the timer expires
+     * @param callbackExecutor runs the expiry callback
+     */
+    public GameTimer(Runnable onExpiry, Executor callbackExecutor) {
+        this(onExpiry, callbackExecutor, DefaultScheduler.SCHEDULER);
+    }
+
+    /**
+     * Create a stopped timer on the given scheduler
+     * @param onExpiry called each time the timer expires
+     * @param callbackExecutor runs the expiry callback
+     * @param scheduler schedules the expiries
+     */
+    public GameTimer(Runnable onExpiry, Executor callbackExecutor, ScheduledExecutorService scheduler) {
+        this.onExpiry = onExpiry;
+        this.callbackExecutor = callbackExecutor;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Create the shared scheduler, whose single daemon thread does not stop the application from exiting
+     * @return the scheduler
+     */
+    private static ScheduledThreadPoolExecutor createScheduler() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "game-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Cancelled expiries are removed straight away rather than left in the queue until they were due
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    /**
+     * Start the countdown again, expiring after the given delay and then every delay after that
+     * @param delay the time allowed, in milliseconds
+     */
+    @Override
+    public synchronized void start(long delay) {
+        cancelPending();
+        long current = ++generation;
+        period = TimeUnit.MILLISECONDS.toNanos(delay);
+        deadline = System.nanoTime() + period;
+        pending = scheduler.schedule(() -> expire(current), period, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stop the timer. Any expiry already on its way to the callback executor is dropped.
+     */
+    @Override
+    public synchronized void cancel() {
+        cancelPending();
+        generation++;
+    }
+
+    /**
+     * Cancel the scheduled expiry, if there is one
+     */
+    private void cancelPending() {
+        if (pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+    }
+
+    /**
+     * Runs on the scheduler thread when the deadline passes. Schedules the next expiry one period after this one,
+     * so the timer does not drift, then hands the callback to the callback executor.
+     * @param expected the generation this expiry belongs to
+     */
+    private synchronized void expire(long expected) {
+        if (expected != generation) return;
+        deadline += period;
+        pending = scheduler.schedule(() -> expire(expected), deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        callbackExecutor.execute(() -> {
+            if (isCurrent(expected)) {
+                onExpiry.run();
+            }
+        });
+    }
+
+    /**
+     * Check whether a generation is still current
+     * @param expected the generation to check
+     * @return true if the timer has not been started or cancelled since
+     */
+    private synchronized boolean isCurrent(long expected) {
+        return expected == generation;
+    }
+
+    /**
+     * Check whether the timer is counting down
+     * @return true if started and not cancelled
+     */
+    @Override
+    public synchronized boolean isRunning() {
+        return pending != null;
+    }
+
+    /**
+     * Get when the timer next expires, on the System.nanoTime clock
+     * @return the deadline, which is only meaningful while the timer is running
+     */
+    @Override
+    public synchronized long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Get the time between expiries
+     * @return the period, in milliseconds
+     */
+    @Override
+    public synchronized long getPeriod() {
+        return TimeUnit.NANOSECONDS.toMillis(period);
+    }
+
+    /**
+     * Get how long is left until the timer next expires
+     * @return the time remaining in milliseconds, or 0 if the timer is not running
+     */
+    @Override
+    public synchronized long getRemaining() {
+        if (pending == null) return 0;
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+    }
+}
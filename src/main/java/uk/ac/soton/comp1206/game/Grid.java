@@ -1,16 +1,27 @@
 package uk.ac.soton.comp1206.game;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
 import javafx.beans.property.IntegerProperty;
-import javafx.beans.property.SimpleIntegerProperty;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.event.GridListener;
 
 /**
  * The Grid is a model which holds the state of a game board. It is made up of a set of Integer values arranged in a 2D
  * arrow, with rows and columns.
  *
- * Each value inside the Grid is an IntegerProperty can be bound to enable modification and display of the contents of
- * the grid.
+ * The values are stored in a primitive array alongside an occupancy bitboard (one long per row, one bit per column),
+ * so the game rules can run without creating any JavaFX objects. An observable view of the grid, with an
+ * IntegerProperty per cell, is created on demand when a visual component asks for one and is kept in sync with
+ * the primitive values after each operation.
+ *
+ * Changes are published once per operation, both to the observable view and to any GridListeners, with the set of
+ * cells that changed. Operations made between beginBatch and commitBatch are published together when the batch is
+ * committed, so a view sees a piece being placed and the lines it completes being cleared as a single update.
+ * Changes are only tracked once something is observing the grid.
  *
  * The Grid contains functions related to modifying the model, for example, placing a piece inside the grid.
  *
@@ -20,6 +31,11 @@ public class Grid {
 
     private static final Logger logger = LogManager.getLogger(Grid.class);
 
+    /**
+     * The maximum number of rows or columns in a grid, limited by the width of the occupancy bitboard
+     */
+    public static final int MAX_SIZE = Long.SIZE;
+
     /**
      * The number of columns in this grid
      */
@@ -31,9 +47,60 @@ public class Grid {
     private final int rows;
 
     /**
-     * The grid is a 2D arrow with rows and columns of SimpleIntegerProperties.
+     * The value of every cell, stored row by row (index = y * cols + x)
+     */
+    private final byte[] cells;
+
+    /**
+     * Occupancy bitboard. Bit x of rowMasks[y] is set when the cell at x, y is not empty.
+     */
+    private final long[] rowMasks;
+
+    /**
+     * Transposed occupancy bitboard. Bit y of colMasks[x] is set when the cell at x, y is not empty.
+     */
+    private final long[] colMasks;
+
+    /**
+     * The mask of a completely filled row
+     */
+    private final long fullRowMask;
+
+    /**
+     * The mask of a completely filled column
+     */
+    private final long fullColMask;
+
+    /**
+     * Bit y is set when row y is completely filled. Kept up to date as cells change.
+     */
+    private long fullRows;
+
+    /**
+     * Bit x is set when column x is completely filled. Kept up to date as cells change.
      */
-    private final SimpleIntegerProperty[][] grid;
+    private long fullCols;
+
+    /**
+     * The observable view of this grid, or null if nothing has asked for one yet
+     */
+    private GridProperties properties;
+
+    /**
+     * Listeners told about changed cells
+     */
+    private final List<GridListener> listeners = new ArrayList<>();
+
+    /**
+     * Cells changed since the last publish, bit x of changed[y] for the cell at x, y. Null while nothing is
+     * observing the grid, so unobserved grids do not track changes.
+     */
+    private long[] changed;
+
+    /**
+     * Number of batches begun and not yet committed
+     */
+    private int batchDepth;
 
     /**
      * Create a new Grid with the specified number of columns and rows and initialise them
@@ -41,28 +108,149 @@ public class Grid {
      * @param rows number of rows
      */
     public Grid(int cols, int rows) {
+        if (cols < 1 || cols > MAX_SIZE || rows < 1 || rows > MAX_SIZE) {
+            throw new IllegalArgumentException("Grid size must be between 1 and " + MAX_SIZE + ": " + cols + "x" + rows);
+        }
         this.cols = cols;
         this.rows = rows;
 
-        //Create the grid itself
-        grid = new SimpleIntegerProperty[cols][rows];
+        //Create the grid itself, with every block empty
+        cells = new byte[cols * rows];
+        rowMasks = new long[rows];
+        colMasks = new long[cols];
+        fullRowMask = -1L >>> (MAX_SIZE - cols);
+        fullColMask = -1L >>> (MAX_SIZE - rows);
+    }
 
-        //Add a SimpleIntegerProperty to every block in the grid
-        for(var y = 0; y < rows; y++) {
-            for(var x = 0; x < cols; x++) {
-                grid[x][y] = new SimpleIntegerProperty(0);
+    /**
+     * Create an independent copy of this grid. The copy has no observable view until one is requested.
+     * @return a new grid holding the same values
+     */
+    public Grid copy() {
+        Grid copy = new Grid(cols, rows);
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    /**
+     * Replace the contents of this grid with the contents of another grid of the same size
+     * @param source the grid to copy values from
+     */
+    public void copyFrom(Grid source) {
+        if (source.cols != cols || source.rows != rows) {
+            throw new IllegalArgumentException("Cannot copy a " + source.cols + "x" + source.rows + " grid into a "
+                + cols + "x" + rows + " grid");
+        }
+        if (changed != null) {
+            // Only cells occupied in either grid can differ
+            for (var y = 0; y < rows; y++) {
+                for (long candidates = rowMasks[y] | source.rowMasks[y]; candidates != 0; candidates &= candidates - 1) {
+                    int x = Long.numberOfTrailingZeros(candidates);
+                    if (cells[y * cols + x] != source.cells[y * cols + x]) {
+                        changed[y] |= 1L << x;
+                    }
+                }
             }
         }
+        System.arraycopy(source.cells, 0, cells, 0, cells.length);
+        System.arraycopy(source.rowMasks, 0, rowMasks, 0, rows);
+        System.arraycopy(source.colMasks, 0, colMasks, 0, cols);
+        fullRows = source.fullRows;
+        fullCols = source.fullCols;
+        publish();
     }
 
     /**
      * Get the Integer property contained inside the grid at a given row and column index. Can be used for binding.
+     * The first call creates the observable view of the grid.
      * @param x column
      * @param y row
      * @return the IntegerProperty at the given x and y in this grid
      */
     public IntegerProperty getGridProperty(int x, int y) {
-        return grid[x][y];
+        if (properties == null) {
+            properties = new GridProperties(this);
+            startTracking();
+        }
+        return properties.get(x, y);
+    }
+
+    /**
+     * Add a listener told about the cells that change in each operation or batch
+     * @param listener the listener to add
+     */
+    public void addListener(GridListener listener) {
+        listeners.add(listener);
+        startTracking();
+    }
+
+    /**
+     * Remove a listener added with addListener
+     * @param listener the listener to remove
+     */
+    public void removeListener(GridListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Start tracking changed cells, if not already tracking them
+     */
+    private void startTracking() {
+        if (changed == null) {
+            changed = new long[rows];
+        }
+    }
+
+    /**
+     * Begin a batch. Changes are not published until the matching commitBatch. Batches can be nested, in which
+     * case the changes are published when the outermost batch is committed.
+     */
+    public void beginBatch() {
+        batchDepth++;
+    }
+
+    /**
+     * Commit a batch begun with beginBatch, publishing every cell changed during it if this is the outermost batch
+     * @throws IllegalStateException if no batch has been begun
+     */
+    public void commitBatch() {
+        if (batchDepth == 0) {
+            throw new IllegalStateException("commitBatch called without beginBatch");
+        }
+        batchDepth--;
+        publish();
+    }
+
+    /**
+     * Publish the changed cells to the observable view and the listeners, unless a batch is in progress
+     */
+    private void publish() {
+        if (batchDepth > 0 || changed == null) return;
+
+        var any = false;
+        for (long row : changed) {
+            if (row != 0) {
+                any = true;
+                break;
+            }
+        }
+        if (!any) return;
+
+        // Swap in a fresh set first, so a listener which changes the grid starts a new set of changes
+        long[] published = changed;
+        changed = new long[rows];
+
+        if (properties != null) {
+            for (var y = 0; y < rows; y++) {
+                for (long remaining = published[y]; remaining != 0; remaining &= remaining - 1) {
+                    int x = Long.numberOfTrailingZeros(remaining);
+                    properties.sync(x, y, get(x, y));
+                }
+            }
+        }
+        for (GridListener listener : listeners) {
+            listener.cellsChanged(this, published);
+        }
     }
 
     /**
@@ -72,7 +260,42 @@ public class Grid {
      * @param value the new value
      */
     public void set(int x, int y, int value) {
-        grid[x][y].set(value);
+        setCell(x, y, value);
+        publish();
+    }
+
+    /**
+     * Update the primitive value and occupancy of a cell and mark it as changed, without publishing the change
+     * @param x column
+     * @param y row
+     * @param value the new value
+     */
+    private void setCell(int x, int y, int value) {
+        Objects.checkIndex(x, cols);
+        Objects.checkIndex(y, rows);
+
+        int index = y * cols + x;
+        if (cells[index] == (byte) value) return;
+
+        long colBit = 1L << x;
+        long rowBit = 1L << y;
+
+        cells[index] = (byte) value;
+        if (changed != null) {
+            changed[y] |= colBit;
+        }
+        if (value != 0) {
+            rowMasks[y] |= colBit;
+            colMasks[x] |= rowBit;
+            // A row or column can only become full when one of its cells is filled
+            if (rowMasks[y] == fullRowMask) fullRows |= rowBit;
+            if (colMasks[x] == fullColMask) fullCols |= colBit;
+        } else {
+            rowMasks[y] &= ~colBit;
+            colMasks[x] &= ~rowBit;
+            fullRows &= ~rowBit;
+            fullCols &= ~colBit;
+        }
     }
 
     /**
@@ -83,25 +306,37 @@ public class Grid {
      * @return whether the piece can be played or not
      */
     public boolean canPlayPiece(GamePiece piece, int placeX, int placeY) {
-        logger.info("canPlayPiece called with piece: {}, placeX: {}, placeY: {}", piece, placeX, placeY);
+        logger.trace("canPlayPiece called with piece: {}, placeX: {}, placeY: {}", piece, placeX, placeY);
+        return canPlayShape(piece.getShape(), placeX, placeY);
+    }
+
+    /**
+     * Check whether a piece shape can be played in the grid at the given x, y. The piece fits if its bounding
+     * box is inside the grid and each row of the piece, shifted into place, does not overlap the occupancy
+     * mask of the grid row underneath it.
+     * @param shape the shape of the piece to play
+     * @param placeX placement X
+     * @param placeY placement Y
+     * @return whether the piece can be played or not
+     */
+    public boolean canPlayShape(PieceShape shape, int placeX, int placeY) {
+        if (placeX + shape.getMinX() < 0 || placeX + shape.getMaxX() >= cols
+            || placeY + shape.getMinY() < 0 || placeY + shape.getMaxY() >= rows) {
+            return false;
+        }
 
         int topX = placeX - 1;
         int topY = placeY - 1;
 
-        int[][] blocks = piece.getBlocks();
-
-        for (var blockX = 0; blockX < blocks.length; blockX++) {
-            for (var blockY = 0; blockY < blocks.length; blockY++) {
-                // blockX and blockY coordinate inside the blocks 3x3 array
-                var blockValue = blocks[blockX][blockY];
-                if (blockValue > 0) {
-                    // Check if we can place this block on our grid
-                    var currentGridValue = get(topX + blockX, topY + blockY);
-                    if (currentGridValue != 0) {
-                        logger.info("Unable to place piece, conflict at {} {}", placeX + blockX, placeY + blockY);
-                        return false;
-                    }
-                }
+        for (var blockY = 0; blockY < 3; blockY++) {
+            long pieceRow = shape.getRowMask(blockY);
+            if (pieceRow == 0) continue;
+
+            // Line the 3 bits of the piece row up with the grid columns
+            long shifted = topX >= 0 ? pieceRow << topX : pieceRow >>> -topX;
+            if ((rowMasks[topY + blockY] & shifted) != 0) {
+                logger.trace("Unable to place piece, conflict on row {}", topY + blockY);
+                return false;
             }
         }
         // Nothing in the way
@@ -115,51 +350,199 @@ public class Grid {
      * @param placeY placement Y
      */
     public void playPiece(GamePiece piece, int placeX, int placeY) {
-        logger.info("playPiece called with piece: {}, placeX: {}, placeY: {}", piece, placeX, placeY);
-
-        int topX = placeX - 1;
-        int topY = placeY - 1;
+        logger.trace("playPiece called with piece: {}, placeX: {}, placeY: {}", piece, placeX, placeY);
+        playShape(piece.getShape(), placeX, placeY);
+    }
 
-        int value = piece.getValue();
-        int[][] blocks = piece.getBlocks();
+    /**
+     * Play a piece shape by updating the grid with its blocks
+     * @param shape the shape of the piece to place
+     * @param placeX placement X
+     * @param placeY placement Y
+     */
+    public void playShape(PieceShape shape, int placeX, int placeY) {
+        int value = shape.getValue();
         // Return if we can't play the piece
-        if(!canPlayPiece(piece, placeX, placeY)) return;
-        for (var blockX = 0; blockX < blocks.length; blockX++) {
-            for (var blockY = 0; blockY < blocks.length; blockY++) {
-                // blockX and blockY coordinate inside the blocks 3x3 array
-                var blockValue = blocks[blockX][blockY];
-                if (blockValue > 0) {
-                    set(topX + blockX, topY + blockY, value);
-                }
+        if(!canPlayShape(shape, placeX, placeY)) return;
+        for (var block = 0; block < shape.getBlockCount(); block++) {
+            setCell(placeX + shape.getOffsetX(block), placeY + shape.getOffsetY(block), value);
+        }
+        publish();
+    }
+
+    /**
+     * Count how many rows and columns would become full if the given shape were played, without playing it.
+     * The placement must be legal.
+     * @param shape the shape of the piece to play
+     * @param placeX placement X
+     * @param placeY placement Y
+     * @return number of lines the placement would complete
+     */
+    public int countCompletedLines(PieceShape shape, int placeX, int placeY) {
+        int lines = 0;
+        for (var dy = 0; dy < 3; dy++) {
+            long pieceRow = shape.getRowMask(dy);
+            if (pieceRow == 0) continue;
+            long placed = placeX >= 1 ? pieceRow << (placeX - 1) : pieceRow >>> 1;
+            if ((rowMasks[placeY + dy - 1] | placed) == fullRowMask) lines++;
+        }
+        for (var dx = 0; dx < 3; dx++) {
+            long placed = 0;
+            for (var dy = 0; dy < 3; dy++) {
+                if ((shape.getRowMask(dy) & (1L << dx)) != 0) placed |= 1L << (placeY + dy - 1);
             }
+            if (placed != 0 && (colMasks[placeX + dx - 1] | placed) == fullColMask) lines++;
         }
+        return lines;
+    }
+
+    /**
+     * Find every position the given piece can legally be played at in its current rotation
+     * @param piece the piece to play
+     * @return one bitmask per row, with bit x of element y set when the piece can be played at x, y
+     */
+    public long[] getLegalPlacements(GamePiece piece) {
+        return getLegalPlacements(piece.getShape(), new long[rows]);
+    }
+
+    /**
+     * Find every position the given piece shape can legally be played at. Each block of the piece rules out
+     * the placements that would put it on an occupied cell, which is one shift and mask per block per row.
+     * @param shape the shape of the piece to play
+     * @param placements array of at least getRows() elements to fill in
+     * @return the placements array, with bit x of element y set when the piece can be played at x, y
+     */
+    public long[] getLegalPlacements(PieceShape shape, long[] placements) {
+        // Placements where the bounding box of the piece stays inside the grid
+        int lowX = -shape.getMinX();
+        int highX = cols - 1 - shape.getMaxX();
+        long inside = highX < lowX ? 0 : (-1L >>> (MAX_SIZE - 1 - highX)) & (-1L << lowX);
+
+        for (var placeY = 0; placeY < rows; placeY++) {
+            if (placeY + shape.getMinY() < 0 || placeY + shape.getMaxY() >= rows) {
+                placements[placeY] = 0;
+                continue;
+            }
+
+            long legal = inside;
+            for (var block = 0; block < shape.getBlockCount() && legal != 0; block++) {
+                int offsetX = shape.getOffsetX(block);
+                long occupied = rowMasks[placeY + shape.getOffsetY(block)];
+                // Move the occupied cells back to the placements that would cover them
+                legal &= ~(offsetX >= 0 ? occupied >>> offsetX : occupied << -offsetX);
+            }
+            placements[placeY] = legal;
+        }
+        return placements;
     }
 
     /**
      * Get the value represented at the given x and y index within the grid
      * @param x column
      * @param y row
-     * @return the value
+     * @return the value, or -1 if there is no such index
      */
     public int get(int x, int y) {
-        try {
-            //Get the value held in the property at the x and y index provided
-            return grid[x][y].get();
-        } catch (ArrayIndexOutOfBoundsException e) {
-            //No such index>>>>
+        if (x < 0 || x >= cols || y < 0 || y >= rows) {
             return -1;
         }
+        return cells[y * cols + x];
+    }
+
+    /**
+     * Check whether the cell at the given x and y index exists and is empty
+     * @param x column
+     * @param y row
+     * @return true if the cell is inside the grid and empty
+     */
+    public boolean isEmpty(int x, int y) {
+        return x >= 0 && x < cols && y >= 0 && y < rows && (rowMasks[y] & (1L << x)) == 0;
+    }
+
+    /**
+     * Get the occupancy bitmask of a row. Bit x is set when the cell at column x is not empty.
+     * @param y row
+     * @return occupancy bitmask of the row
+     */
+    public long getRowMask(int y) {
+        return rowMasks[y];
+    }
+
+    /**
+     * Get the occupancy bitmask of a column. Bit y is set when the cell at row y is not empty.
+     * @param x column
+     * @return occupancy bitmask of the column
+     */
+    public long getColMask(int x) {
+        return colMasks[x];
+    }
+
+    /**
+     * Get the rows which are completely filled. This is maintained as cells are changed, so it does not
+     * need to scan the grid.
+     * @return bitmask with bit y set for each full row y
+     */
+    public long getFullRows() {
+        return fullRows;
+    }
+
+    /**
+     * Get the columns which are completely filled. This is maintained as cells are changed, so it does
+     * not need to scan the grid.
+     * @return bitmask with bit x set for each full column x
+     */
+    public long getFullCols() {
+        return fullCols;
+    }
+
+    /**
+     * Count the number of distinct cells covered by the given rows and columns
+     * @param clearRows bitmask of rows
+     * @param clearCols bitmask of columns
+     * @return number of cells covered, counting cells where a row and column cross only once
+     */
+    public int countCells(long clearRows, long clearCols) {
+        int rowCount = Long.bitCount(clearRows);
+        int colCount = Long.bitCount(clearCols);
+        return rowCount * cols + colCount * rows - rowCount * colCount;
+    }
+
+    /**
+     * Set every cell in the given rows and columns to 0
+     * @param clearRows bitmask with bit y set for each row y to clear
+     * @param clearCols bitmask with bit x set for each column x to clear
+     */
+    public void clearLines(long clearRows, long clearCols) {
+        for (long remaining = clearRows; remaining != 0; remaining &= remaining - 1) {
+            int y = Long.numberOfTrailingZeros(remaining);
+            for (int x = 0; x < cols; x++) {
+                setCell(x, y, 0);
+            }
+        }
+        for (long remaining = clearCols; remaining != 0; remaining &= remaining - 1) {
+            int x = Long.numberOfTrailingZeros(remaining);
+            for (int y = 0; y < rows; y++) {
+                setCell(x, y, 0);
+            }
+        }
+        publish();
     }
 
     /**
      * Clear the grid by setting all cells to 0
      */
     public void clear() {
-        for (var y = 0; y < rows; y++) {
-            for (var x = 0; x < cols; x++) {
-                set(x, y, 0);
+        if (changed != null) {
+            for (var y = 0; y < rows; y++) {
+                changed[y] |= rowMasks[y];
             }
         }
+        Arrays.fill(cells, (byte) 0);
+        Arrays.fill(rowMasks, 0L);
+        Arrays.fill(colMasks, 0L);
+        fullRows = 0;
+        fullCols = 0;
+        publish();
     }
 
     /**
@@ -179,22 +562,25 @@ public class Grid {
     }
 
     /**
-     * Returns a flattened String representation of the Grid
+     * Returns a flattened String representation of the Grid, one column at a time
      * E.g., a grid of the following form:
      * a b c
      * d e f
      * g h i
-     * is returned as "a b c d e f g h i"
+     * is returned as "a d g b e h c f i"
      * @return Flattened String representation of the Grid
      */
     public String getFlattenedGrid() {
-        String myGridString = "";
-        for (int y = 0; y < rows; y++) {
-            for (int x = 0; x < cols; x++) {
-                myGridString += grid[y][x].get() + " ";
+        StringBuilder myGridString = new StringBuilder(cols * rows * 3);
+        for (int x = 0; x < cols; x++) {
+            for (int y = 0; y < rows; y++) {
+                if (myGridString.length() > 0) {
+                    myGridString.append(' ');
+                }
+                myGridString.append(cells[y * cols + x]);
             }
         }
-        return myGridString.trim();
+        return myGridString.toString();
     }
 
 }
@@ -0,0 +1,55 @@
+package uk.ac.soton.comp1206.game;
+
+import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.SimpleIntegerProperty;
+
+/**
+ * An observable view of a Grid. Holds one IntegerProperty per cell so that visual components
+ * such as the GameBoard can bind to the contents of the grid.
+ *
+ * The Grid itself only stores primitive values. The properties are created on demand the first time
+ * a view is requested, and the Grid pushes the cells that changed into them after each operation or batch, so grids used
+ * for simulation never create or update any properties.
+ */
+public class GridProperties {
+
+    /**
+     * The properties for each cell, indexed by column and then row
+     */
+    private final SimpleIntegerProperty[][] properties;
+
+    /**
+     * Create a new set of properties mirroring the current contents of the given grid
+     * @param grid the grid to mirror
+     */
+    GridProperties(Grid grid) {
+        properties = new SimpleIntegerProperty[grid.getCols()][grid.getRows()];
+
+        for (var y = 0; y < grid.getRows(); y++) {
+            for (var x = 0; x < grid.getCols(); x++) {
+                properties[x][y] = new SimpleIntegerProperty(grid.get(x, y));
+            }
+        }
+    }
+
+    /**
+     * Get the property for the given cell
+     * @param x column
+     * @param y row
+     * @return the IntegerProperty at the given x and y
+     */
+    IntegerProperty get(int x, int y) {
+        return properties[x][y];
+    }
+
+    /**
+     * Update the property for a single cell. Properties only fire listeners when the value actually
+     * changes, so syncing an unchanged cell is cheap.
+     * @param x column
+     * @param y row
+     * @param value the new value
+     */
+    void sync(int x, int y, int value) {
+        properties[x][y].set(value);
+    }
+}
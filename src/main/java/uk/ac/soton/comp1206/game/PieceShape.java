@@ -0,0 +1,212 @@
+package uk.ac.soton.comp1206.game;
+
+/**
+ * An immutable, precomputed description of one piece in one rotation. Holds the 3x3 block makeup
+ * alongside the forms the Grid needs to test and place the piece quickly: a bitmask per row of the
+ * 3x3 area, the offset of every block from the placement point, and the bounding box of the blocks.
+ *
+ * All offsets are relative to the placement point, which is the centre of the 3x3 area, so they range
+ * from -1 to 1. Shapes are shared between every GamePiece, so nothing returned from here may be modified.
+ */
+public final class PieceShape {
+
+    /**
+     * The number of distinct rotations of each piece
+     */
+    public static final int ROTATIONS = 4;
+
+    /**
+     * The name of the piece
+     */
+    private final String name;
+
+    /**
+     * The value of the piece
+     */
+    private final int value;
+
+    /**
+     * The 3x3 block makeup, indexed by x and then y, holding either 0 or the value of the piece
+     */
+    private final int[][] blocks;
+
+    /**
+     * Bit dx of rowMasks[dy] is set when the block at dx, dy of the 3x3 area is filled
+     */
+    private final long[] rowMasks;
+
+    /**
+     * The x offset of each block from the placement point
+     */
+    private final int[] offsetsX;
+
+    /**
+     * The y offset of each block from the placement point
+     */
+    private final int[] offsetsY;
+
+    /**
+     * The bounding box of the blocks, relative to the placement point
+     */
+    private final int minX, maxX, minY, maxY;
+
+    /**
+     * Build a shape from a 3x3 block makeup
+     * @param name name of the piece
+     * @param value value of the piece
+     * @param shape 3x3 block makeup, indexed by x and then y, with any non-zero entry being a block
+     */
+    private PieceShape(String name, int value, int[][] shape) {
+        this.name = name;
+        this.value = value;
+
+        blocks = new int[3][3];
+        rowMasks = new long[3];
+        int count = 0;
+        for (int x = 0; x < 3; x++) {
+            for (int y = 0; y < 3; y++) {
+                if (shape[x][y] == 0) continue;
+                blocks[x][y] = value;
+                rowMasks[y] |= 1L << x;
+                count++;
+            }
+        }
+
+        offsetsX = new int[count];
+        offsetsY = new int[count];
+        int lowX = 1, highX = -1, lowY = 1, highY = -1;
+        int index = 0;
+        for (int y = 0; y < 3; y++) {
+            for (int x = 0; x < 3; x++) {
+                if (blocks[x][y] == 0) continue;
+                offsetsX[index] = x - 1;
+                offsetsY[index] = y - 1;
+                lowX = Math.min(lowX, x - 1);
+                highX = Math.max(highX, x - 1);
+                lowY = Math.min(lowY, y - 1);
+                highY = Math.max(highY, y - 1);
+                index++;
+            }
+        }
+        minX = lowX;
+        maxX = highX;
+        minY = lowY;
+        maxY = highY;
+    }
+
+    /**
+     * Build all four rotations of a piece, starting with the given block makeup and rotating clockwise
+     * @param name name of the piece
+     * @param value value of the piece
+     * @param shape 3x3 block makeup of the unrotated piece
+     * @return the shape for each rotation
+     */
+    static PieceShape[] rotations(String name, int value, int[][] shape) {
+        PieceShape[] rotations = new PieceShape[ROTATIONS];
+        int[][] current = shape;
+        for (int rotation = 0; rotation < ROTATIONS; rotation++) {
+            rotations[rotation] = new PieceShape(name, value, current);
+
+            // Rotate the 3x3 grid once clockwise
+            int[][] rotated = new int[3][3];
+            for (int x = 0; x < 3; x++) {
+                for (int y = 0; y < 3; y++) {
+                    rotated[2 - y][x] = current[x][y];
+                }
+            }
+            current = rotated;
+        }
+        return rotations;
+    }
+
+    /**
+     * Get the name of the piece
+     * @return piece name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the value of the piece
+     * @return piece value
+     */
+    public int getValue() {
+        return value;
+    }
+
+    /**
+     * Get the 3x3 block makeup of the piece. Shared, so must not be modified.
+     * @return 2D grid of the blocks, indexed by x and then y
+     */
+    int[][] getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * Get the bitmask of a row of the 3x3 area. Bit dx is set when the block at dx, dy is filled.
+     * @param dy row of the 3x3 area, from 0 to 2
+     * @return bitmask of the row
+     */
+    public long getRowMask(int dy) {
+        return rowMasks[dy];
+    }
+
+    /**
+     * Get the number of blocks in the piece
+     * @return number of blocks
+     */
+    public int getBlockCount() {
+        return offsetsX.length;
+    }
+
+    /**
+     * Get the x offset of a block from the placement point
+     * @param block index of the block
+     * @return x offset, from -1 to 1
+     */
+    public int getOffsetX(int block) {
+        return offsetsX[block];
+    }
+
+    /**
+     * Get the y offset of a block from the placement point
+     * @param block index of the block
+     * @return y offset, from -1 to 1
+     */
+    public int getOffsetY(int block) {
+        return offsetsY[block];
+    }
+
+    /**
+     * Get the smallest x offset of any block from the placement point
+     * @return left edge of the bounding box
+     */
+    public int getMinX() {
+        return minX;
+    }
+
+    /**
+     * Get the largest x offset of any block from the placement point
+     * @return right edge of the bounding box
+     */
+    public int getMaxX() {
+        return maxX;
+    }
+
+    /**
+     * Get the smallest y offset of any block from the placement point
+     * @return top edge of the bounding box
+     */
+    public int getMinY() {
+        return minY;
+    }
+
+    /**
+     * Get the largest y offset of any block from the placement point
+     * @return bottom edge of the bounding box
+     */
+    public int getMaxY() {
+        return maxY;
+    }
+}
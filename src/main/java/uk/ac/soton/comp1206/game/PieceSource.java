@@ -0,0 +1,38 @@
+package uk.ac.soton.comp1206.game;
+
+import java.util.OptionalLong;
+
+/**
+ * Deals the stream of pieces for a game. Sources built from a seed deal the same stream every time they are built
+ * from that seed, so a game can be reproduced from its seed and the moves made in it.
+ */
+public interface PieceSource {
+
+    /**
+     * Returned by poll when the next piece is not ready yet
+     */
+    int NONE = -1;
+
+    /**
+     * Deal the next piece
+     * @return the piece number, from 0 to GamePiece.PIECES - 1
+     */
+    int next();
+
+    /**
+     * Deal the next piece if it is ready, without waiting for it. Sources which always have a piece ready deal it
+     * straight away.
+     * @return the piece number, or NONE if the piece is not ready yet
+     */
+    default int poll() {
+        return next();
+    }
+
+    /**
+     * Get the seed the stream was built from, if it has one
+     * @return the seed, or empty if the stream cannot be reproduced from a seed
+     */
+    default OptionalLong getSeed() {
+        return OptionalLong.empty();
+    }
+}
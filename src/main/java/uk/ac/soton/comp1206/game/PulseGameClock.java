@@ -0,0 +1,124 @@
+package uk.ac.soton.comp1206.game;
+
+import java.util.concurrent.TimeUnit;
+import javafx.animation.AnimationTimer;
+import uk.ac.soton.comp1206.event.ClockTickListener;
+
+/**
+ * A game clock driven by the JavaFX pulse rather than a background thread. One AnimationTimer checks the deadline
+ * and then tells its ClockTickListener about the frame, both using the frame's timestamp, so the timer bar always
+ * shows exactly the deadline that expires the piece and expiry happens on the first frame after the deadline with no
+ * hop between threads. Must only be used from the JavaFX thread.
+ */
+public class PulseGameClock implements GameClock {
+
+    /**
+     * Called when the clock expires
+     */
+    private final Runnable onExpiry;
+
+    /**
+     * Told about every frame while the clock is running
+     */
+    private final ClockTickListener tickListener;
+
+    /**
+     * Time between expiries, in nanoseconds
+     */
+    private long period;
+
+    /**
+     * When the clock next expires, as a System.nanoTime value
+     */
+    private long deadline;
+
+    /**
+     * Whether the clock is counting down
+     */
+    private boolean running = false;
+
+    /**
+     * Checks the deadline and renders on every frame
+     */
+    private final AnimationTimer pulse = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            if (running && now >= deadline) {
+                deadline += period;
+                onExpiry.run();
+            }
+            // The expiry may have ended the game
+            if (running) {
+                tickListener.tick(now, deadline, period);
+            }
+        }
+    };
+
+    /**
+     * Create a stopped clock
+     * @param onExpiry called on the JavaFX thread each time the clock expires
+     * @param tickListener told about every frame while the clock is running
+     */
+    public PulseGameClock(Runnable onExpiry, ClockTickListener tickListener) {
+        this.onExpiry = onExpiry;
+        this.tickListener = tickListener;
+    }
+
+    /**
+     * Start the countdown again, expiring after the given delay and then every delay after that
+     * @param delay the time allowed, in milliseconds
+     */
+    @Override
+    public void start(long delay) {
+        period = TimeUnit.MILLISECONDS.toNanos(delay);
+        deadline = System.nanoTime() + period;
+        running = true;
+        pulse.start();
+    }
+
+    /**
+     * Stop the countdown and stop listening for frames
+     */
+    @Override
+    public void cancel() {
+        running = false;
+        pulse.stop();
+    }
+
+    /**
+     * Check whether the clock is counting down
+     * @return true if started and not cancelled
+     */
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Get when the clock next expires
+     * @return the deadline on the System.nanoTime clock
+     */
+    @Override
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Get the time between expiries
+     * @return the period, in milliseconds
+     */
+    @Override
+    public long getPeriod() {
+        return TimeUnit.NANOSECONDS.toMillis(period);
+    }
+
+    /**
+     * Get how long is left until the clock next expires
+     * @return the time remaining in milliseconds, or 0 if the clock is not running
+     */
+    @Override
+    public long getRemaining() {
+        if (!running) return 0;
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+    }
+}
@@ -0,0 +1,54 @@
+package uk.ac.soton.comp1206.game;
+
+import java.util.OptionalLong;
+import java.util.SplittableRandom;
+
+/**
+ * Deals each piece independently and uniformly at random from a seeded generator
+ */
+public class RandomPieceSource implements PieceSource {
+
+    /**
+     * The seed the generator was built from
+     */
+    private final long seed;
+
+    /**
+     * The generator pieces are picked with
+     */
+    private final SplittableRandom random;
+
+    /**
+     * Create a source with a freshly picked seed
+     */
+    public RandomPieceSource() {
+        this(new SplittableRandom().nextLong());
+    }
+
+    /**
+     * Create a source which deals the same pieces as any other source with the same seed
+     * @param seed the seed
+     */
+    public RandomPieceSource(long seed) {
+        this.seed = seed;
+        this.random = new SplittableRandom(seed);
+    }
+
+    /**
+     * Deal a uniformly random piece
+     * @return the piece number
+     */
+    @Override
+    public int next() {
+        return random.nextInt(GamePiece.PIECES);
+    }
+
+    /**
+     * Get the seed this source was built from
+     * @return the seed
+     */
+    @Override
+    public OptionalLong getSeed() {
+        return OptionalLong.of(seed);
+    }
+}
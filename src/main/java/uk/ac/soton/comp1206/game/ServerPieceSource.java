@@ -0,0 +1,297 @@
+package uk.ac.soton.comp1206.game;
+
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.event.PieceArrivedListener;
+import uk.ac.soton.comp1206.network.Communicator;
+
+/**
+ * Deals the pieces sent by the multiplayer server, so that every player in a game gets the same pieces.
+ *
+ * Pieces are fetched ahead of when they are needed. The source keeps up to prefetch pieces ahead, counting both the
+ * pieces received and the requests still in flight, and when dealing a piece takes that below the low-water mark it
+ * tops back up to prefetch in one go. Received pieces wait in a ring buffer of ints.
+ *
+ * Pieces are offered from the network thread and dealt on the FX thread, which never waits for them. If a piece is
+ * needed before it has arrived, poll returns NONE and the game waits for it, and when it arrives the
+ * PieceArrivedListener is told so the game can deal it on its own thread. Every piece dealt is one the server sent.
+ */
+public class ServerPieceSource implements PieceSource {
+
+    private static final Logger logger = LogManager.getLogger(ServerPieceSource.class);
+
+    /**
+     * System property setting how many pieces to keep ahead
+     */
+    public static final String PREFETCH_PROPERTY = "tetrecs.piecePrefetch";
+
+    /**
+     * System property setting the low-water mark: when fewer pieces than this are ahead, more are requested
+     */
+    public static final String LOW_WATER_PROPERTY = "tetrecs.pieceLowWater";
+
+    /**
+     * Default number of pieces to keep ahead
+     */
+    public static final int DEFAULT_PREFETCH = 8;
+
+    /**
+     * Default low-water mark
+     */
+    public static final int DEFAULT_LOW_WATER = 6;
+
+    /**
+     * Used to request more pieces from the server
+     */
+    private final Communicator communicator;
+
+    /**
+     * Number of pieces to keep ahead
+     */
+    private final int prefetch;
+
+    /**
+     * Fewer pieces than this ahead triggers a top up
+     */
+    private final int lowWater;
+
+    /**
+     * Guards the buffer and counters
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Ring buffer of the pieces received but not yet dealt. Its length is a power of two.
+     */
+    private int[] ring;
+
+    /**
+     * Index in the ring of the next piece to deal
+     */
+    private int head;
+
+    /**
+     * Number of pieces in the ring
+     */
+    private int size;
+
+    /**
+     * Number of pieces requested from the server which have not arrived yet
+     */
+    private int inFlight;
+
+    /**
+     * Number of times a piece was needed before it had arrived
+     */
+    private int underflows;
+
+    /**
+     * Whether the game is waiting for a piece to arrive
+     */
+    private boolean waiting;
+
+    /**
+     * Told when a piece the game was waiting for arrives
+     */
+    private PieceArrivedListener pieceArrivedListener;
+
+    /**
+     * Create a source dealing pieces from the server, keeping the number of pieces ahead set by the
+     * tetrecs.piecePrefetch and tetrecs.pieceLowWater system properties
+     * @param communicator Communicator to request pieces with
+     */
+    public ServerPieceSource(Communicator communicator) {
+        this(communicator, Integer.getInteger(PREFETCH_PROPERTY, DEFAULT_PREFETCH),
+            Integer.getInteger(LOW_WATER_PROPERTY, DEFAULT_LOW_WATER));
+    }
+
+    /**
+     * Create a source dealing pieces from the server
+     * @param communicator Communicator to request pieces with
+     * @param prefetch number of pieces to keep ahead, at least 2 so the current and next pieces can be dealt at the
+     * start of the game
+     * @param lowWater fewer pieces than this ahead triggers a top up, at most prefetch
+     */
+    public ServerPieceSource(Communicator communicator, int prefetch, int lowWater) {
+        if (prefetch < 2 || lowWater < 0 || lowWater > prefetch) {
+            throw new IllegalArgumentException("Invalid piece prefetch " + prefetch + " with low-water mark " + lowWater);
+        }
+        this.communicator = communicator;
+        this.prefetch = prefetch;
+        this.lowWater = lowWater;
+        this.ring = new int[Integer.highestOneBit(prefetch * 2 - 1) << 1];
+    }
+
+    /**
+     * Ask the server for enough pieces to fill the buffer, at the start of the game
+     */
+    public void start() {
+        topUp(true);
+    }
+
+    /**
+     * Ask the server again for every piece which has not arrived, after reconnecting, since the requests or their
+     * replies may have been lost with the old connection
+     */
+    public void resend() {
+        int count;
+        lock.lock();
+        try {
+            count = inFlight;
+        } finally {
+            lock.unlock();
+        }
+        for (var i = 0; i < count; i++) {
+            communicator.send("PIECE");
+        }
+    }
+
+    /**
+     * Set the listener told when a piece the game was waiting for arrives
+     * @param listener the listener
+     */
+    public void setPieceArrivedListener(PieceArrivedListener listener) {
+        lock.lock();
+        try {
+            this.pieceArrivedListener = listener;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Add a piece received from the server to the back of the buffer, telling the PieceArrivedListener if the game
+     * was waiting for it. May be called from any thread.
+     * @param piece the piece number
+     */
+    public void offer(int piece) {
+        PieceArrivedListener listener = null;
+        lock.lock();
+        try {
+            if (size == ring.length) {
+                grow();
+            }
+            ring[(head + size) & (ring.length - 1)] = piece;
+            size++;
+            if (inFlight > 0) {
+                inFlight--;
+            }
+            if (waiting) {
+                waiting = false;
+                listener = pieceArrivedListener;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (listener != null) {
+            listener.pieceArrived();
+        }
+    }
+
+    /**
+     * Get the number of pieces received but not yet dealt
+     * @return number of buffered pieces
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of times the game needed a piece before it had arrived from the server
+     * @return number of underflows
+     */
+    public int getUnderflows() {
+        lock.lock();
+        try {
+            return underflows;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deal the piece at the front of the buffer, which must already have arrived
+     * @return the piece number
+     * @throws IllegalStateException if no piece has arrived
+     */
+    @Override
+    public int next() {
+        int piece = poll();
+        if (piece == NONE) {
+            throw new IllegalStateException("No piece has arrived from the server");
+        }
+        return piece;
+    }
+
+    /**
+     * Deal the piece at the front of the buffer if it has arrived, topping up the pieces ahead if they have fallen
+     * below the low-water mark. Never waits: if the buffer is empty, the PieceArrivedListener is told when the next
+     * piece arrives.
+     * @return the piece number, or NONE if no piece has arrived
+     */
+    @Override
+    public int poll() {
+        int piece;
+        lock.lock();
+        try {
+            if (size == 0) {
+                //Count each wait once, however often the game asks while it waits
+                if (!waiting) {
+                    waiting = true;
+                    underflows++;
+                    logger.warn("Needed a piece before the server sent it, waiting for it to arrive");
+                }
+                piece = NONE;
+            } else {
+                piece = ring[head];
+                head = (head + 1) & (ring.length - 1);
+                size--;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        //A game waiting for a piece always asks for more, even if the low-water mark would not
+        topUp(piece == NONE);
+        return piece;
+    }
+
+    /**
+     * Request enough pieces to bring the pieces ahead back up to prefetch
+     * @param always request even if the pieces ahead are not below the low-water mark
+     */
+    private void topUp(boolean always) {
+        int count;
+        lock.lock();
+        try {
+            int ahead = size + inFlight;
+            if (ahead >= prefetch || (!always && ahead >= lowWater)) return;
+            count = prefetch - ahead;
+            inFlight += count;
+        } finally {
+            lock.unlock();
+        }
+        for (var i = 0; i < count; i++) {
+            communicator.send("PIECE");
+        }
+    }
+
+    /**
+     * Double the size of the ring, which only happens if more pieces arrive than were asked for
+     */
+    private void grow() {
+        int[] larger = new int[ring.length * 2];
+        for (var i = 0; i < size; i++) {
+            larger[i] = ring[(head + i) & (ring.length - 1)];
+        }
+        ring = larger;
+        head = 0;
+    }
+}
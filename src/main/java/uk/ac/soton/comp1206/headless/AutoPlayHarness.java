@@ -0,0 +1,108 @@
+package uk.ac.soton.comp1206.headless;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import uk.ac.soton.comp1206.game.AutoPlayer;
+import uk.ac.soton.comp1206.game.BagPieceSource;
+import uk.ac.soton.comp1206.game.GameEngine;
+import uk.ac.soton.comp1206.game.PieceSource;
+import uk.ac.soton.comp1206.game.RandomPieceSource;
+import uk.ac.soton.comp1206.replay.ReplayRecorder;
+
+/**
+ * Plays games headless with the AutoPlayer and reports the scores and how fast moves were found. Useful for
+ * stress-testing the scoring rules and levels, and for checking how the search scales with the number of threads.
+ *
+ * Options, all optional: --games N, --cols N, --rows N, --rollouts N, --depth N, --threads N, --max-moves N,
+ * --seed N, --pieces random|bag and --record DIRECTORY to save a replay of every game. Each game deals its pieces
+ * from a seed derived from --seed, and the search splits its randomness the same way whatever the thread count, so a
+ * run with the same options replays exactly the same games.
+ */
+public class AutoPlayHarness {
+
+    /**
+     * Run the harness
+     * @param args command line options
+     * @throws IOException if a replay cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        int games = 5;
+        int cols = 5;
+        int rows = 5;
+        int rollouts = AutoPlayer.DEFAULT_ROLLOUTS;
+        int depth = AutoPlayer.DEFAULT_DEPTH;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int maxMoves = 500;
+        long seed = System.nanoTime();
+        String pieces = "random";
+        Path record = null;
+
+        for (var i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--games" -> games = Integer.parseInt(value);
+                case "--cols" -> cols = Integer.parseInt(value);
+                case "--rows" -> rows = Integer.parseInt(value);
+                case "--rollouts" -> rollouts = Integer.parseInt(value);
+                case "--depth" -> depth = Integer.parseInt(value);
+                case "--threads" -> threads = Integer.parseInt(value);
+                case "--max-moves" -> maxMoves = Integer.parseInt(value);
+                case "--seed" -> seed = Long.parseLong(value);
+                case "--pieces" -> pieces = value;
+                case "--record" -> record = Paths.get(value);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        System.out.printf("Playing %d games on %dx%d with %d rollouts of depth %d on %d threads (seed %d)%n",
+            games, cols, rows, rollouts, depth, threads, seed);
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        SplittableRandom seeds = new SplittableRandom(seed);
+        AutoPlayer autoPlayer = new AutoPlayer(pool, rollouts, depth, seeds.split());
+
+        long totalMoves = 0;
+        long totalScore = 0;
+        long started = System.nanoTime();
+        for (var game = 1; game <= games; game++) {
+            long gameSeed = seeds.nextLong();
+            PieceSource pieceSource = switch (pieces) {
+                case "random" -> new RandomPieceSource(gameSeed);
+                case "bag" -> new BagPieceSource(gameSeed);
+                default -> throw new IllegalArgumentException("Unknown piece source: " + pieces);
+            };
+            GameEngine engine = new GameEngine(cols, rows, pieceSource);
+            ReplayRecorder recorder = record == null ? null : ReplayRecorder.create(record, engine);
+            engine.start();
+
+            int moves = 0;
+            while (!engine.isGameOver() && moves < maxMoves) {
+                AutoPlayer.Move move = autoPlayer.findBestMove(engine);
+                if (move == null || !AutoPlayer.playMove(engine, move)) {
+                    // Nowhere to play, so run the clock down
+                    engine.timerExpired();
+                } else {
+                    moves++;
+                }
+            }
+
+            if (recorder != null) {
+                recorder.close();
+            }
+
+            totalMoves += moves;
+            totalScore += engine.getScore();
+            System.out.printf("Game %d (seed %d): score %d, level %d, %d moves, %s%n", game, gameSeed,
+                engine.getScore(), engine.getLevel(), moves,
+                engine.isGameOver() ? "out of lives" : "move limit reached");
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        pool.shutdown();
+
+        System.out.printf("Average score %.1f, %d moves in %.2fs (%.1f moves/s)%n",
+            (double) totalScore / games, totalMoves, seconds, totalMoves / seconds);
+    }
+}
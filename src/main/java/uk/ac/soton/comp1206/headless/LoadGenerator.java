@@ -0,0 +1,602 @@
+package uk.ac.soton.comp1206.headless;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import uk.ac.soton.comp1206.game.GameEngine;
+import uk.ac.soton.comp1206.game.GamePiece;
+import uk.ac.soton.comp1206.game.ServerPieceSource;
+import uk.ac.soton.comp1206.network.BoardCodec;
+import uk.ac.soton.comp1206.network.Communicator;
+import uk.ac.soton.comp1206.network.Message;
+import uk.ac.soton.comp1206.server.LocalServer;
+import uk.ac.soton.comp1206.ui.ClientExecutor;
+
+/**
+ * Load tests a multiplayer server with headless bots. Each bot has its own Communicator and plays by the multiplayer
+ * rules: a GameEngine dealing from a ServerPieceSource, sending its BOARD and SCORE after every piece and its LIVES
+ * when it runs out of time. Bots are grouped into channels, which the first bot of each group creates and starts,
+ * and they chat every so often.
+ *
+ * Every bot runs on its own virtual thread when the JVM has them, found by reflection so the tool still runs on
+ * Java 17, where it falls back to platform threads. At the end it reports the messages sent and received per second,
+ * percentiles of how long a BOARD takes to reach the other players in the channel, and the errors seen.
+ *
+ * Options, all optional: --url URL of the server (a LocalServer is started if not given), --bots N, --players N per
+ * channel, --moves N per bot, --interval MILLISECONDS between moves, --chat N moves between chat messages,
+ * --cols N, --rows N, --deltas true|false to send delta boards, and --seed N.
+ */
+public class LoadGenerator {
+
+    /**
+     * How long a bot waits for each step of setting up its game, in seconds
+     */
+    private static final long SETUP_TIMEOUT = 30;
+
+    /**
+     * Number of pieces which must arrive before a bot deals its first pieces: the current piece and the next piece
+     */
+    private static final int START_PIECES = 2;
+
+    /**
+     * Number of boards each bot remembers sending, to match up with the copies other bots receive
+     */
+    private static final int BOARDS_REMEMBERED = 32;
+
+    /**
+     * Times the heartbeats and runs the writers of every bot's Communicator, as the game does for its one
+     */
+    private final ClientExecutor executor = new ClientExecutor();
+
+    /**
+     * Bots by nickname, so a received BOARD can be matched to when its sender sent it
+     */
+    private final Map<String, Bot> bots = new ConcurrentHashMap<>();
+
+    /**
+     * Messages received by every bot
+     */
+    private final LongAdder received = new LongAdder();
+
+    /**
+     * Errors seen by every bot: ERROR replies, failed setup steps and exceptions
+     */
+    private final LongAdder errors = new LongAdder();
+
+    /**
+     * Released once every bot has started playing or given up setting up its game
+     */
+    private final CountDownLatch playing;
+
+    /**
+     * When every bot was playing, as a System.nanoTime value
+     */
+    private long started;
+
+    /**
+     * Messages sent by every bot before they were all playing
+     */
+    private long sentBeforeStart;
+
+    /**
+     * Messages received by every bot before they were all playing
+     */
+    private long receivedBeforeStart;
+
+    /**
+     * Latencies of every BOARD received, in nanoseconds
+     */
+    private long[] latencies = new long[1024];
+
+    /**
+     * Number of latencies recorded
+     */
+    private int latencyCount;
+
+    /**
+     * Create a load test
+     * @param botCount number of bots
+     */
+    private LoadGenerator(int botCount) {
+        playing = new CountDownLatch(botCount);
+    }
+
+    /**
+     * Run the load test
+     * @param args command line options
+     * @throws IOException if the local server cannot be started
+     * @throws InterruptedException if interrupted while the bots are playing
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String url = null;
+        int botCount = 100;
+        int players = 4;
+        int moves = 50;
+        long interval = 200;
+        int chat = 10;
+        int cols = 5;
+        int rows = 5;
+        boolean deltas = false;
+        long seed = System.nanoTime();
+
+        for (var i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--url" -> url = value;
+                case "--bots" -> botCount = Integer.parseInt(value);
+                case "--players" -> players = Integer.parseInt(value);
+                case "--moves" -> moves = Integer.parseInt(value);
+                case "--interval" -> interval = Long.parseLong(value);
+                case "--chat" -> chat = Integer.parseInt(value);
+                case "--cols" -> cols = Integer.parseInt(value);
+                case "--rows" -> rows = Integer.parseInt(value);
+                case "--deltas" -> deltas = Boolean.parseBoolean(value);
+                case "--seed" -> seed = Long.parseLong(value);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        LocalServer server = null;
+        if (url == null) {
+            server = new LocalServer(0, seed);
+            server.start();
+            url = server.getUrl();
+        }
+
+        ExecutorService threads = botThreads();
+        System.out.printf("Running %d bots in channels of %d against %s, %d moves each every %dms%n",
+            botCount, players, url, moves, interval);
+
+        LoadGenerator generator = new LoadGenerator(botCount);
+        SplittableRandom seeds = new SplittableRandom(seed);
+        String run = Long.toString(seed & 0xFFFFFF, 36);
+        //Fixed copies of the options, for the bots created on their own threads
+        String serverUrl = url;
+        int botCols = cols;
+        int botRows = rows;
+        int botMoves = moves;
+        int botChat = chat;
+        long botInterval = interval;
+        boolean botDeltas = deltas;
+        Group group = null;
+        for (var i = 0; i < botCount; i++) {
+            if (i % players == 0) {
+                group = new Group("load-" + run + "-" + (i / players), Math.min(players, botCount - i));
+            }
+            //Each bot connects on its own thread, so the connections are made in parallel
+            String nickname = "bot" + run + "-" + i;
+            Group botGroup = group;
+            boolean host = i % players == 0;
+            SplittableRandom random = seeds.split();
+            threads.execute(() -> {
+                Bot bot;
+                try {
+                    bot = generator.new Bot(nickname, serverUrl, botGroup, host, botCols, botRows, botDeltas,
+                        botMoves, botInterval, botChat, random);
+                } catch (RuntimeException e) {
+                    System.err.println(nickname + ": " + e.getMessage());
+                    generator.errors.increment();
+                    generator.playing.countDown();
+                    return;
+                }
+                bot.run();
+            });
+        }
+
+        //Only count the messages sent once every bot is playing, not those setting up the games
+        generator.playing.await();
+        generator.startClock();
+        threads.shutdown();
+        threads.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+
+        generator.report();
+        generator.executor.shutdown();
+        if (server != null) {
+            System.out.printf("Local server: %d messages received, %d sent%n", server.getReceived(),
+                server.getSent());
+            server.stop();
+        }
+    }
+
+    /**
+     * Create an executor running each bot on its own thread: a virtual thread if the JVM has them, otherwise a
+     * platform thread
+     * @return the executor
+     */
+    private static ExecutorService botThreads() {
+        ExecutorService executor = ClientExecutor.newVirtualThreadExecutor();
+        if (executor != null) {
+            System.out.println("Bots run on virtual threads");
+            return executor;
+        }
+        System.out.println("Virtual threads are not available, bots run on platform threads");
+        return Executors.newCachedThreadPool();
+    }
+
+    /**
+     * Record how long a BOARD took to arrive
+     * @param latency the latency in nanoseconds
+     */
+    private synchronized void recordLatency(long latency) {
+        if (latencyCount == latencies.length) {
+            latencies = Arrays.copyOf(latencies, latencies.length * 2);
+        }
+        latencies[latencyCount++] = latency;
+    }
+
+    /**
+     * Print the results, counting from when every bot was playing
+     */
+    private synchronized void report() {
+        double seconds = (System.nanoTime() - started) / 1e9;
+        long sent = -sentBeforeStart;
+        long coalesced = 0;
+        long dropped = 0;
+        long sendLatency = 0;
+        int maxDepth = 0;
+        int underflows = 0;
+        for (Bot bot : bots.values()) {
+            sent += bot.communicator.getSendQueue().getSent();
+            coalesced += bot.communicator.getSendQueue().getCoalesced();
+            dropped += bot.communicator.getSendQueue().getDropped();
+            sendLatency = Math.max(sendLatency, bot.communicator.getSendQueue().getMaxLatency());
+            maxDepth = Math.max(maxDepth, bot.communicator.getSendQueue().getMaxDepth());
+            underflows += bot.pieceSource.getUnderflows();
+        }
+
+        System.out.printf("Ran for %.2fs%n", seconds);
+        long received = this.received.sum() - receivedBeforeStart;
+        System.out.printf("Sent %d messages (%.1f/s), received %d (%.1f/s)%n", sent, sent / seconds,
+            received, received / seconds);
+        System.out.printf("Send queues: %d coalesced, %d dropped, deepest %d, slowest %.2fms%n", coalesced, dropped,
+            maxDepth, sendLatency / 1e6);
+
+        long[] sorted = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(sorted);
+        if (sorted.length > 0) {
+            System.out.printf("BOARD latency over %d boards: p50 %.2fms, p90 %.2fms, p99 %.2fms, max %.2fms%n",
+                sorted.length, percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99),
+                sorted[sorted.length - 1] / 1e6);
+        } else {
+            System.out.println("No BOARD messages were received");
+        }
+        System.out.printf("Errors: %d, piece underflows: %d%n", errors.sum(), underflows);
+    }
+
+    /**
+     * Start timing the run once every bot is playing, counting only the messages from then on
+     */
+    private synchronized void startClock() {
+        started = System.nanoTime();
+        sentBeforeStart = 0;
+        for (Bot bot : bots.values()) {
+            sentBeforeStart += bot.communicator.getSendQueue().getSent();
+        }
+        receivedBeforeStart = received.sum();
+    }
+
+    /**
+     * Get a percentile of some sorted latencies
+     * @param sorted latencies in nanoseconds, in ascending order
+     * @param percentile the percentile, from 0 to 100
+     * @return the latency in milliseconds
+     */
+    private static double percentile(long[] sorted, int percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    /**
+     * A channel of bots: the first creates it and starts the game once the rest have joined
+     */
+    private static class Group {
+
+        /**
+         * The channel name
+         */
+        private final String channel;
+
+        /**
+         * Released once the channel has been created
+         */
+        private final CountDownLatch created = new CountDownLatch(1);
+
+        /**
+         * Released once every bot in the group has joined
+         */
+        private final CountDownLatch joined;
+
+        /**
+         * Create a group
+         * @param channel the channel name
+         * @param size number of bots in the group
+         */
+        private Group(String channel, int size) {
+            this.channel = channel;
+            this.joined = new CountDownLatch(size);
+        }
+    }
+
+    /**
+     * One headless player
+     */
+    private class Bot {
+
+        /**
+         * The bot's nickname
+         */
+        private final String nickname;
+
+        /**
+         * The bot's channel
+         */
+        private final Group group;
+
+        /**
+         * Whether the bot creates and starts its channel
+         */
+        private final boolean host;
+
+        /**
+         * Talks to the server
+         */
+        private final Communicator communicator;
+
+        /**
+         * Deals the pieces sent by the server
+         */
+        private final ServerPieceSource pieceSource;
+
+        /**
+         * Plays by the game rules
+         */
+        private final GameEngine engine;
+
+        /**
+         * Encodes delta boards, or null to send full boards
+         */
+        private final BoardCodec boardCodec;
+
+        /**
+         * Number of pieces to play
+         */
+        private final int moves;
+
+        /**
+         * Time between moves, in milliseconds
+         */
+        private final long interval;
+
+        /**
+         * Moves between chat messages
+         */
+        private final int chat;
+
+        /**
+         * Chooses where to play
+         */
+        private final SplittableRandom random;
+
+        /**
+         * When each of the most recent boards was sent, as System.nanoTime values, by the board as sent
+         */
+        private final Map<String, Long> sentBoards = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > BOARDS_REMEMBERED;
+            }
+        };
+
+        /**
+         * Released once the server confirms the bot's nickname
+         */
+        private final CountDownLatch named = new CountDownLatch(1);
+
+        /**
+         * Released once the bot has joined its channel
+         */
+        private final CountDownLatch inChannel = new CountDownLatch(1);
+
+        /**
+         * Released once the game has started
+         */
+        private final CountDownLatch started = new CountDownLatch(1);
+
+        /**
+         * Released once the first pieces have arrived
+         */
+        private final CountDownLatch firstPieces = new CountDownLatch(1);
+
+        /**
+         * Released each time a piece arrives which the bot was waiting for
+         */
+        private final Semaphore piecesArrived = new Semaphore(0);
+
+        /**
+         * Create a bot and connect it to the server
+         * @param nickname the bot's nickname
+         * @param url the server
+         * @param group the bot's channel
+         * @param host whether the bot creates and starts its channel
+         * @param cols number of columns
+         * @param rows number of rows
+         * @param deltas whether to send delta boards
+         * @param moves number of pieces to play
+         * @param interval time between moves, in milliseconds
+         * @param chat moves between chat messages
+         * @param random chooses where to play
+         */
+        private Bot(String nickname, String url, Group group, boolean host, int cols, int rows, boolean deltas,
+            int moves, long interval, int chat, SplittableRandom random) {
+            this.nickname = nickname;
+            this.group = group;
+            this.host = host;
+            this.moves = moves;
+            this.interval = interval;
+            this.chat = chat;
+            this.random = random;
+            this.communicator = new Communicator(url, executor.getScheduler(), executor.getBackground());
+            this.pieceSource = new ServerPieceSource(communicator);
+            this.engine = new GameEngine(cols, rows, pieceSource);
+            this.boardCodec = deltas ? new BoardCodec(cols, rows) : null;
+            bots.put(nickname, this);
+
+            communicator.addListener(message -> received.increment());
+            communicator.addListener(Message.Nick.class, message -> {
+                if (message.nickname().equals(nickname)) {
+                    named.countDown();
+                }
+            });
+            communicator.addListener(Message.Join.class, message -> inChannel.countDown());
+            communicator.addListener(Message.Start.class, message -> started.countDown());
+            communicator.addListener(Message.Piece.class, message -> {
+                pieceSource.offer(message.piece());
+                if (pieceSource.size() >= START_PIECES) {
+                    firstPieces.countDown();
+                }
+            });
+            pieceSource.setPieceArrivedListener(piecesArrived::release);
+            communicator.addListener(Message.Board.class, this::boardReceived);
+            communicator.addListener(Message.Error.class, message -> errors.increment());
+        }
+
+        /**
+         * Set up the bot's game, play it, and disconnect
+         */
+        private void run() {
+            boolean counted = false;
+            try {
+                communicator.send("NICK " + nickname);
+                await(named, "nickname");
+                if (host) {
+                    communicator.send("CREATE " + group.channel);
+                    await(inChannel, "create");
+                    group.created.countDown();
+                } else {
+                    await(group.created, "channel");
+                    communicator.send("JOIN " + group.channel);
+                    await(inChannel, "join");
+                }
+                group.joined.countDown();
+                if (host) {
+                    await(group.joined, "players");
+                    communicator.send("START");
+                }
+                await(started, "start");
+                playing.countDown();
+                counted = true;
+                play();
+            } catch (RuntimeException | InterruptedException e) {
+                errors.increment();
+                System.err.println(nickname + ": " + e.getMessage());
+            } finally {
+                if (!counted) {
+                    playing.countDown();
+                }
+                communicator.close();
+            }
+        }
+
+        /**
+         * Play pieces until the moves run out or the game is over
+         * @throws InterruptedException if interrupted between moves
+         */
+        private void play() throws InterruptedException {
+            pieceSource.start();
+            await(firstPieces, "first pieces");
+            engine.initialisePieces();
+            for (var move = 1; move <= moves && !engine.isGameOver(); move++) {
+                Thread.sleep(interval);
+                awaitPiece();
+                if (playAnywhere()) {
+                    String board = boardCodec == null ? engine.getGrid().getFlattenedGrid()
+                        : boardCodec.encode(engine.getGrid());
+                    if (board != null) {
+                        synchronized (sentBoards) {
+                            sentBoards.put(board, System.nanoTime());
+                        }
+                        communicator.send("BOARD " + board);
+                    }
+                    communicator.send("SCORE " + engine.getScore());
+                } else if (engine.timerExpired()) {
+                    communicator.send("LIVES " + engine.getLives());
+                } else {
+                    communicator.send("DIE");
+                }
+                if (chat > 0 && move % chat == 0) {
+                    communicator.send("MSG Move " + move + " from " + nickname);
+                }
+            }
+        }
+
+        /**
+         * Wait until the current piece has arrived from the server, dealing it on the bot's thread
+         * @throws InterruptedException if interrupted while waiting
+         */
+        private void awaitPiece() throws InterruptedException {
+            while (engine.isWaitingForPiece()) {
+                if (!piecesArrived.tryAcquire(SETUP_TIMEOUT, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("Timed out waiting for a piece");
+                }
+                engine.dealWaitingPieces();
+            }
+        }
+
+        /**
+         * Play the current piece at the first place it fits, starting from a random place
+         * @return true if the piece was played, false if it fits nowhere
+         */
+        private boolean playAnywhere() {
+            int cols = engine.getCols();
+            int rows = engine.getRows();
+            int cells = cols * rows;
+            int start = random.nextInt(cells);
+            GamePiece piece = engine.getCurrentPiece();
+            for (var i = 0; i < cells; i++) {
+                int cell = (start + i) % cells;
+                if (engine.getGrid().canPlayPiece(piece, cell % cols, cell / cols)) {
+                    return engine.playPiece(cell % cols, cell / cols);
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Record how long a board from another bot took to arrive
+         * @param message the board
+         */
+        private void boardReceived(Message.Board message) {
+            long now = System.nanoTime();
+            Bot sender = bots.get(message.player());
+            if (sender == null) return;
+            Long sentAt;
+            synchronized (sender.sentBoards) {
+                sentAt = sender.sentBoards.get(message.board());
+            }
+            if (sentAt != null) {
+                recordLatency(now - sentAt);
+            }
+        }
+
+        /**
+         * Wait for a step of setting up the game
+         * @param latch released when the step is done
+         * @param step the step, for the error if it times out
+         * @throws InterruptedException if interrupted while waiting
+         */
+        private void await(CountDownLatch latch, String step) throws InterruptedException {
+            if (!latch.await(SETUP_TIMEOUT, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Timed out waiting for " + step);
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package uk.ac.soton.comp1206.headless;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Instant;
+import uk.ac.soton.comp1206.game.GameEngine;
+import uk.ac.soton.comp1206.game.Grid;
+import uk.ac.soton.comp1206.replay.Replay;
+import uk.ac.soton.comp1206.replay.ReplayPlayer;
+
+/**
+ * Fast-forwards a replay file headless and prints the state of the game, either at the end or just before a given
+ * event, along with how long playback takes.
+ *
+ * Usage: ReplayTool file.replay [--at EVENT]
+ */
+public class ReplayTool {
+
+    /**
+     * Number of times the replay is played to time it
+     */
+    private static final int TIMING_RUNS = 1000;
+
+    /**
+     * Run the tool
+     * @param args the replay file, optionally followed by --at and an event index
+     * @throws IOException if the replay cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: ReplayTool file.replay [--at EVENT]");
+            System.exit(1);
+        }
+        Replay replay = Replay.load(Paths.get(args[0]));
+        int at = replay.getEventCount();
+        if (args.length >= 3 && args[1].equals("--at")) {
+            at = Integer.parseInt(args[2]);
+        }
+
+        System.out.printf("%dx%d game recorded %s, seed %s, %d events over %.1fs%n", replay.getCols(),
+            replay.getRows(), Instant.ofEpochMilli(replay.getStartedAt()),
+            replay.getSeed().isPresent() ? Long.toString(replay.getSeed().getAsLong()) : "none",
+            replay.getEventCount(), replay.getDuration() / 1000.0);
+
+        ReplayPlayer player = new ReplayPlayer(replay);
+        long started = System.nanoTime();
+        for (var run = 0; run < TIMING_RUNS; run++) {
+            player.reset();
+            player.fastForward();
+        }
+        double micros = (System.nanoTime() - started) / 1e3 / TIMING_RUNS;
+        System.out.printf("Fast-forward takes %.1fus%n", micros);
+
+        player.seek(at);
+        GameEngine engine = player.getEngine();
+        System.out.printf("Before event %d: score %d, level %d, lives %d, multiplier %d, current %s, next %s%n",
+            player.getPosition(), engine.getScore(), engine.getLevel(), engine.getLives(), engine.getMultiplier(),
+            engine.getCurrentPiece(), engine.getNextPiece());
+
+        Grid grid = engine.getGrid();
+        for (var y = 0; y < grid.getRows(); y++) {
+            StringBuilder row = new StringBuilder();
+            for (var x = 0; x < grid.getCols(); x++) {
+                int value = grid.get(x, y);
+                row.append(value == 0 ? '.' : Character.forDigit(value, 16));
+            }
+            System.out.println(row);
+        }
+    }
+}
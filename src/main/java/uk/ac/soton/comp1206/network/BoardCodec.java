@@ -0,0 +1,247 @@
+package uk.ac.soton.comp1206.network;
+
+import java.util.Arrays;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.game.GamePiece;
+import uk.ac.soton.comp1206.game.Grid;
+
+/**
+ * Encodes and decodes the board sent in BOARD messages.
+ *
+ * A full board is the flattened grid, one value per cell separated by spaces, as sent by every client. A delta board
+ * starts with "D" and lists only the cells which changed since the previous board, as "index=value" pairs where the
+ * index is the cell's position in the flattened grid, for example "D 3=5 4=5 9=0". The encoder sends a full board as
+ * a keyframe every KEYFRAME_INTERVAL boards, so a receiver which missed the start of the game catches up.
+ *
+ * Decoding scans the message by index without splitting it or creating any objects per cell. The cells are checked
+ * and collected into a reused array first, and only written into the Grid once the whole board is known to be valid,
+ * so a malformed board leaves the grid as it was.
+ */
+public class BoardCodec {
+
+    private static final Logger logger = LogManager.getLogger(BoardCodec.class);
+
+    /**
+     * Number of boards sent between full keyframes
+     */
+    public static final int KEYFRAME_INTERVAL = 10;
+
+    /**
+     * Marks a delta board
+     */
+    private static final char DELTA = 'D';
+
+    /**
+     * Cells decoded from the board being read, as index and value pairs, reused by each board decoded on a thread
+     */
+    private static final ThreadLocal<int[]> DECODED = ThreadLocal.withInitial(() -> new int[0]);
+
+    /**
+     * The board as of the last message sent
+     */
+    private final Grid lastSent;
+
+    /**
+     * Boards sent since the last keyframe, or -1 before the first board is sent
+     */
+    private int sinceKeyframe = -1;
+
+    /**
+     * Create an encoder for boards of the given size
+     * @param cols number of columns
+     * @param rows number of rows
+     */
+    public BoardCodec(int cols, int rows) {
+        lastSent = new Grid(cols, rows);
+    }
+
+    /**
+     * Encode the board to send: a keyframe if one is due, otherwise the cells changed since the last board
+     * @param grid the current board
+     * @return the encoded board, or null if nothing has changed since the last board sent
+     */
+    public String encode(Grid grid) {
+        if (sinceKeyframe < 0 || sinceKeyframe + 1 >= KEYFRAME_INTERVAL) {
+            sinceKeyframe = 0;
+            lastSent.copyFrom(grid);
+            return grid.getFlattenedGrid();
+        }
+
+        StringBuilder delta = new StringBuilder().append(DELTA);
+        int rows = grid.getRows();
+        for (var y = 0; y < rows; y++) {
+            // Only cells occupied before or after can have changed
+            for (long candidates = lastSent.getRowMask(y) | grid.getRowMask(y); candidates != 0;
+                 candidates &= candidates - 1) {
+                int x = Long.numberOfTrailingZeros(candidates);
+                int value = grid.get(x, y);
+                if (value != lastSent.get(x, y)) {
+                    delta.append(' ').append(x * rows + y).append('=').append(value);
+                }
+            }
+        }
+        if (delta.length() == 1) {
+            return null;
+        }
+
+        sinceKeyframe++;
+        lastSent.copyFrom(grid);
+        return delta.toString();
+    }
+
+    /**
+     * Send a keyframe as the next board, for when earlier boards may not have reached the other players
+     */
+    public void reset() {
+        sinceKeyframe = -1;
+    }
+
+    /**
+     * Decode a full or delta board from part of a message into a grid. The grid is only changed if the whole board
+     * is valid.
+     * @param message the message holding the board
+     * @param start index in the message where the board starts
+     * @param grid the grid to update, as one batch
+     * @return true if the board was applied, false if it was malformed
+     */
+    public static boolean decode(String message, int start, Grid grid) {
+        int rows = grid.getRows();
+        int cells = grid.getCols() * rows;
+        int[] decoded = DECODED.get();
+        if (decoded.length < cells * 2) {
+            decoded = new int[cells * 2];
+            DECODED.set(decoded);
+        }
+
+        int count;
+        if (start < message.length() && message.charAt(start) == DELTA) {
+            count = decodeDelta(message, start + 1, cells, decoded);
+        } else {
+            count = decodeFull(message, start, cells, decoded);
+        }
+        if (count < 0) {
+            return false;
+        }
+
+        grid.beginBatch();
+        try {
+            decoded = DECODED.get();
+            for (var cell = 0; cell < count; cell++) {
+                int index = decoded[cell * 2];
+                grid.set(index / rows, index % rows, decoded[cell * 2 + 1]);
+            }
+        } finally {
+            grid.commitBatch();
+        }
+        return true;
+    }
+
+    /**
+     * Decode a full board, every cell in flattened order
+     * @param message the message holding the board
+     * @param start index in the message where the board starts
+     * @param cells number of cells in the grid
+     * @param decoded receives the index and value of each cell
+     * @return the number of cells decoded, or -1 if the board was malformed
+     */
+    private static int decodeFull(String message, int start, int cells, int[] decoded) {
+        int position = start;
+        for (var index = 0; index < cells; index++) {
+            position = skipSpaces(message, position);
+            int end = endOfNumber(message, position);
+            if (end == position) {
+                logger.warn("Board has {} cells, expected {}: {}", index, cells, message);
+                return -1;
+            }
+            int value = parse(message, position, end);
+            if (value < 0 || value > GamePiece.PIECES) {
+                logger.warn("Board has an unknown block {}: {}", value, message);
+                return -1;
+            }
+            decoded[index * 2] = index;
+            decoded[index * 2 + 1] = value;
+            position = end;
+        }
+        return cells;
+    }
+
+    /**
+     * Decode a delta board, each listed cell in turn
+     * @param message the message holding the board
+     * @param start index in the message just after the delta marker
+     * @param cells number of cells in the grid
+     * @param decoded receives the index and value of each cell, replaced by a larger array if it fills up
+     * @return the number of cells decoded, or -1 if the board was malformed
+     */
+    private static int decodeDelta(String message, int start, int cells, int[] decoded) {
+        var count = 0;
+        int position = skipSpaces(message, start);
+        while (position < message.length()) {
+            int end = endOfNumber(message, position);
+            if (end == position || end >= message.length() || message.charAt(end) != '=') {
+                logger.warn("Malformed delta board at {}: {}", position, message);
+                return -1;
+            }
+            int index = parse(message, position, end);
+            position = end + 1;
+            end = endOfNumber(message, position);
+            int value = end == position ? -1 : parse(message, position, end);
+            if (index < 0 || index >= cells || value < 0 || value > GamePiece.PIECES) {
+                logger.warn("Malformed delta board at {}: {}", position, message);
+                return -1;
+            }
+            //A board which lists a cell more than once can hold more pairs than there are cells
+            if (count * 2 == decoded.length) {
+                decoded = Arrays.copyOf(decoded, decoded.length * 2);
+                DECODED.set(decoded);
+            }
+            decoded[count * 2] = index;
+            decoded[count * 2 + 1] = value;
+            count++;
+            position = skipSpaces(message, end);
+        }
+        return count;
+    }
+
+    /**
+     * Skip over spaces
+     * @param message the message
+     * @param position where to start
+     * @return index of the next character which is not a space
+     */
+    private static int skipSpaces(String message, int position) {
+        while (position < message.length() && message.charAt(position) == ' ') {
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * Find the end of a run of digits
+     * @param message the message
+     * @param position where the digits start
+     * @return index just after the last digit, or position if there are none
+     */
+    private static int endOfNumber(String message, int position) {
+        while (position < message.length() && message.charAt(position) >= '0' && message.charAt(position) <= '9') {
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * Parse a run of digits
+     * @param message the message
+     * @param start index of the first digit
+     * @param end index just after the last digit
+     * @return the number
+     */
+    private static int parse(String message, int start, int end) {
+        var value = 0;
+        for (var position = start; position < end; position++) {
+            value = value * 10 + (message.charAt(position) - '0');
+        }
+        return value;
+    }
+}
@@ -0,0 +1,74 @@
+package uk.ac.soton.comp1206.network;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import uk.ac.soton.comp1206.event.ChannelListListener;
+
+/**
+ * The channels on the server, as last listed in a CHANNELS message. Each new list is compared with the last one, and
+ * the listener is only told about the channels which were added or removed, so a lobby showing the list only
+ * changes the rows which need it.
+ */
+public class ChannelList {
+
+    /**
+     * The channels, in the order the server lists them
+     */
+    private final Set<String> channels = new LinkedHashSet<>();
+
+    /**
+     * Told about each change to the list
+     */
+    private ChannelListListener listener;
+
+    /**
+     * Set the listener told about each change to the list
+     * @param listener the listener
+     */
+    public synchronized void setChannelListListener(ChannelListListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Replace the list with the channels the server has just listed, telling the listener what changed
+     * @param latest the channels listed
+     * @return true if the list changed
+     */
+    public boolean update(List<String> latest) {
+        List<String> added = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        ChannelListListener listener;
+        synchronized (this) {
+            Set<String> listed = new HashSet<>(latest);
+            for (String channel : channels) {
+                if (!listed.contains(channel)) {
+                    removed.add(channel);
+                }
+            }
+            for (String channel : latest) {
+                if (channels.add(channel)) {
+                    added.add(channel);
+                }
+            }
+            channels.removeAll(removed);
+            listener = this.listener;
+        }
+
+        if (added.isEmpty() && removed.isEmpty()) return false;
+        if (listener != null) {
+            listener.channelsChanged(added, removed);
+        }
+        return true;
+    }
+
+    /**
+     * Get the channels
+     * @return a copy of the channels, in the order the server lists them
+     */
+    public synchronized List<String> getChannels() {
+        return new ArrayList<>(channels);
+    }
+}
@@ -1,103 +1,493 @@
 package uk.ac.soton.comp1206.network;
 
 import com.neovisionaries.ws.client.*;
-import javafx.scene.control.Alert;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import uk.ac.soton.comp1206.event.CommunicationsListener;
+import uk.ac.soton.comp1206.event.MessageListener;
 
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Uses web sockets to talk to a web socket server and relays communication to attached listeners
  *
- * YOU DO NOT NEED TO WORRY ABOUT THIS CLASS! Leave it be :-)
+ * The connection is kept alive for as long as the Communicator is open. The client pings the server every
+ * HEARTBEAT_INTERVAL, and if nothing at all is heard from the server for HEARTBEAT_TIMEOUT the connection is treated
+ * as dead. When the connection fails or drops, it is retried in the background with exponential backoff. On
+ * reconnecting, the nickname and channel the player had are restored, and a Message.Reconnected is delivered so a
+ * game in progress can send its state again. Messages sent while disconnected wait in the send queue.
+ *
+ * The server is given to the constructor, so a local stand-in server can be used in place of the real one. The
+ * heartbeat and reconnection are timed on a scheduler, and the writer and attempts to reconnect, which block, run on
+ * a background executor. The game shares its own with every Communicator; a Communicator created with only a server
+ * starts threads of its own, which stop when it is closed.
  */
 public class Communicator {
 
     private static final Logger logger = LogManager.getLogger(Communicator.class);
 
+    /**
+     * How long to wait for the server to accept a connection, in milliseconds
+     */
+    public static final int CONNECT_TIMEOUT = 5000;
+
+    /**
+     * How often to ping the server, in milliseconds
+     */
+    public static final long HEARTBEAT_INTERVAL = 5000;
+
+    /**
+     * How long the server can be silent before the connection is treated as dead, in milliseconds
+     */
+    public static final long HEARTBEAT_TIMEOUT = 3 * HEARTBEAT_INTERVAL;
+
+    /**
+     * Delay before the first attempt to reconnect, in milliseconds. Doubles on each failed attempt.
+     */
+    public static final long INITIAL_BACKOFF = 500;
+
+    /**
+     * Longest delay between attempts to reconnect, in milliseconds
+     */
+    public static final long MAX_BACKOFF = 30000;
+
     /**
      * Attached communication listeners listening to messages on this Communicator. Each will be sent any messages.
+     * Listeners are added and removed on the FX thread while the web socket thread dispatches, so the list is
+     * copied on write and dispatch iterates a snapshot.
+     */
+    private final List<CommunicationsListener> handlers = new CopyOnWriteArrayList<>();
+
+    /**
+     * Attached typed listeners, by the type of message they handle. Each message is decoded once and only sent to
+     * the listeners for its type. Like handlers, each list is copied on write.
+     */
+    private final Map<Class<? extends Message>, List<MessageListener<?>>> messageListeners = new ConcurrentHashMap<>();
+
+    /**
+     * The server to connect to
+     */
+    private final String server;
+
+    /**
+     * Creates the sockets
+     */
+    private final WebSocketFactory socketFactory = new WebSocketFactory().setConnectionTimeout(CONNECT_TIMEOUT);
+
+    /**
+     * Times the heartbeat and the attempts to reconnect
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Runs the attempts to reconnect, which block until the server answers or CONNECT_TIMEOUT passes
+     */
+    private final Executor background;
+
+    /**
+     * Whether the scheduler was created for this Communicator, and so is shut down when it closes
+     */
+    private final boolean ownsScheduler;
+
+    /**
+     * The heartbeat check
+     */
+    private final ScheduledFuture<?> heartbeat;
+
+    /**
+     * Guards ws, closed and nextAttempt, and is notified when ws or closed changes
      */
-    private final List<CommunicationsListener> handlers = new ArrayList<>();
+    private final Object connection = new Object();
 
+    /**
+     * The open socket, or null while disconnected
+     */
     private WebSocket ws = null;
 
     /**
-     * Create a new communicator to the given web socket server
+     * Whether the Communicator has been closed
+     */
+    private boolean closed;
+
+    /**
+     * The next attempt to reconnect, or null if none is scheduled
+     */
+    private ScheduledFuture<?> nextAttempt;
+
+    /**
+     * Number of attempts to connect which have failed since the last connection
+     */
+    private int failedAttempts;
+
+    /**
+     * Whether the Communicator has connected before, so the next connection is a reconnection
+     */
+    private boolean connectedBefore;
+
+    /**
+     * When anything was last heard from the server, as a System.nanoTime value
+     */
+    private volatile long lastHeard;
+
+    /**
+     * The player's nickname as last confirmed by the server, restored on reconnecting
+     */
+    private volatile String nickname;
+
+    /**
+     * The channel the player is in, restored on reconnecting, or null if they are not in one
+     */
+    private volatile String channel;
+
+    /**
+     * Messages waiting to be sent, drained by a writer thread
+     */
+    private final SendQueue sendQueue;
+
+    /**
+     * Create a new communicator to the given web socket server, with threads of its own. The first connection is
+     * attempted straight away; if it fails, it is retried in the background and isConnected returns false until it
+     * succeeds.
      *
      * @param server server to connect to
      */
     public Communicator(String server) {
+        this(server, Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Communicator reconnect");
+            thread.setDaemon(true);
+            return thread;
+        }), null, true);
+    }
 
-        try {
-            var socketFactory = new WebSocketFactory();
-
-            //Connect to the server
-            ws = socketFactory.createSocket(server);
-            ws.connect();
-            logger.info("Connected to " + server);
-
-            //When a message is received, call the receive method
-            ws.addListener(new WebSocketAdapter() {
-                @Override
-                public void onTextMessage(WebSocket websocket, String message) throws Exception {
-                    Communicator.this.receive(websocket, message);
-                }
-                @Override
-                public void onPingFrame(WebSocket webSocket, WebSocketFrame webSocketFrame) throws Exception {
-                    logger.info("Ping? Pong!");
-                }
-            });
-
-            //Error handling
-            ws.addListener(new WebSocketAdapter() {
-                @Override
-                public void onTextMessage(WebSocket websocket, String message) throws Exception {
-                    if(message.startsWith("ERROR")) {
-                        logger.error(message);
-                    }
+    /**
+     * Create a new communicator to the given web socket server, sharing the given executors. The first connection is
+     * attempted straight away; if it fails, it is retried in the background and isConnected returns false until it
+     * succeeds.
+     *
+     * @param server server to connect to, or null to stay disconnected and drop everything sent
+     * @param scheduler times the heartbeat and the attempts to reconnect, and is left running on close
+     * @param background runs the writer and the attempts to reconnect
+     */
+    public Communicator(String server, ScheduledExecutorService scheduler, Executor background) {
+        this(server, scheduler, background, false);
+    }
+
+    /**
+     * Create a new communicator and make the first attempt to connect
+     * @param server server to connect to
+     * @param scheduler times the heartbeat and the attempts to reconnect
+     * @param background runs the writer and the attempts to reconnect, or null to give the writer a thread of its
+     * own and reconnect on the scheduler
+     * @param ownsScheduler whether to shut the scheduler down on close
+     */
+    private Communicator(String server, ScheduledExecutorService scheduler, Executor background,
+        boolean ownsScheduler) {
+        this.server = server;
+        this.scheduler = scheduler;
+        this.background = background == null ? scheduler : background;
+        this.ownsScheduler = ownsScheduler;
+
+        //Messages are written in batches by the send queue, which flushes the socket after each batch. While
+        //disconnected, the writer waits for the connection to come back.
+        sendQueue = new SendQueue(SendQueue.DEFAULT_CAPACITY, new SendQueue.Sink() {
+            @Override
+            public void send(String message) {
+                WebSocket socket = awaitConnection();
+                if (socket != null) {
+                    socket.sendText(message);
                 }
-                @Override
-                public void handleCallbackError(WebSocket webSocket, Throwable throwable) throws Exception {
-                    logger.error("Callback Error:" + throwable.getMessage());
-                    throwable.printStackTrace();
+            }
+            @Override
+            public void flush() {
+                WebSocket socket = currentSocket();
+                if (socket != null) {
+                    socket.flush();
                 }
-                @Override
-                public void onError(WebSocket webSocket, WebSocketException e) throws Exception {
-                    logger.error("Error:" + e.getMessage());
-                    e.printStackTrace();
+            }
+        }, background != null ? background : runnable -> {
+            Thread writer = new Thread(runnable, "Communicator writer");
+            writer.setDaemon(true);
+            writer.start();
+        });
+
+        if (server == null) {
+            //Nothing to connect to, so stay disconnected rather than queueing messages which will never be sent
+            logger.warn("No server to connect to, staying disconnected");
+            sendQueue.close(0);
+            closed = true;
+        } else {
+            try {
+                connect();
+            } catch (Exception e) {
+                logger.error("Socket error: " + e.getMessage());
+                reconnectLater();
+            }
+        }
+
+        heartbeat = scheduler.scheduleWithFixedDelay(this::checkHeartbeat, HEARTBEAT_INTERVAL, HEARTBEAT_INTERVAL,
+            TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Open a new socket to the server, restore the session on it if this is a reconnection, and make it the
+     * current socket
+     * @throws WebSocketException if the server refuses the connection
+     * @throws IOException if the server cannot be reached
+     */
+    private void connect() throws WebSocketException, IOException {
+        WebSocket socket = socketFactory.createSocket(server);
+        socket.setAutoFlush(false);
+        socket.setPingInterval(HEARTBEAT_INTERVAL);
+
+        //When a message is received, call the receive method
+        socket.addListener(new WebSocketAdapter() {
+            @Override
+            public void onTextMessage(WebSocket websocket, String message) throws Exception {
+                Communicator.this.receive(websocket, message);
+            }
+            @Override
+            public void onFrame(WebSocket websocket, WebSocketFrame frame) throws Exception {
+                lastHeard = System.nanoTime();
+            }
+            @Override
+            public void onPingFrame(WebSocket webSocket, WebSocketFrame webSocketFrame) throws Exception {
+                logger.debug("Ping? Pong!");
+            }
+            @Override
+            public void onDisconnected(WebSocket websocket, WebSocketFrame serverCloseFrame,
+                WebSocketFrame clientCloseFrame, boolean closedByServer) throws Exception {
+                connectionLost(websocket, closedByServer ? "closed by server" : "disconnected");
+            }
+        });
+
+        //Error handling
+        socket.addListener(new WebSocketAdapter() {
+            @Override
+            public void onTextMessage(WebSocket websocket, String message) throws Exception {
+                if(message.startsWith("ERROR")) {
+                    logger.error(message);
                 }
-            });
+            }
+            @Override
+            public void handleCallbackError(WebSocket webSocket, Throwable throwable) throws Exception {
+                logger.error("Callback Error:" + throwable.getMessage());
+                throwable.printStackTrace();
+            }
+            @Override
+            public void onError(WebSocket webSocket, WebSocketException e) throws Exception {
+                logger.error("Error:" + e.getMessage());
+            }
+        });
+
+        socket.connect();
+        lastHeard = System.nanoTime();
+        logger.info("Connected to " + server);
+
+        boolean reconnected;
+        synchronized (connection) {
+            if (closed) {
+                socket.disconnect();
+                return;
+            }
+            reconnected = connectedBefore;
+            if (reconnected) {
+                resume(socket);
+            }
+            ws = socket;
+            connectedBefore = true;
+            failedAttempts = 0;
+            connection.notifyAll();
+        }
+
+        if (reconnected) {
+            dispatch(new Message.Reconnected());
+        }
+    }
+
+    /**
+     * Restore the player's nickname and channel on a new socket, before anything queued is sent on it
+     * @param socket the new socket
+     */
+    private void resume(WebSocket socket) {
+        String nickname = this.nickname;
+        String channel = this.channel;
+        if (nickname != null) {
+            socket.sendText("NICK " + nickname);
+        }
+        if (channel != null) {
+            socket.sendText("JOIN " + channel);
+        }
+        socket.flush();
+        logger.info("Resumed session as {} in {}", nickname, channel);
+    }
 
-        } catch (Exception e){
-            logger.error("Socket error: " + e.getMessage());
-            e.printStackTrace();
+    /**
+     * Try to connect again after the backoff delay for the number of attempts which have failed. The attempt is
+     * handed from the scheduler to the background executor, so it does not hold up other timed tasks.
+     */
+    private void reconnectLater() {
+        synchronized (connection) {
+            if (closed) return;
+            long backoff = Math.min(MAX_BACKOFF, INITIAL_BACKOFF << Math.min(failedAttempts, 16));
+            //Spread the attempts of clients which dropped at the same moment
+            long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+            failedAttempts++;
+            logger.info("Reconnecting to {} in {}ms", server, delay);
+            nextAttempt = scheduler.schedule(() -> background.execute(this::reconnect), delay,
+                TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Make one attempt to reconnect, scheduling another if it fails
+     */
+    private void reconnect() {
+        try {
+            connect();
+        } catch (Exception e) {
+            logger.warn("Unable to reconnect: " + e.getMessage());
+            reconnectLater();
+        }
+    }
 
-            Alert error = new Alert(Alert.AlertType.ERROR,"Unable to communicate with the TetrECS server\n\n" + e.getMessage() + "\n\nPlease ensure you are connected to the VPN");
-            error.showAndWait();
-            System.exit(1);
+    /**
+     * Handle a socket which has dropped or gone silent: stop using it and start reconnecting. Does nothing if the
+     * socket has already been replaced.
+     * @param socket the socket
+     * @param reason why the connection was lost, for the log
+     */
+    private void connectionLost(WebSocket socket, String reason) {
+        synchronized (connection) {
+            if (ws != socket || closed) return;
+            ws = null;
+        }
+        logger.warn("Connection to {} lost: {}", server, reason);
+        socket.disconnect();
+        reconnectLater();
+    }
+
+    /**
+     * Treat the connection as dead if nothing has been heard from the server for HEARTBEAT_TIMEOUT
+     */
+    private void checkHeartbeat() {
+        WebSocket socket = currentSocket();
+        if (socket == null) return;
+        long silent = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastHeard);
+        if (silent > HEARTBEAT_TIMEOUT) {
+            connectionLost(socket, "nothing heard for " + silent + "ms");
         }
     }
 
-    /** Send a message to the server
+    /**
+     * Get the current socket
+     * @return the open socket, or null while disconnected
+     */
+    private WebSocket currentSocket() {
+        synchronized (connection) {
+            return ws;
+        }
+    }
+
+    /**
+     * Wait until there is an open socket
+     * @return the open socket, or null if the Communicator was closed first
+     */
+    private WebSocket awaitConnection() {
+        synchronized (connection) {
+            while (ws == null && !closed) {
+                try {
+                    connection.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+            return ws;
+        }
+    }
+
+    /**
+     * Check whether there is an open connection to the server
+     * @return true if connected
+     */
+    public boolean isConnected() {
+        return currentSocket() != null;
+    }
+
+    /** Send a message to the server. The message is queued and sent by the writer thread, so this does not wait on
+     * the socket. While disconnected, it is sent once the connection comes back.
      *
      * @param message Message to send
      */
     public void send(String message) {
-        logger.info("Sending message: " + message);
+        sendQueue.offer(message);
+    }
 
-        ws.sendText(message);
+    /**
+     * Send any queued messages, waiting up to a second for them, then disconnect from the server and stop
+     * reconnecting. Shared executors are left running.
+     */
+    public void close() {
+        sendQueue.close(1000);
+        WebSocket socket;
+        synchronized (connection) {
+            closed = true;
+            socket = ws;
+            ws = null;
+            if (nextAttempt != null) {
+                nextAttempt.cancel(false);
+            }
+            connection.notifyAll();
+        }
+        heartbeat.cancel(false);
+        if (ownsScheduler) {
+            scheduler.shutdownNow();
+        }
+        if (socket != null) {
+            socket.disconnect();
+        }
+    }
+
+    /**
+     * Get the queue of messages waiting to be sent, which records the queue depth and send latency
+     * @return the send queue
+     */
+    public SendQueue getSendQueue() {
+        return sendQueue;
     }
 
     /**
      * Add a new listener to receive messages from the server
      * @param listener the listener to add
+     * @return handle to remove the listener
      */
-    public void addListener(CommunicationsListener listener) {
+    public Subscription addListener(CommunicationsListener listener) {
         this.handlers.add(listener);
+        return () -> this.handlers.remove(listener);
+    }
+
+    /**
+     * Add a new listener to receive one type of decoded message from the server
+     * @param type the type of message to receive
+     * @param listener the listener to add
+     * @param <T> the type of message
+     * @return handle to remove the listener
+     */
+    public <T extends Message> Subscription addListener(Class<T> type, MessageListener<? super T> listener) {
+        List<MessageListener<?>> listeners =
+            this.messageListeners.computeIfAbsent(type, key -> new CopyOnWriteArrayList<>());
+        listeners.add(listener);
+        return () -> listeners.remove(listener);
     }
 
     /**
@@ -105,6 +495,7 @@ public class Communicator {
      */
     public void clearListeners() {
         this.handlers.clear();
+        this.messageListeners.clear();
     }
 
     /** Receive a message from the server. Relay to any attached listeners
@@ -113,11 +504,47 @@ public class Communicator {
      * @param message the message that was received
      */
     private void receive(WebSocket websocket, String message) {
-        logger.info("Received: " + message);
+        logger.trace("Received: {}", message);
+
+        //Remember the session, to restore it after reconnecting
+        if (message.startsWith("NICK ")) {
+            nickname = message.substring(5);
+        } else if (message.startsWith("JOIN ")) {
+            channel = message.substring(5);
+        } else if (message.startsWith("PARTED")) {
+            channel = null;
+        }
 
         for(CommunicationsListener handler : handlers) {
             handler.receiveCommunication(message);
         }
+
+        if (messageListeners.isEmpty()) return;
+        dispatch(MessageDecoder.decode(message));
+    }
+
+    /**
+     * Pass a decoded message to the listeners for its type
+     * @param message the message
+     */
+    private void dispatch(Message message) {
+        List<MessageListener<?>> listeners = messageListeners.get(message.getClass());
+        if (listeners != null) {
+            for (MessageListener<?> listener : listeners) {
+                deliver(listener, message);
+            }
+        }
+    }
+
+    /**
+     * Pass a decoded message to a listener registered for its type
+     * @param listener the listener
+     * @param message the message, whose type matches the listener
+     * @param <T> the type of message
+     */
+    @SuppressWarnings("unchecked")
+    private static <T extends Message> void deliver(MessageListener<T> listener, Message message) {
+        listener.receiveMessage((T) message);
     }
 
 }
@@ -0,0 +1,140 @@
+package uk.ac.soton.comp1206.network;
+
+import java.util.List;
+
+/**
+ * A message received from the server, decoded into a record holding its fields. Each kind of message the client
+ * understands has its own record type, which listeners subscribe to with Communicator.addListener. Messages are
+ * decoded by the MessageDecoder.
+ */
+public sealed interface Message {
+
+    /**
+     * CHANNELS: the channels which can be joined
+     * @param channels channel names
+     */
+    record Channels(List<String> channels) implements Message {}
+
+    /**
+     * USERS: the players in the current channel
+     * @param users player names
+     */
+    record Users(List<String> users) implements Message {}
+
+    /**
+     * JOIN: the player has joined a channel
+     * @param channel channel name
+     */
+    record Join(String channel) implements Message {}
+
+    /**
+     * PARTED: the player has left their channel
+     */
+    record Parted() implements Message {}
+
+    /**
+     * HOST: the player is now the host of their channel
+     */
+    record Host() implements Message {}
+
+    /**
+     * START: the game in the current channel has started
+     */
+    record Start() implements Message {}
+
+    /**
+     * NICK: the player's nickname
+     * @param nickname the nickname
+     */
+    record Nick(String nickname) implements Message {}
+
+    /**
+     * MSG: a chat message
+     * @param player who sent the message
+     * @param text the message
+     */
+    record Msg(String player, String text) implements Message {}
+
+    /**
+     * ERROR: the server rejected a request
+     * @param text the error
+     */
+    record Error(String text) implements Message {}
+
+    /**
+     * PIECE: the next piece to deal in a multiplayer game
+     * @param piece the piece number
+     */
+    record Piece(int piece) implements Message {}
+
+    /**
+     * BOARD: another player's board, full or delta, as decoded by BoardCodec
+     * @param player whose board it is
+     * @param board the encoded board
+     */
+    record Board(String player, String board) implements Message {}
+
+    /**
+     * SCORES: the scores and lives of every player in a multiplayer game
+     * @param scores one entry per player
+     */
+    record Scores(List<PlayerScore> scores) implements Message {}
+
+    /**
+     * HISCORES: the online high score table
+     * @param scores the high scores, best first
+     */
+    record HiScores(List<HiScore> scores) implements Message {}
+
+    /**
+     * NEWSCORE: a high score accepted by the server
+     * @param score the new score
+     */
+    record NewScore(HiScore score) implements Message {}
+
+    /**
+     * Not sent by the server: delivered by the Communicator when it has reconnected after losing the connection and
+     * restored the player's nickname and channel, so anything else can send its state again
+     */
+    record Reconnected() implements Message {}
+
+    /**
+     * Any message the decoder does not understand
+     * @param command the command word
+     * @param text the whole message
+     */
+    record Unknown(String command, String text) implements Message {}
+
+    /**
+     * One player's entry in a SCORES message
+     * @param name player name
+     * @param score current score
+     * @param lives lives remaining, or "DEAD"
+     */
+    record PlayerScore(String name, int score, String lives) {
+
+        /**
+         * Check whether the player is out of the game
+         * @return true if the player has died
+         */
+        public boolean isDead() {
+            return lives.equals("DEAD");
+        }
+
+        /**
+         * Format the entry as the server sent it
+         * @return name:score:lives
+         */
+        @Override
+        public String toString() {
+            return name + ":" + score + ":" + lives;
+        }
+    }
+
+    /**
+     * One entry in a high score table
+     * @param name player name
+     * @param score the score
+     */
+    record HiScore(String name, int score) {}
+}
@@ -0,0 +1,185 @@
+package uk.ac.soton.comp1206.network;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.network.Message.HiScore;
+import uk.ac.soton.comp1206.network.Message.PlayerScore;
+
+/**
+ * Decodes messages received from the server into Message records. Each message is scanned once by index: the
+ * command word selects the record, and its fields are cut out between the separators without splitting the
+ * message into intermediate arrays. A message which is not understood, or whose fields are malformed, decodes to
+ * Message.Unknown.
+ */
+public class MessageDecoder {
+
+    private static final Logger logger = LogManager.getLogger(MessageDecoder.class);
+
+    /**
+     * Decode a message
+     * @param text the message as received
+     * @return the decoded message
+     */
+    public static Message decode(String text) {
+        int space = text.indexOf(' ');
+        String command = space < 0 ? text : text.substring(0, space);
+        int body = space < 0 ? text.length() : space + 1;
+
+        try {
+            return switch (command) {
+                case "CHANNELS" -> new Message.Channels(lines(text, body));
+                case "USERS" -> new Message.Users(lines(text, body));
+                case "JOIN" -> new Message.Join(text.substring(body));
+                case "PARTED" -> new Message.Parted();
+                case "HOST" -> new Message.Host();
+                case "START" -> new Message.Start();
+                case "NICK" -> new Message.Nick(text.substring(body));
+                case "MSG" -> {
+                    int colon = requireColon(text, body);
+                    yield new Message.Msg(text.substring(body, colon), text.substring(colon + 1));
+                }
+                case "ERROR" -> new Message.Error(text.substring(body));
+                case "PIECE" -> new Message.Piece(parseInt(text, body, text.length()));
+                case "BOARD" -> {
+                    int colon = requireColon(text, body);
+                    yield new Message.Board(text.substring(body, colon), text.substring(colon + 1));
+                }
+                case "SCORES" -> new Message.Scores(playerScores(text, body));
+                case "HISCORES" -> new Message.HiScores(hiScores(text, body));
+                case "NEWSCORE" -> new Message.NewScore(hiScore(text, body, text.length()));
+                default -> new Message.Unknown(command, text);
+            };
+        } catch (IllegalArgumentException e) {
+            logger.warn("Malformed {} message: {}", command, text);
+            return new Message.Unknown(command, text);
+        }
+    }
+
+    /**
+     * Cut the rest of a message into lines, skipping empty lines
+     * @param text the message
+     * @param start where the lines start
+     * @return the lines
+     */
+    private static List<String> lines(String text, int start) {
+        List<String> lines = new ArrayList<>();
+        int position = start;
+        while (position < text.length()) {
+            int end = endOfLine(text, position);
+            if (end > position) {
+                lines.add(text.substring(position, end));
+            }
+            position = end + 1;
+        }
+        return lines;
+    }
+
+    /**
+     * Decode the lines of a SCORES message, each name:score:lives
+     * @param text the message
+     * @param start where the lines start
+     * @return one entry per line
+     */
+    private static List<PlayerScore> playerScores(String text, int start) {
+        List<PlayerScore> scores = new ArrayList<>();
+        int position = start;
+        while (position < text.length()) {
+            int end = endOfLine(text, position);
+            if (end > position) {
+                int first = indexOf(text, ':', position, end);
+                int second = indexOf(text, ':', first + 1, end);
+                scores.add(new PlayerScore(text.substring(position, first), parseInt(text, first + 1, second),
+                    text.substring(second + 1, end)));
+            }
+            position = end + 1;
+        }
+        return scores;
+    }
+
+    /**
+     * Decode the lines of a HISCORES message, each name:score
+     * @param text the message
+     * @param start where the lines start
+     * @return one entry per line
+     */
+    private static List<HiScore> hiScores(String text, int start) {
+        List<HiScore> scores = new ArrayList<>();
+        int position = start;
+        while (position < text.length()) {
+            int end = endOfLine(text, position);
+            if (end > position) {
+                scores.add(hiScore(text, position, end));
+            }
+            position = end + 1;
+        }
+        return scores;
+    }
+
+    /**
+     * Decode a name:score pair
+     * @param text the message
+     * @param start where the pair starts
+     * @param end where the pair ends
+     * @return the score
+     */
+    private static HiScore hiScore(String text, int start, int end) {
+        int colon = indexOf(text, ':', start, end);
+        return new HiScore(text.substring(start, colon), parseInt(text, colon + 1, end));
+    }
+
+    /**
+     * Find the end of the line starting at a position
+     * @param text the message
+     * @param position where the line starts
+     * @return index of the newline, or the length of the message
+     */
+    private static int endOfLine(String text, int position) {
+        int end = text.indexOf('\n', position);
+        return end < 0 ? text.length() : end;
+    }
+
+    /**
+     * Find the first colon after a position
+     * @param text the message
+     * @param start where to start looking
+     * @return index of the colon
+     * @throws IllegalArgumentException if there is no colon
+     */
+    private static int requireColon(String text, int start) {
+        return indexOf(text, ':', start, text.length());
+    }
+
+    /**
+     * Find a character within part of a message
+     * @param text the message
+     * @param character the character to find
+     * @param start where to start looking
+     * @param end where to stop looking
+     * @return index of the character
+     * @throws IllegalArgumentException if the character is not there
+     */
+    private static int indexOf(String text, char character, int start, int end) {
+        int index = text.indexOf(character, start);
+        if (index < 0 || index >= end) {
+            throw new IllegalArgumentException("Expected '" + character + "' in " + text);
+        }
+        return index;
+    }
+
+    /**
+     * Parse a non-negative decimal number from part of a message
+     * @param text the message
+     * @param start index of the first digit
+     * @param end index just after the last digit
+     * @return the number
+     * @throws IllegalArgumentException if the part is empty or holds anything other than digits
+     */
+    private static int parseInt(String text, int start, int end) {
+        if (start >= end) {
+            throw new IllegalArgumentException("Expected a number in " + text);
+        }
+        return Integer.parseInt(text, start, end, 10);
+    }
+}
@@ -0,0 +1,424 @@
+package uk.ac.soton.comp1206.network;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Bounded queue of messages waiting to be sent to the server, drained by a writer task so callers on the FX thread
+ * never wait on the socket. The writer runs for as long as the queue is open, on whichever executor the queue is
+ * given.
+ *
+ * The writer takes everything queued at once and sends it as one batch, flushing the socket after the batch rather
+ * than after every message. Messages which only report the latest state (SCORE, LIVES and full BOARDs) are
+ * coalesced while they wait: a newer one replaces the pending one in place, so each batch carries at most one of
+ * each. A delta BOARD never replaces anything, since it only makes sense on top of the boards before it, but a full
+ * BOARD may replace a pending delta.
+ *
+ * When the queue is full a caller waits up to OFFER_TIMEOUT for space, and the message is dropped and counted if
+ * none comes.
+ */
+public class SendQueue {
+
+    private static final Logger logger = LogManager.getLogger(SendQueue.class);
+
+    /**
+     * Writes messages to the server
+     */
+    interface Sink {
+
+        /**
+         * Send a message, without necessarily flushing it
+         * @param message the message
+         */
+        void send(String message);
+
+        /**
+         * Flush the messages sent so far
+         */
+        void flush();
+    }
+
+    /**
+     * Default number of messages which can wait to be sent
+     */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    /**
+     * How long a caller waits for space in a full queue before the message is dropped, in milliseconds
+     */
+    public static final long OFFER_TIMEOUT = 1000;
+
+    /**
+     * A message waiting to be sent
+     */
+    private static class Entry {
+
+        /**
+         * The message, replaced when a newer message is coalesced into this entry
+         */
+        private String message;
+
+        /**
+         * When the message was queued, as a System.nanoTime value
+         */
+        private final long queued;
+
+        /**
+         * Create an entry
+         * @param message the message
+         */
+        private Entry(String message) {
+            this.message = message;
+            this.queued = System.nanoTime();
+        }
+    }
+
+    /**
+     * Guards every field below
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Signalled when a message is queued or the queue is closed
+     */
+    private final Condition notEmpty = lock.newCondition();
+
+    /**
+     * Signalled when the writer takes a batch
+     */
+    private final Condition notFull = lock.newCondition();
+
+    /**
+     * Messages waiting to be sent, oldest first
+     */
+    private final ArrayDeque<Entry> queue = new ArrayDeque<>();
+
+    /**
+     * Latest waiting entry for each coalescing key
+     */
+    private final Map<String, Entry> pending = new HashMap<>();
+
+    /**
+     * Maximum number of waiting messages
+     */
+    private final int capacity;
+
+    /**
+     * Writes messages to the server
+     */
+    private final Sink sink;
+
+    /**
+     * Counted down when the writer has sent everything and stopped
+     */
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    /**
+     * Whether the queue has been closed
+     */
+    private boolean closed;
+
+    /**
+     * Number of messages in the batch the writer is sending
+     */
+    private int writing;
+
+    /**
+     * Largest number of messages waiting at once
+     */
+    private int maxDepth;
+
+    /**
+     * Number of messages sent
+     */
+    private long sent;
+
+    /**
+     * Number of messages replaced by a newer message before being sent
+     */
+    private long coalesced;
+
+    /**
+     * Number of messages dropped because the queue stayed full
+     */
+    private long dropped;
+
+    /**
+     * Total time between queueing and sending over all messages sent, in nanoseconds
+     */
+    private long totalLatency;
+
+    /**
+     * Longest time between queueing and sending, in nanoseconds
+     */
+    private long maxLatency;
+
+    /**
+     * Create a queue and start its writer
+     * @param capacity maximum number of waiting messages
+     * @param sink writes messages to the server
+     * @param writerExecutor runs the writer, which blocks while the queue is empty
+     */
+    SendQueue(int capacity, Sink sink, Executor writerExecutor) {
+        this.capacity = capacity;
+        this.sink = sink;
+        writerExecutor.execute(() -> {
+            try {
+                drain();
+            } finally {
+                finished.countDown();
+            }
+        });
+    }
+
+    /**
+     * Queue a message to be sent, coalescing it with a waiting message it supersedes
+     * @param message the message
+     * @return true if the message was queued or coalesced, false if it was dropped
+     */
+    boolean offer(String message) {
+        String key = coalesceKey(message);
+        lock.lock();
+        try {
+            if (closed) {
+                logger.warn("Dropping message after close: {}", message);
+                dropped++;
+                return false;
+            }
+
+            if (key != null) {
+                Entry waiting = pending.get(key);
+                if (waiting != null && !isDelta(message)) {
+                    waiting.message = message;
+                    coalesced++;
+                    return true;
+                }
+            }
+
+            long timeout = TimeUnit.MILLISECONDS.toNanos(OFFER_TIMEOUT);
+            while (queue.size() >= capacity) {
+                if (timeout <= 0 || closed) {
+                    logger.error("Send queue full, dropping message: {}", message);
+                    dropped++;
+                    return false;
+                }
+                timeout = notFull.awaitNanos(timeout);
+            }
+
+            Entry entry = new Entry(message);
+            queue.addLast(entry);
+            if (key != null) {
+                pending.put(key, entry);
+            }
+            maxDepth = Math.max(maxDepth, queue.size());
+            notEmpty.signal();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            dropped++;
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stop accepting messages and wait for the writer to send the ones already queued
+     * @param timeout how long to wait, in milliseconds
+     */
+    void close(long timeout) {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            finished.await(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writer loop: take every waiting message, send them as one batch and flush, until closed and empty
+     */
+    private void drain() {
+        List<Entry> batch = new ArrayList<>();
+        while (true) {
+            lock.lock();
+            try {
+                writing = 0;
+                while (queue.isEmpty() && !closed) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                if (queue.isEmpty()) return;
+
+                batch.addAll(queue);
+                queue.clear();
+                pending.clear();
+                writing = batch.size();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            long now = System.nanoTime();
+            try {
+                for (Entry entry : batch) {
+                    logger.trace("Sending message: {}", entry.message);
+                    sink.send(entry.message);
+                }
+                sink.flush();
+            } catch (RuntimeException e) {
+                logger.error("Unable to send {} messages: {}", batch.size(), e.getMessage());
+            }
+            record(batch, now);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Record the latency of a batch which has been sent
+     * @param batch the messages sent
+     * @param now when they were sent, as a System.nanoTime value
+     */
+    private void record(List<Entry> batch, long now) {
+        lock.lock();
+        try {
+            for (Entry entry : batch) {
+                long latency = now - entry.queued;
+                totalLatency += latency;
+                maxLatency = Math.max(maxLatency, latency);
+            }
+            sent += batch.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the key under which a message is coalesced
+     * @param message the message
+     * @return the command for messages which only report the latest state, otherwise null
+     */
+    private static String coalesceKey(String message) {
+        if (message.startsWith("BOARD ")) return "BOARD";
+        if (message.startsWith("SCORE ")) return "SCORE";
+        if (message.startsWith("LIVES ")) return "LIVES";
+        return null;
+    }
+
+    /**
+     * Check whether a message is a delta board, which only applies on top of the boards sent before it and so can
+     * never replace a waiting board
+     * @param message the message
+     * @return true if the message is a delta BOARD
+     */
+    private static boolean isDelta(String message) {
+        return message.startsWith("BOARD D");
+    }
+
+    /**
+     * Get the number of messages waiting to be sent, including any batch being written
+     * @return queue depth
+     */
+    public int getDepth() {
+        lock.lock();
+        try {
+            return queue.size() + writing;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the largest number of messages which have waited at once
+     * @return maximum queue depth
+     */
+    public int getMaxDepth() {
+        lock.lock();
+        try {
+            return maxDepth;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of messages sent
+     * @return messages sent
+     */
+    public long getSent() {
+        lock.lock();
+        try {
+            return sent;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of messages replaced by a newer message before being sent
+     * @return messages coalesced
+     */
+    public long getCoalesced() {
+        lock.lock();
+        try {
+            return coalesced;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of messages dropped because the queue stayed full or was closed
+     * @return messages dropped
+     */
+    public long getDropped() {
+        lock.lock();
+        try {
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the average time messages waited between being queued and handed to the socket
+     * @return average send latency in nanoseconds, or 0 if nothing has been sent
+     */
+    public long getAverageLatency() {
+        lock.lock();
+        try {
+            return sent == 0 ? 0 : totalLatency / sent;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the longest time a message waited between being queued and handed to the socket
+     * @return maximum send latency in nanoseconds
+     */
+    public long getMaxLatency() {
+        lock.lock();
+        try {
+            return maxLatency;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
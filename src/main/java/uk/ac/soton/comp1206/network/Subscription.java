@@ -0,0 +1,13 @@
+package uk.ac.soton.comp1206.network;
+
+/**
+ * Handle returned when a listener is added to the Communicator, used to remove just that listener again without
+ * clearing the listeners added by anything else.
+ */
+public interface Subscription {
+
+    /**
+     * Remove the listener. Does nothing if it has already been removed.
+     */
+    public void unsubscribe();
+}
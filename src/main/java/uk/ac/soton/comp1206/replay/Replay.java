@@ -0,0 +1,383 @@
+package uk.ac.soton.comp1206.replay;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.OptionalLong;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A recorded game, decoded from a replay file into flat arrays so it can be played back without any further parsing
+ * or allocation.
+ *
+ * A replay file starts with a header: the magic number, the format version, the columns and rows of the grid, a flag
+ * saying whether a seed follows, the seed and the time recording started in epoch milliseconds. Then comes one record
+ * per event: the milliseconds since the previous event as an unsigned variable-length integer, a type byte and the
+ * arguments of that type. Pieces, rotations and coordinates are single bytes; line clears are two 8-byte bitmasks.
+ */
+public final class Replay {
+
+    private static final Logger logger = LogManager.getLogger(Replay.class);
+
+    /**
+     * The first four bytes of every replay file, "TREC"
+     */
+    static final int MAGIC = 0x54524543;
+
+    /**
+     * The version of the file format written
+     */
+    static final byte VERSION = 1;
+
+    /**
+     * Size of the header in bytes
+     */
+    static final int HEADER_SIZE = 24;
+
+    /**
+     * A piece was dealt. Argument: the piece number.
+     */
+    public static final byte SPAWN = 1;
+
+    /**
+     * The current piece was rotated. Argument: the number of clockwise rotations.
+     */
+    public static final byte ROTATE = 2;
+
+    /**
+     * The current and next pieces were swapped. No arguments.
+     */
+    public static final byte SWAP = 3;
+
+    /**
+     * The current piece was played. Arguments: the column and row.
+     */
+    public static final byte PLACE = 4;
+
+    /**
+     * The player ran out of time. No arguments.
+     */
+    public static final byte TIMER = 5;
+
+    /**
+     * Lines were cleared. Arguments: the bitmasks of the rows and columns.
+     */
+    public static final byte CLEAR = 6;
+
+    /**
+     * Number of columns of the grid
+     */
+    private final int cols;
+
+    /**
+     * Number of rows of the grid
+     */
+    private final int rows;
+
+    /**
+     * The seed the pieces were dealt from, if any
+     */
+    private final OptionalLong seed;
+
+    /**
+     * When recording started, in epoch milliseconds
+     */
+    private final long startedAt;
+
+    /**
+     * Number of events
+     */
+    private final int eventCount;
+
+    /**
+     * The type of each event
+     */
+    private final byte[] types;
+
+    /**
+     * When each event happened, in milliseconds since recording started
+     */
+    private final long[] times;
+
+    /**
+     * The argument of each event. Spawn holds the piece, rotate the rotations, place the column in the low byte and
+     * the row in the next byte, and clear the index of its bitmasks in the masks array.
+     */
+    private final int[] arguments;
+
+    /**
+     * Row and column bitmasks of each line clear, in pairs
+     */
+    private final long[] masks;
+
+    /**
+     * Every piece dealt, in order
+     */
+    private final int[] pieces;
+
+    /**
+     * Create a replay from decoded events
+     * @param cols number of columns
+     * @param rows number of rows
+     * @param seed the seed the pieces were dealt from, if any
+     * @param startedAt when recording started
+     * @param eventCount number of events
+     * @param types type of each event
+     * @param times time of each event
+     * @param arguments argument of each event
+     * @param masks line clear bitmasks
+     * @param pieces every piece dealt
+     */
+    private Replay(int cols, int rows, OptionalLong seed, long startedAt, int eventCount, byte[] types, long[] times,
+                   int[] arguments, long[] masks, int[] pieces) {
+        this.cols = cols;
+        this.rows = rows;
+        this.seed = seed;
+        this.startedAt = startedAt;
+        this.eventCount = eventCount;
+        this.types = types;
+        this.times = times;
+        this.arguments = arguments;
+        this.masks = masks;
+        this.pieces = pieces;
+    }
+
+    /**
+     * Read and decode a replay file. A file which ends part way through an event, for example because the game
+     * crashed while recording, is read up to the last complete event.
+     * @param file the replay file
+     * @return the decoded replay
+     * @throws IOException if the file cannot be read or is not a replay
+     */
+    public static Replay load(Path file) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a replay file: " + file);
+            }
+            buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Keep reading until the whole file is in the buffer
+            }
+            buffer.flip();
+        }
+
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Not a replay file: " + file);
+        }
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IOException("Unsupported replay version " + version + ": " + file);
+        }
+        int cols = buffer.get() & 0xFF;
+        int rows = buffer.get() & 0xFF;
+        boolean seeded = buffer.get() != 0;
+        long seedValue = buffer.getLong();
+        long startedAt = buffer.getLong();
+
+        // Most events take 2 or 3 bytes, so this is enough for almost every file without growing
+        int capacity = Math.max(16, buffer.remaining() / 2);
+        byte[] types = new byte[capacity];
+        long[] times = new long[capacity];
+        int[] arguments = new int[capacity];
+        long[] masks = new long[16];
+        int[] pieces = new int[capacity];
+        int count = 0;
+        int maskCount = 0;
+        int pieceCount = 0;
+        long time = 0;
+
+        while (buffer.hasRemaining()) {
+            int start = buffer.position();
+            try {
+                long eventTime = time + readVarLong(buffer);
+                byte type = buffer.get();
+                int argument = 0;
+                switch (type) {
+                    case SPAWN -> {
+                        argument = buffer.get() & 0xFF;
+                        if (pieceCount == pieces.length) pieces = Arrays.copyOf(pieces, pieceCount * 2);
+                        pieces[pieceCount++] = argument;
+                    }
+                    case ROTATE -> argument = buffer.get() & 0xFF;
+                    case PLACE -> {
+                        int x = buffer.get() & 0xFF;
+                        int y = buffer.get() & 0xFF;
+                        argument = x | (y << 8);
+                    }
+                    case CLEAR -> {
+                        long clearedRows = buffer.getLong();
+                        long clearedCols = buffer.getLong();
+                        if (maskCount + 2 > masks.length) masks = Arrays.copyOf(masks, masks.length * 2);
+                        argument = maskCount;
+                        masks[maskCount++] = clearedRows;
+                        masks[maskCount++] = clearedCols;
+                    }
+                    case SWAP, TIMER -> {
+                    }
+                    default -> throw new IOException("Unknown replay event " + type + " at byte " + start);
+                }
+
+                if (count == types.length) {
+                    types = Arrays.copyOf(types, count * 2);
+                    times = Arrays.copyOf(times, count * 2);
+                    arguments = Arrays.copyOf(arguments, count * 2);
+                }
+                types[count] = type;
+                times[count] = eventTime;
+                arguments[count] = argument;
+                count++;
+                time = eventTime;
+            } catch (BufferUnderflowException e) {
+                logger.warn("Replay {} ends part way through an event at byte {}", file, start);
+                break;
+            }
+        }
+
+        logger.info("Loaded replay {} with {} events", file, count);
+        return new Replay(cols, rows, seeded ? OptionalLong.of(seedValue) : OptionalLong.empty(), startedAt, count,
+            types, times, arguments, masks, Arrays.copyOf(pieces, pieceCount));
+    }
+
+    /**
+     * Read an unsigned variable-length integer, seven bits per byte with the high bit set on all but the last byte
+     * @param buffer the buffer to read from
+     * @return the value
+     */
+    private static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    /**
+     * Get the number of columns of the grid
+     * @return number of columns
+     */
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * Get the number of rows of the grid
+     * @return number of rows
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Get the seed the pieces were dealt from
+     * @return the seed, or empty if the pieces did not come from a seed
+     */
+    public OptionalLong getSeed() {
+        return seed;
+    }
+
+    /**
+     * Get when recording started
+     * @return epoch milliseconds
+     */
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    /**
+     * Get the number of events recorded
+     * @return number of events
+     */
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Get how long the recording lasts
+     * @return milliseconds from the start of recording to the last event
+     */
+    public long getDuration() {
+        return eventCount == 0 ? 0 : times[eventCount - 1];
+    }
+
+    /**
+     * Get the type of an event
+     * @param event index of the event
+     * @return one of the event type constants
+     */
+    public byte getType(int event) {
+        return types[event];
+    }
+
+    /**
+     * Get when an event happened
+     * @param event index of the event
+     * @return milliseconds since recording started
+     */
+    public long getTime(int event) {
+        return times[event];
+    }
+
+    /**
+     * Get the argument of a spawn or rotate event
+     * @param event index of the event
+     * @return the piece number or the number of rotations
+     */
+    public int getArgument(int event) {
+        return arguments[event];
+    }
+
+    /**
+     * Get the column of a place event
+     * @param event index of the event
+     * @return placement column
+     */
+    public int getX(int event) {
+        return arguments[event] & 0xFF;
+    }
+
+    /**
+     * Get the row of a place event
+     * @param event index of the event
+     * @return placement row
+     */
+    public int getY(int event) {
+        return (arguments[event] >>> 8) & 0xFF;
+    }
+
+    /**
+     * Get the rows cleared by a clear event
+     * @param event index of the event
+     * @return bitmask of the rows
+     */
+    public long getClearedRows(int event) {
+        return masks[arguments[event]];
+    }
+
+    /**
+     * Get the columns cleared by a clear event
+     * @param event index of the event
+     * @return bitmask of the columns
+     */
+    public long getClearedCols(int event) {
+        return masks[arguments[event] + 1];
+    }
+
+    /**
+     * Get every piece dealt in the game, in order
+     * @return the piece numbers. Shared, so must not be modified.
+     */
+    int[] getPieces() {
+        return pieces;
+    }
+}
@@ -0,0 +1,221 @@
+package uk.ac.soton.comp1206.replay;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.event.LineClearedListener;
+import uk.ac.soton.comp1206.game.GameEngine;
+import uk.ac.soton.comp1206.game.PieceSource;
+
+/**
+ * Plays a Replay back through a GameEngine, so the grid, score, level, lives and pieces can be inspected after any
+ * event. The engine deals the recorded pieces in order, and each rotate, swap, place and timer event is applied to it
+ * just as it was during the game, so playback runs the same rules and produces the same state.
+ *
+ * Line clears are not applied, since the engine clears lines itself when a piece is placed; instead they are checked
+ * against what the engine cleared, and a warning is logged if the playback has diverged from the recording.
+ */
+public class ReplayPlayer {
+
+    private static final Logger logger = LogManager.getLogger(ReplayPlayer.class);
+
+    /**
+     * The replay being played
+     */
+    private final Replay replay;
+
+    /**
+     * The engine the replay is played through
+     */
+    private GameEngine engine;
+
+    /**
+     * Index of the next event to apply
+     */
+    private int position;
+
+    /**
+     * Rows cleared by the engine since the last clear event
+     */
+    private long engineClearedRows;
+
+    /**
+     * Columns cleared by the engine since the last clear event
+     */
+    private long engineClearedCols;
+
+    /**
+     * Told about lines the engine clears during playback
+     */
+    private LineClearedListener lineClearedListener;
+
+    /**
+     * Create a player positioned at the start of a replay
+     * @param replay the replay to play
+     */
+    public ReplayPlayer(Replay replay) {
+        this.replay = replay;
+        reset();
+    }
+
+    /**
+     * Go back to the start of the replay with a new engine
+     */
+    public void reset() {
+        engine = new GameEngine(replay.getCols(), replay.getRows(), new RecordedPieceSource(replay.getPieces()));
+        engine.setOnLineClear(this::engineClearedLines);
+        position = 0;
+        engineClearedRows = 0;
+        engineClearedCols = 0;
+    }
+
+    /**
+     * Apply the next event
+     * @return true if an event was applied, false if the replay has finished
+     */
+    public boolean step() {
+        if (position >= replay.getEventCount()) {
+            return false;
+        }
+        int event = position++;
+        switch (replay.getType(event)) {
+            case Replay.SPAWN -> {
+                // Pieces are dealt by the engine from the recorded stream. The first spawn starts the game.
+                if (engine.getNextPiece() == null) {
+                    engine.initialisePieces();
+                }
+            }
+            case Replay.ROTATE -> engine.rotateCurrentPiece(replay.getArgument(event));
+            case Replay.SWAP -> engine.swapCurrentPiece();
+            case Replay.PLACE -> {
+                if (!engine.playPiece(replay.getX(event), replay.getY(event))) {
+                    logger.warn("Replay diverged at event {}: piece could not be played at {},{}", event,
+                        replay.getX(event), replay.getY(event));
+                }
+            }
+            case Replay.TIMER -> engine.timerExpired();
+            case Replay.CLEAR -> {
+                if (engineClearedRows != replay.getClearedRows(event)
+                    || engineClearedCols != replay.getClearedCols(event)) {
+                    logger.warn("Replay diverged at event {}: recorded line clear does not match", event);
+                }
+                engineClearedRows = 0;
+                engineClearedCols = 0;
+            }
+            default -> throw new IllegalStateException("Unknown replay event " + replay.getType(event));
+        }
+        return true;
+    }
+
+    /**
+     * Move to just before the given event, starting again from the beginning if it has already been passed
+     * @param event index of the event to stop before, or the event count to play to the end
+     */
+    public void seek(int event) {
+        if (event < position) {
+            reset();
+        }
+        int target = Math.min(event, replay.getEventCount());
+        while (position < target) {
+            step();
+        }
+    }
+
+    /**
+     * Apply every remaining event
+     */
+    public void fastForward() {
+        seek(replay.getEventCount());
+    }
+
+    /**
+     * Record lines cleared by the engine so they can be checked against the next clear event
+     * @param clearedRows bitmask of the rows cleared
+     * @param clearedCols bitmask of the columns cleared
+     */
+    private void engineClearedLines(long clearedRows, long clearedCols) {
+        engineClearedRows = clearedRows;
+        engineClearedCols = clearedCols;
+        if (lineClearedListener != null) {
+            lineClearedListener.handle(clearedRows, clearedCols);
+        }
+    }
+
+    /**
+     * Attaches a LineClearedListener told about lines cleared during playback
+     * @param lineClearedListener LineClearedListener to be attached
+     */
+    public void setOnLineClear(LineClearedListener lineClearedListener) {
+        this.lineClearedListener = lineClearedListener;
+    }
+
+    /**
+     * Get the replay being played
+     * @return replay
+     */
+    public Replay getReplay() {
+        return replay;
+    }
+
+    /**
+     * Get the engine holding the state of the game at the current position. A new engine is created whenever
+     * the player goes back to the start.
+     * @return game engine
+     */
+    public GameEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Get the index of the next event to apply
+     * @return current position
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * Check whether every event has been applied
+     * @return true at the end of the replay
+     */
+    public boolean isFinished() {
+        return position >= replay.getEventCount();
+    }
+
+    /**
+     * Deals the pieces recorded in a replay, in order
+     */
+    private static class RecordedPieceSource implements PieceSource {
+
+        /**
+         * The recorded pieces
+         */
+        private final int[] pieces;
+
+        /**
+         * Index of the next piece to deal
+         */
+        private int next;
+
+        /**
+         * Create a source dealing the recorded pieces
+         * @param pieces the recorded pieces
+         */
+        RecordedPieceSource(int[] pieces) {
+            this.pieces = pieces;
+        }
+
+        /**
+         * Deal the next recorded piece. A replay cut off between a piece being played and the following piece being
+         * dealt runs out of pieces, in which case the first piece is dealt to let playback finish.
+         * @return the piece number
+         */
+        @Override
+        public int next() {
+            if (next == pieces.length) {
+                logger.debug("Replay has run out of recorded pieces");
+                return 0;
+            }
+            return pieces[next++];
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package uk.ac.soton.comp1206.replay;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.stream.Stream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.event.GameEventListener;
+import uk.ac.soton.comp1206.game.GameEngine;
+
+/**
+ * Records the events of a GameEngine to a replay file. Events are encoded into a direct buffer and only written to
+ * the file channel when the buffer fills up or the recorder is closed, so recording costs a few bytes of memory per
+ * event and almost never touches the disk while the game is being played.
+ *
+ * If writing fails the recorder logs the error and stops recording rather than interrupting the game.
+ */
+public class ReplayRecorder implements GameEventListener, Closeable {
+
+    private static final Logger logger = LogManager.getLogger(ReplayRecorder.class);
+
+    /**
+     * File extension of replay files
+     */
+    public static final String EXTENSION = ".replay";
+
+    /**
+     * Size of the write buffer
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Largest encoded event: a 10 byte time, a type and two bitmasks
+     */
+    private static final int MAX_EVENT_SIZE = 10 + 1 + 16;
+
+    /**
+     * Names replay files after the time recording started
+     */
+    private static final DateTimeFormatter FILE_NAME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+    /**
+     * The file being written
+     */
+    private final Path file;
+
+    /**
+     * The channel to the file, or null once closed or failed
+     */
+    private FileChannel channel;
+
+    /**
+     * Encoded events waiting to be written
+     */
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    /**
+     * When the previous event happened, in milliseconds from System.nanoTime
+     */
+    private long lastEventTime;
+
+    /**
+     * Start recording a game to a file, replacing the file if it exists
+     * @param file the file to write
+     * @param engine the engine to record, which must not have dealt any pieces yet
+     * @throws IOException if the file cannot be created
+     */
+    public ReplayRecorder(Path file, GameEngine engine) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+        lastEventTime = System.nanoTime() / 1_000_000;
+
+        OptionalLong seed = engine.getSeed();
+        buffer.putInt(Replay.MAGIC);
+        buffer.put(Replay.VERSION);
+        buffer.put((byte) engine.getCols());
+        buffer.put((byte) engine.getRows());
+        buffer.put((byte) (seed.isPresent() ? 1 : 0));
+        buffer.putLong(seed.orElse(0));
+        buffer.putLong(System.currentTimeMillis());
+
+        engine.setGameEventListener(this);
+        logger.info("Recording replay to {}", file);
+    }
+
+    /**
+     * Start recording a game to a new file named after the current time
+     * @param directory the directory to create the file in, which is created if it does not exist
+     * @param engine the engine to record
+     * @return the recorder
+     * @throws IOException if the file cannot be created
+     */
+    public static ReplayRecorder create(Path directory, GameEngine engine) throws IOException {
+        Files.createDirectories(directory);
+        return new ReplayRecorder(directory.resolve(LocalDateTime.now().format(FILE_NAME) + EXTENSION), engine);
+    }
+
+    /**
+     * Get the directory replays are saved in: the tetrecs.replays system property, or "replays" in the working
+     * directory
+     * @return replay directory
+     */
+    public static Path getDefaultDirectory() {
+        return Paths.get(System.getProperty("tetrecs.replays", "replays"));
+    }
+
+    /**
+     * Find the most recently recorded replay in a directory. Replay files are named after the time they were
+     * recorded, so the latest is the last by name.
+     * @param directory the directory to look in
+     * @return the latest replay file, or empty if there are none
+     */
+    public static Optional<Path> findLatest(Path directory) {
+        if (!Files.isDirectory(directory)) {
+            return Optional.empty();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(EXTENSION)).max(Path::compareTo);
+        } catch (IOException e) {
+            logger.error("Unable to list replays in {}", directory, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Record a piece being dealt
+     * @param piece the piece number
+     */
+    @Override
+    public void pieceSpawned(int piece) {
+        if (begin(Replay.SPAWN)) {
+            buffer.put((byte) piece);
+        }
+    }
+
+    /**
+     * Record the current piece being rotated
+     * @param rotations number of clockwise rotations
+     */
+    @Override
+    public void pieceRotated(int rotations) {
+        if (begin(Replay.ROTATE)) {
+            buffer.put((byte) rotations);
+        }
+    }
+
+    /**
+     * Record the pieces being swapped
+     */
+    @Override
+    public void piecesSwapped() {
+        begin(Replay.SWAP);
+    }
+
+    /**
+     * Record the current piece being played
+     * @param x placement column
+     * @param y placement row
+     */
+    @Override
+    public void piecePlayed(int x, int y) {
+        if (begin(Replay.PLACE)) {
+            buffer.put((byte) x);
+            buffer.put((byte) y);
+        }
+    }
+
+    /**
+     * Record the player running out of time
+     */
+    @Override
+    public void timerExpired() {
+        begin(Replay.TIMER);
+    }
+
+    /**
+     * Record lines being cleared
+     * @param clearedRows bitmask of the rows cleared
+     * @param clearedCols bitmask of the columns cleared
+     */
+    @Override
+    public void linesCleared(long clearedRows, long clearedCols) {
+        if (begin(Replay.CLEAR)) {
+            buffer.putLong(clearedRows);
+            buffer.putLong(clearedCols);
+        }
+    }
+
+    /**
+     * Make room for an event and write its time and type
+     * @param type the event type
+     * @return true if the event should be written, false if recording has stopped
+     */
+    private boolean begin(byte type) {
+        if (channel == null) return false;
+        if (buffer.remaining() < MAX_EVENT_SIZE && !flush()) return false;
+
+        long now = System.nanoTime() / 1_000_000;
+        long delta = now - lastEventTime;
+        lastEventTime = now;
+        while ((delta & ~0x7FL) != 0) {
+            buffer.put((byte) ((delta & 0x7F) | 0x80));
+            delta >>>= 7;
+        }
+        buffer.put((byte) delta);
+        buffer.put(type);
+        return true;
+    }
+
+    /**
+     * Write the buffered events to the file
+     * @return true if they were written, false if writing failed and recording has stopped
+     */
+    private boolean flush() {
+        try {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+            return true;
+        } catch (IOException e) {
+            logger.error("Unable to write replay {}, no longer recording", file, e);
+            closeQuietly();
+            return false;
+        }
+    }
+
+    /**
+     * Close the channel after a failure
+     */
+    private void closeQuietly() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.debug("Unable to close replay {}", file, e);
+        }
+        channel = null;
+    }
+
+    /**
+     * Write any buffered events and close the file. Does nothing if already closed.
+     * @throws IOException if the file cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel == null) return;
+        try {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            channel.close();
+            channel = null;
+        }
+        logger.info("Saved replay {}", file);
+    }
+
+    /**
+     * Get the file being written
+     * @return replay file
+     */
+    public Path getFile() {
+        return file;
+    }
+}
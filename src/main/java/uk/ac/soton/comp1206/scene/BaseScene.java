@@ -47,6 +47,13 @@ public abstract class BaseScene {
      */
     public abstract void build();
 
+    /**
+     * Stop anything the scene started which could outlive it. Called by the GameWindow before the next scene is
+     * loaded.
+     */
+    public void cleanup() {
+    }
+
     /**
      * Create a new JavaFX scene using the root contained within this scene
      * @return JavaFX scene
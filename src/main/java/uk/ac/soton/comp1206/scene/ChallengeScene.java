@@ -7,9 +7,8 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.regex.Pattern;
-import javafx.animation.KeyFrame;
-import javafx.animation.KeyValue;
-import javafx.animation.Timeline;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
 import javafx.beans.binding.Bindings;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
@@ -21,16 +20,17 @@ import javafx.scene.layout.Pane;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
-import javafx.scene.paint.Color;
-import javafx.scene.shape.Rectangle;
 import javafx.util.Duration;
 import javafx.util.converter.NumberStringConverter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import uk.ac.soton.comp1206.component.GameBlock;
 import uk.ac.soton.comp1206.component.GameBoard;
 import uk.ac.soton.comp1206.component.PieceBoard;
+import uk.ac.soton.comp1206.component.TimerBar;
+import uk.ac.soton.comp1206.game.AutoPlayer;
 import uk.ac.soton.comp1206.game.Game;
+import uk.ac.soton.comp1206.game.PieceSource;
+import uk.ac.soton.comp1206.game.RandomPieceSource;
 import uk.ac.soton.comp1206.ui.GamePane;
 import uk.ac.soton.comp1206.ui.GameWindow;
 import uk.ac.soton.comp1206.utility.Multimedia;
@@ -52,6 +52,26 @@ public class ChallengeScene extends BaseScene {
      */
     protected GameBoard board;
 
+    /**
+     * Picks moves for the hint and autoplay modes
+     */
+    private final AutoPlayer autoPlayer = new AutoPlayer();
+
+    /**
+     * Whether the AutoPlayer is playing the game
+     */
+    private boolean autoplay = false;
+
+    /**
+     * Whether the AutoPlayer is searching for a move
+     */
+    private boolean searching = false;
+
+    /**
+     * Gap between moves while autoplaying, so the moves can be followed
+     */
+    private final PauseTransition autoplayDelay = new PauseTransition(Duration.millis(400));
+
     /**
      * Create a new Single Player challenge scene
      * @param gameWindow the Game Window
@@ -155,6 +175,10 @@ public class ChallengeScene extends BaseScene {
         game.setNextPieceListener(((currentGamePiece, nextGamePiece) -> {
             currentPieceBoard.displayPiece(currentGamePiece);
             nextPieceBoard.displayPiece(nextGamePiece);
+            board.clearHint();
+            if (autoplay) {
+                autoplayDelay.playFromStart();
+            }
         }));
 
         game.setOnLineClear(board::fadeOut);
@@ -180,31 +204,10 @@ public class ChallengeScene extends BaseScene {
         mainPane.setRight(rightBar);
 
         // Timer bar at the bottom of the screen
-        Rectangle rectangle = new Rectangle(gameWindow.getWidth() - 20, (double) gameWindow.getHeight() / 30);
-        rectangle.setFill(Color.GREEN);
-        game.setGameLoopListener((event) -> {
-            Timeline timeline = new Timeline();
-            timeline.getKeyFrames().addAll(
-                    new KeyFrame(Duration.ZERO,
-                            new KeyValue(rectangle.widthProperty(), gameWindow.getWidth() - 20),
-                            new KeyValue(rectangle.fillProperty(), Color.GREEN)
-                    ),
-                    new KeyFrame(
-                            Duration.millis(event / 2),
-                            new KeyValue(rectangle.widthProperty(), (gameWindow.getWidth() - 20) / 2),
-                            new KeyValue(rectangle.fillProperty(), Color.YELLOW)
-                    ),
-                    new KeyFrame(
-                            Duration.millis(event),
-                            new KeyValue(rectangle.widthProperty(), 0),
-                            new KeyValue(rectangle.fillProperty(), Color.RED)
-                    )
-            );
-            timeline.setCycleCount(Timeline.INDEFINITE);
-            timeline.play();
-        });
+        TimerBar timerBar = new TimerBar(gameWindow.getWidth() - 20, (double) gameWindow.getHeight() / 30);
+        game.setOnClockTick(timerBar::update);
 
-        VBox timerVBox = new VBox(rectangle);
+        VBox timerVBox = new VBox(timerBar);
 
         mainPane.setBottom(timerVBox);
 
@@ -349,18 +352,76 @@ public class ChallengeScene extends BaseScene {
 
     /**
      * Handle when a block is clicked
-     * @param gameBlock the Game Block that was clocked
+     * @param x the column of the block that was clicked
+     * @param y the row of the block that was clicked
+     */
+    private void blockClicked(int x, int y) {
+        game.playPiece(x, y);
+    }
+
+    /**
+     * Ask the AutoPlayer for the best move and highlight the cells it would fill
      */
-    private void blockClicked(GameBlock gameBlock) {
-        game.blockClicked(gameBlock);
+    private void showHint() {
+        requestMove();
+    }
+
+    /**
+     * Turn autoplay on or off. While it is on, the AutoPlayer plays a move whenever the pieces change.
+     */
+    private void toggleAutoplay() {
+        autoplay = !autoplay;
+        logger.info("Autoplay {}", autoplay ? "on" : "off");
+        if (autoplay) {
+            requestMove();
+        } else {
+            autoplayDelay.stop();
+        }
+    }
+
+    /**
+     * Search for the best move in the background, then either play it or show it as a hint depending on whether
+     * autoplay is on
+     */
+    private void requestMove() {
+        if (game == null || searching) return;
+        searching = true;
+        Game searchedGame = game;
+        autoPlayer.findBestMoveAsync(game.getEngine()).whenComplete((move, error) -> Platform.runLater(() -> {
+            searching = false;
+            // The game may have ended while searching
+            if (game != searchedGame) return;
+            if (error != null) {
+                logger.error("Unable to find a move", error);
+                return;
+            }
+            if (move == null) {
+                logger.info("No legal moves for the current pieces");
+                return;
+            }
+            // The timer or the player may have changed the pieces while searching, so search again for the new ones
+            if (!move.isFor(game.getEngine())) {
+                logger.info("Pieces changed while searching, searching again");
+                requestMove();
+                return;
+            }
+            if (autoplay) {
+                game.playMove(move);
+                autoplayDelay.playFromStart();
+            } else {
+                board.showHint(move.getShape(), move.getX(), move.getY());
+            }
+        }));
     }
 
     /**
      * Set up the game object and model
      */
     public void setupGame() {
-        //Start new game
-        game = new Game(5, 5);
+        //Start new game, replaying a piece stream if a seed was given with -Dtetrecs.seed
+        Long seed = Long.getLong("tetrecs.seed");
+        PieceSource pieceSource = seed == null ? new RandomPieceSource() : new RandomPieceSource(seed);
+        game = new Game(5, 5, pieceSource, gameWindow.getExecutor().getScheduler());
     }
 
     /**
@@ -368,6 +429,8 @@ public class ChallengeScene extends BaseScene {
      */
     public void endGame() {
         logger.info("Ending the game");
+        autoplay = false;
+        autoplayDelay.stop();
         game.gameTimerShutdown();
         game = null;
     }
@@ -378,6 +441,7 @@ public class ChallengeScene extends BaseScene {
     @Override
     public void initialise() {
         logger.info("Initialising ChallengeScene");
+        autoplayDelay.setOnFinished((event) -> requestMove());
         game.start();
 
         // Add keyboard listener to the scene
@@ -423,6 +487,12 @@ public class ChallengeScene extends BaseScene {
                 case R:
                     game.swapCurrentPiece();
                     break;
+                case H:
+                    showHint();
+                    break;
+                case P:
+                    toggleAutoplay();
+                    break;
             }
         });
     }
@@ -2,8 +2,11 @@ package uk.ac.soton.comp1206.scene;
 
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
@@ -11,6 +14,7 @@ import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.control.TextField;
 import javafx.scene.input.KeyEvent;
@@ -21,18 +25,82 @@ import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.network.ChannelList;
+import uk.ac.soton.comp1206.network.Communicator;
+import uk.ac.soton.comp1206.network.Message;
 import uk.ac.soton.comp1206.ui.GamePane;
 import uk.ac.soton.comp1206.ui.GameWindow;
 import uk.ac.soton.comp1206.utility.Multimedia;
+import uk.ac.soton.comp1206.utility.RingBufferList;
 
 /**
  * Scene which allows the user to browse the list of available channels, join or create a channel,
  * message other players in the same channel, and start or leave a channel
+ *
+ * The channel list is polled with LIST, and only the rows for channels which were added or removed are changed. The
+ * poll backs off while the list stays the same, from MIN_POLL_DELAY up to MAX_POLL_DELAY, and goes back to the
+ * shortest delay as soon as it changes or the player joins or leaves a channel. A poll which gets no reply is retried
+ * after REPLY_TIMEOUT. Polling stops when the scene changes.
  */
 public class LobbyScene extends BaseScene {
 
     private static final Logger logger = LogManager.getLogger(MenuScene.class);
 
+    /**
+     * Shortest delay between polls of the channel list, in milliseconds
+     */
+    public static final long MIN_POLL_DELAY = 2000;
+
+    /**
+     * Longest delay between polls of the channel list, in milliseconds
+     */
+    public static final long MAX_POLL_DELAY = 30000;
+
+    /**
+     * Number of chat messages kept, after which the oldest are dropped
+     */
+    public static final int CHAT_HISTORY = 200;
+
+    /**
+     * Format of the time shown with each chat message
+     */
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm");
+
+    /**
+     * The latest chat messages in the channel, oldest first
+     */
+    private final RingBufferList<String> chatMessages = new RingBufferList<>(CHAT_HISTORY);
+
+    /**
+     * How long to wait for a CHANNELS reply, on top of the poll delay, before asking again, in milliseconds
+     */
+    public static final long REPLY_TIMEOUT = 5000;
+
+    /**
+     * The channels last listed by the server
+     */
+    private final ChannelList channels = new ChannelList();
+
+    /**
+     * The row shown for each channel
+     */
+    private final Map<String, Label> channelRows = new HashMap<>();
+
+    /**
+     * Delay before the next poll, doubled each time the list comes back unchanged. Guarded by this scene.
+     */
+    private long pollDelay = MIN_POLL_DELAY;
+
+    /**
+     * The next poll, or null if none is scheduled. Guarded by this scene.
+     */
+    private ScheduledFuture<?> nextPoll;
+
+    /**
+     * Whether the scene has been left, after which no more polls are scheduled. Guarded by this scene.
+     */
+    private boolean stopped;
+
     /**
      * Create a new scene, passing in the GameWindow the scene will be displayed in
      *
@@ -120,17 +188,11 @@ public class LobbyScene extends BaseScene {
         Region space = new Region();
         HBox.setHgrow(space, Priority.ALWAYS);
 
-        VBox messagesList = new VBox();
-        ScrollPane messagesScroller = new ScrollPane();
-        VBox.setVgrow(messagesScroller, Priority.ALWAYS);
-        messagesScroller.setContent(messagesList);
-
-        // Set the background of the ScrollPane to be transparent
-        messagesScroller.setStyle("-fx-background: transparent; -fx-background-color: transparent;");
-        // Making the viewport transparent
-        messagesScroller.viewportBoundsProperty().addListener((obs, oldVal, newVal) -> {
-            messagesScroller.lookup(".viewport").setStyle("-fx-background-color: transparent;");
-        });
+        // Only the cells on screen are created, and the oldest messages are dropped beyond CHAT_HISTORY
+        ListView<String> messagesList = new ListView<>(chatMessages);
+        messagesList.getStyleClass().add("messageList");
+        messagesList.setFocusTraversable(false);
+        VBox.setVgrow(messagesList, Priority.ALWAYS);
 
         TextField messageInputField = new TextField();
         messageInputField.setPromptText("Send a message");
@@ -145,7 +207,7 @@ public class LobbyScene extends BaseScene {
 
         HBox chatBoxButtons = new HBox(startGameButton, space, leaveGameButton);
 
-        VBox chatBox = new VBox(usersList, chatBoxInfoText, messagesScroller, messageInputField, chatBoxButtons);
+        VBox chatBox = new VBox(usersList, chatBoxInfoText, messagesList, messageInputField, chatBoxButtons);
         chatBox.setPrefWidth(480);
         chatBox.setPrefHeight(425);
         chatBox.setStyle("-fx-background-color: rgba(0, 0, 0, 0.5); -fx-border-color: white; -fx-border-width: 2;");
@@ -172,99 +234,155 @@ public class LobbyScene extends BaseScene {
             gameWindow.getCommunicator().send("START");
         });
 
-        // Create a Timer to request current channels from the server every 5 seconds
-        Timer timer = new Timer();
-        timer.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                gameWindow.getCommunicator().send("LIST");
-            }
-        }, 0, 5000); // 0 initial delay, 5000 ms period (5 seconds)
-
-        // Listener for communications
-        gameWindow.getCommunicator().addListener((message) -> {
-            if (message.startsWith("CHANNELS ")) {
-                // Updates channels list
-                message = message.split(" ")[1];
-                String[] channels = message.split("\n");
-                Platform.runLater(() -> {
-                    channelsList.getChildren().clear();
-                    for (String channel : channels) {
-                        Label channelNameHeading = new Label(channel);
-                        channelNameHeading.getStyleClass().add("channelItem");
-                        channelNameHeading.setOnMouseClicked((event) -> {
-                            gameWindow.getCommunicator().send("JOIN " + channel);
-                        });
-                        channelsList.getChildren().add(channelNameHeading);
-                    }
-                });
-            } else if (message.startsWith("JOIN ")) {
-                Multimedia.switchAudioFile("message.wav");
-                // Makes the chat box visible once the user has joined a lobby
-                String finalMessage = message.split(" ")[1];
-                Platform.runLater(() -> {
-                    gameWindow.getCommunicator().send("LIST");
-                    chatboxHeading.setText(finalMessage);
-                    rightSectionVBox.setVisible(true);
-                });
-            } else if (message.startsWith("USERS ")) {
-                // Updates user list at the top of the chat box
-                message = message.split(" ")[1];
-                String[] users = message.split("\n");
-                Platform.runLater(() -> {
-                    usersList.getChildren().clear();
-                    for (String user : users) {
-                        Label userLabel = new Label(user);
-                        userLabel.getStyleClass().add("channelItem");
-                        usersList.getChildren().add(userLabel);
-                    }
-                });
-            } else if (message.equals("PARTED")) {
-                // If user leaves a lobby
-                gameWindow.getCommunicator().send("LIST");
+        // Only the rows for channels which were added or removed are changed
+        channels.setChannelListListener((added, removed) -> Platform.runLater(() -> {
+            updateChannelRows(channelsList, added, removed);
+        }));
+
+        // Listeners for communications
+        Communicator communicator = gameWindow.getCommunicator();
+        communicator.addListener(Message.Channels.class, (message) -> {
+            channelsReceived(message.channels());
+        });
+        communicator.addListener(Message.Reconnected.class, (message) -> pollNow());
+        communicator.addListener(Message.Join.class, (message) -> {
+            Multimedia.switchAudioFile("message.wav");
+            pollNow();
+            // Makes the chat box visible once the user has joined a lobby
+            Platform.runLater(() -> {
+                chatboxHeading.setText(message.channel());
+                rightSectionVBox.setVisible(true);
+            });
+        });
+        communicator.addListener(Message.Users.class, (message) -> {
+            // Updates user list at the top of the chat box
+            Platform.runLater(() -> {
+                usersList.getChildren().clear();
+                for (String user : message.users()) {
+                    Label userLabel = new Label(user);
+                    userLabel.getStyleClass().add("channelItem");
+                    usersList.getChildren().add(userLabel);
+                }
+            });
+        });
+        communicator.addListener(Message.Parted.class, (message) -> {
+            // If user leaves a lobby
+            pollNow();
+            Platform.runLater(() -> {
+                chatMessages.clear();
                 rightSectionVBox.setVisible(false);
-                Platform.runLater(() -> {
-                    messagesList.getChildren().clear();
-                    rightSectionVBox.setVisible(false);
-                });
-            } else if (message.equals("HOST")) {
-                // If user becomes the host of a lobby he is currently in
-                startGameButton.setVisible(true);
-            } else if (message.startsWith("MSG ")) {
-                // Change messageLabel to the following form: <HH:MM> playerName:message
-                Multimedia.switchAudioFile("message.wav");
-                message = message.substring(4);
-                String playerName = message.split(":")[0];
-                String playerMessage = message.split(":")[1];
-                Platform.runLater(() -> {
-                    LocalTime now = LocalTime.now();
-                    DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm");
-                    String formattedTime = now.format(formatter);
-                    formattedTime = "[" + formattedTime + "]";
-
-                    Label messageLabel = new Label(formattedTime + " <" + playerName + "> " + playerMessage);
-                    messageLabel.getStyleClass().add("messages");
-                    messagesList.getChildren().add(messageLabel);
-                });
-            } else if (message.equals("START")) {
-                Platform.runLater(() -> {
-                    gameWindow.startMultiplayerGame();
-                    timer.cancel();
-                });
-            } else if (message.startsWith("ERROR ")) {
-                message = message.substring(6);
-                String finalMessage1 = message;
-                Platform.runLater(() -> {
-                    Alert alert = new Alert(AlertType.ERROR);
-                    alert.setTitle("Error");
-                    alert.setHeaderText("Error");
-                    alert.setContentText(finalMessage1);
-
-                    // Display the alert and wait for a response
-                    alert.showAndWait();
-                });
-            }
+            });
+        });
+        communicator.addListener(Message.Host.class, (message) -> {
+            // If user becomes the host of a lobby he is currently in
+            Platform.runLater(() -> startGameButton.setVisible(true));
+        });
+        communicator.addListener(Message.Msg.class, (message) -> {
+            // Change messageLabel to the following form: <HH:MM> playerName:message
+            Multimedia.switchAudioFile("message.wav");
+            Platform.runLater(() -> {
+                String formattedTime = "[" + LocalTime.now().format(TIME_FORMAT) + "]";
+                chatMessages.add(formattedTime + " <" + message.player() + "> " + message.text());
+                messagesList.scrollTo(chatMessages.size() - 1);
+            });
+        });
+        communicator.addListener(Message.Start.class, (message) -> {
+            Platform.runLater(gameWindow::startMultiplayerGame);
         });
+        communicator.addListener(Message.Error.class, (message) -> {
+            Platform.runLater(() -> {
+                Alert alert = new Alert(AlertType.ERROR);
+                alert.setTitle("Error");
+                alert.setHeaderText("Error");
+                alert.setContentText(message.text());
+
+                // Display the alert and wait for a response
+                alert.showAndWait();
+            });
+        });
+
+        // Start polling the channel list
+        pollNow();
+    }
+
+    /**
+     * Add a row for each new channel and remove the rows of channels which no longer exist
+     * @param channelsList the rows
+     * @param added the new channels
+     * @param removed the channels which no longer exist
+     */
+    private void updateChannelRows(VBox channelsList, List<String> added, List<String> removed) {
+        for (String channel : removed) {
+            channelsList.getChildren().remove(channelRows.remove(channel));
+        }
+        for (String channel : added) {
+            Label channelNameHeading = new Label(channel);
+            channelNameHeading.getStyleClass().add("channelItem");
+            channelNameHeading.setOnMouseClicked((event) -> {
+                gameWindow.getCommunicator().send("JOIN " + channel);
+            });
+            channelRows.put(channel, channelNameHeading);
+            channelsList.getChildren().add(channelNameHeading);
+        }
+    }
+
+    /**
+     * Update the channel list from a CHANNELS reply and schedule the next poll, sooner if the list changed
+     * @param latest the channels listed
+     */
+    private synchronized void channelsReceived(List<String> latest) {
+        boolean changed = channels.update(latest);
+        pollDelay = changed ? MIN_POLL_DELAY : Math.min(MAX_POLL_DELAY, pollDelay * 2);
+        schedulePoll(pollDelay);
+    }
+
+    /**
+     * Ask for the channel list straight away and go back to polling at the shortest delay
+     */
+    private void pollNow() {
+        synchronized (this) {
+            pollDelay = MIN_POLL_DELAY;
+        }
+        poll();
+    }
+
+    /**
+     * Ask the server for the channel list. The reply replaces the fallback poll scheduled here with one after the
+     * adaptive delay, and if no reply comes, because the server answered with an ERROR or the LIST was dropped, the
+     * fallback asks again after REPLY_TIMEOUT.
+     */
+    private void poll() {
+        synchronized (this) {
+            if (stopped) return;
+            schedulePoll(pollDelay + REPLY_TIMEOUT);
+        }
+        gameWindow.getCommunicator().send("LIST");
+    }
+
+    /**
+     * Replace the next poll with one after the given delay, unless the scene has been left. Must hold the scene's
+     * lock.
+     * @param delay the delay, in milliseconds
+     */
+    private void schedulePoll(long delay) {
+        //A poll or reply still running as the scene changes must not schedule a poll into the next scene
+        if (stopped) return;
+        if (nextPoll != null) {
+            nextPoll.cancel(false);
+        }
+        nextPoll = gameWindow.getExecutor().scheduleForScene(this::poll, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop polling for the channel list. A poll or reply racing with this cannot schedule another.
+     */
+    @Override
+    public synchronized void cleanup() {
+        stopped = true;
+        if (nextPoll != null) {
+            nextPoll.cancel(false);
+            nextPoll = null;
+        }
     }
 
     /**
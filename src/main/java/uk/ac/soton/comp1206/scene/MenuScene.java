@@ -14,6 +14,7 @@ import javafx.scene.layout.VBox;
 import javafx.util.Duration;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.replay.ReplayRecorder;
 import uk.ac.soton.comp1206.ui.GamePane;
 import uk.ac.soton.comp1206.ui.GameWindow;
 import uk.ac.soton.comp1206.utility.Multimedia;
@@ -81,24 +82,29 @@ public class MenuScene extends BaseScene {
         Label singlePlayerLabel = new Label("Single Player");
         Label multiplayerLabel = new Label("Multi Player");
         Label instructionsLabel = new Label("How to Play");
+        Label replayLabel = new Label("Last Replay");
         Label exitLabel = new Label("Exit");
 
         // Buttons styling
         singlePlayerLabel.getStyleClass().add("menuItem");
         multiplayerLabel.getStyleClass().add("menuItem");
         instructionsLabel.getStyleClass().add("menuItem");
+        replayLabel.getStyleClass().add("menuItem");
         exitLabel.getStyleClass().add("menuItem");
 
         //Bind the button actions to the necessary methods
         singlePlayerLabel.setOnMouseClicked(this::startGame);
         multiplayerLabel.setOnMouseClicked(this::startLobbyScene);
         instructionsLabel.setOnMouseClicked(this::startInstructionScene);
+        replayLabel.setOnMouseClicked(this::startReplayScene);
         exitLabel.setOnMouseClicked((event) -> {
             gameWindow.getCommunicator().send("QUIT");
+            gameWindow.getCommunicator().close();
             Platform.exit();
         });
 
-        VBox buttonsList = new VBox(singlePlayerLabel, multiplayerLabel, instructionsLabel, exitLabel);
+        VBox buttonsList = new VBox(singlePlayerLabel, multiplayerLabel, instructionsLabel, replayLabel,
+            exitLabel);
         buttonsList.setAlignment(Pos.CENTER);
         buttonsList.setSpacing(12);
         mainPane.getChildren().addAll(titleImageView, spacer, buttonsList);
@@ -143,6 +149,22 @@ public class MenuScene extends BaseScene {
         gameWindow.startInstructions();
     }
 
+    /**
+     * Switches to a replay of the most recently recorded game when triggered by a mouse event.
+     * @param event The MouseEvent that triggers this method, not used directly in the method but required for
+     *              the event-driven interaction.
+     */
+    private void startReplayScene(MouseEvent event) {
+        var latest = ReplayRecorder.findLatest(ReplayRecorder.getDefaultDirectory());
+        if (latest.isEmpty()) {
+            logger.info("No replays have been recorded yet");
+            Multimedia.switchAudioFile("fail.wav");
+            return;
+        }
+        Multimedia.switchAudioFile("rotate.wav");
+        gameWindow.startReplay(latest.get());
+    }
+
     /**
      * Switch to the multiplayer lobby scene when triggered by a mouse event.
      * @param event The MouseEvent that triggers this method, not used directly in the method but required for
@@ -7,17 +7,18 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
-import javafx.animation.FadeTransition;
-import javafx.animation.KeyFrame;
-import javafx.animation.KeyValue;
-import javafx.animation.Timeline;
 import javafx.application.Platform;
 import javafx.beans.binding.Bindings;
 import javafx.beans.property.SimpleBooleanProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
 import javafx.scene.control.TextField;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.BorderPane;
@@ -26,17 +27,19 @@ import javafx.scene.layout.Pane;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
-import javafx.scene.paint.Color;
-import javafx.scene.shape.Rectangle;
-import javafx.util.Duration;
 import javafx.util.converter.NumberStringConverter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import uk.ac.soton.comp1206.component.GameBlock;
 import uk.ac.soton.comp1206.component.GameBoard;
 import uk.ac.soton.comp1206.component.OtherPlayerBoard;
 import uk.ac.soton.comp1206.component.PieceBoard;
+import uk.ac.soton.comp1206.component.TimerBar;
+import uk.ac.soton.comp1206.game.Grid;
 import uk.ac.soton.comp1206.game.MultiplayerGame;
+import uk.ac.soton.comp1206.network.BoardCodec;
+import uk.ac.soton.comp1206.network.Communicator;
+import uk.ac.soton.comp1206.network.Message;
+import uk.ac.soton.comp1206.network.Subscription;
 import uk.ac.soton.comp1206.ui.GamePane;
 import uk.ac.soton.comp1206.ui.GameWindow;
 import uk.ac.soton.comp1206.utility.Multimedia;
@@ -59,10 +62,10 @@ public class MultiplayerScene extends BaseScene {
     protected GameBoard board;
 
     /**
-     * Map containing player names as the keys, and the current state of their boards (in
-     * flattened string form)
+     * Map containing player names as the keys, and the current state of their boards, updated in place as
+     * full or delta boards arrive
      */
-    private Map<String, String> playerBoards = new HashMap<>();
+    private Map<String, Grid> playerBoards = new HashMap<>();
 
     /**
      * Represents which player's board is being shown right now
@@ -70,9 +73,10 @@ public class MultiplayerScene extends BaseScene {
     private int playerIndex = 0;
 
     /**
-     * List containing all the players playing the game
+     * List containing all the players playing the game, filled in when the USERS reply arrives. Like playerBoards,
+     * only used on the FX thread.
      */
-    List<String> playerBoardsKeys;
+    List<String> playerBoardsKeys = new ArrayList<>();
 
     /**
      * Current player's nickname
@@ -84,6 +88,27 @@ public class MultiplayerScene extends BaseScene {
      */
     private Map<String, Integer> playerScoresHashMap = new HashMap<>();
 
+    /**
+     * Colours of the rows of the scoreboard, in order
+     */
+    private static final String[] SCORE_COLOURS = {"Fuchsia", "Red", "DarkOrange", "Yellow", "YellowGreen",
+        "LimeGreen", "MediumSpringGreen", "SkyBlue", "DeepSkyBlue", "DodgerBlue"};
+
+    /**
+     * Height of each row of the scoreboard, in pixels
+     */
+    private static final double SCORE_ROW_HEIGHT = 24;
+
+    /**
+     * Most rows of the scoreboard shown at once before it scrolls
+     */
+    private static final int SCORE_ROWS_SHOWN = 6;
+
+    /**
+     * The scores shown on the scoreboard, as last sent by the server
+     */
+    private final ObservableList<Message.PlayerScore> playerScores = FXCollections.observableArrayList();
+
     /**
      * Determines whether the message input text field should be visible or not
      */
@@ -107,57 +132,6 @@ public class MultiplayerScene extends BaseScene {
 
         setupGame();
 
-        AtomicInteger counter = new AtomicInteger();
-
-        gameWindow.getCommunicator().addListener((message) -> {
-            logger.info(message);
-            if (message.startsWith("USERS ")) {
-                // Remove "USERS " part from the message, leaving <User>\n<User>\n<User>...
-                message = message.substring(6);
-                String emptyFlattenedGrid = "";
-
-                // Flattened grid representation with every block holding a value of 0
-                for (int i = 0; i < game.getCols(); i++) {
-                    for (int j = 0; j < game.getRows(); j++) {
-                        emptyFlattenedGrid += "0 ";
-                    }
-                }
-                emptyFlattenedGrid = emptyFlattenedGrid.trim();
-
-                // If more than one user in the game
-                if (message.contains("\n")) {
-                    String[] usersArray = message.split("\n");
-
-                    // Assign each user an empty grid
-                    for (String user : usersArray) {
-                        playerBoards.put(user, emptyFlattenedGrid);
-                        playerScoresHashMap.put(user, 0);
-                    }
-
-                    // Create list of users
-                    playerBoardsKeys = new ArrayList<>(playerBoards.keySet());
-                } else {
-                    // Assign just one player (the current user) an empty grid
-                    playerBoards.put(message, emptyFlattenedGrid);
-
-                    // Create list of users
-                    playerScoresHashMap.put(message, 0);
-                    playerBoardsKeys = new ArrayList<>(playerBoards.keySet());
-                }
-                counter.getAndIncrement();
-            } else if (message.startsWith("NICK ")) {
-                // Set the playerNickname field to the player's nickname
-                playerNickname = message.substring(5);
-                counter.getAndIncrement();
-            }
-            if (counter.get() == 2) {
-                gameWindow.getCommunicator().clearListeners();
-            }
-        });
-
-        gameWindow.getCommunicator().send("USERS");
-        gameWindow.getCommunicator().send("NICK");
-
         // Basic UI setup
         root = new GamePane(gameWindow.getWidth(), gameWindow.getHeight());
 
@@ -179,7 +153,7 @@ public class MultiplayerScene extends BaseScene {
           Bar at the top of the screen containing a VBox, which contains the player score, title,
           and lives
          */
-        Label scoreHeading = new Label(playerNickname);
+        Label scoreHeading = new Label();
         Label actualScore = new Label("0");
         scoreHeading.getStyleClass().add("heading");
         actualScore.getStyleClass().add("score");
@@ -212,13 +186,15 @@ public class MultiplayerScene extends BaseScene {
         OtherPlayerBoard otherPlayerBoard;
         VBox rightBar = new VBox();
 
-        otherPlayerBoardHeading = new Label(playerBoardsKeys.get(playerIndex));
+        // Filled in once the USERS reply arrives
+        otherPlayerBoardHeading = new Label();
         otherPlayerBoardHeading.getStyleClass().add("heading");
 
         otherPlayerBoard = new OtherPlayerBoard(5, 5, 100, 100);
-        otherPlayerBoard.updateBoard(playerBoards.get(playerBoardsKeys.get(playerIndex)));
 
         otherPlayerBoard.setOnMouseClicked((event) -> {
+            if (playerBoardsKeys.isEmpty()) return;
+
             // Skip over the user's own board by incrementing playerIndex
             if (playerBoardsKeys.get(playerIndex).equals(playerNickname)) {
                 playerIndex = (playerIndex + 1) % playerBoardsKeys.size();
@@ -228,7 +204,7 @@ public class MultiplayerScene extends BaseScene {
             otherPlayerBoardHeading.setText(playerBoardsKeys.get(playerIndex));
 
             // Update the board to the player it belongs to
-            otherPlayerBoard.updateBoard(playerBoards.get(playerBoardsKeys.get(playerIndex)));
+            otherPlayerBoard.showGrid(playerBoards.get(playerBoardsKeys.get(playerIndex)));
 
             // Increment the playerIndex
             playerIndex = (playerIndex + 1) % playerBoardsKeys.size();
@@ -236,11 +212,53 @@ public class MultiplayerScene extends BaseScene {
 
         rightBar.getChildren().addAll(otherPlayerBoardHeading, otherPlayerBoard);
 
-        // Don't show otherPlayerBoard if user is playing alone
-        if (playerBoards.size() == 1) {
-            otherPlayerBoardHeading.setVisible(false);
-            otherPlayerBoard.setVisible(false);
-        }
+        // Don't show otherPlayerBoard until there is another player to show
+        otherPlayerBoardHeading.setVisible(false);
+        otherPlayerBoard.setVisible(false);
+
+        AtomicInteger counter = new AtomicInteger();
+
+        // Once both the USERS and NICK replies have arrived, only these two listeners are removed, leaving the
+        // in-game listeners below and the game's PIECE listener in place. Both update the scene on the FX thread,
+        // where the BOARD listener also updates playerBoards.
+        Communicator communicator = gameWindow.getCommunicator();
+        List<Subscription> setupSubscriptions = new CopyOnWriteArrayList<>();
+        setupSubscriptions.add(communicator.addListener(Message.Users.class, (message) -> {
+            if (counter.incrementAndGet() == 2) {
+                setupSubscriptions.forEach(Subscription::unsubscribe);
+            }
+            Platform.runLater(() -> {
+                // Assign each user an empty grid, keeping any board or score which arrived before this reply
+                for (String user : message.users()) {
+                    playerBoards.putIfAbsent(user, new Grid(game.getCols(), game.getRows()));
+                    playerScoresHashMap.putIfAbsent(user, 0);
+                }
+
+                // Create list of users
+                playerBoardsKeys = new ArrayList<>(playerBoards.keySet());
+
+                // Show the first player's board, if the user is not playing alone
+                if (playerBoards.size() > 1) {
+                    otherPlayerBoardHeading.setText(playerBoardsKeys.get(playerIndex));
+                    otherPlayerBoard.showGrid(playerBoards.get(playerBoardsKeys.get(playerIndex)));
+                    otherPlayerBoardHeading.setVisible(true);
+                    otherPlayerBoard.setVisible(true);
+                }
+            });
+        }));
+        setupSubscriptions.add(communicator.addListener(Message.Nick.class, (message) -> {
+            if (counter.incrementAndGet() == 2) {
+                setupSubscriptions.forEach(Subscription::unsubscribe);
+            }
+            Platform.runLater(() -> {
+                // Set the playerNickname field to the player's nickname
+                playerNickname = message.nickname();
+                scoreHeading.setText(playerNickname);
+            });
+        }));
+
+        gameWindow.getCommunicator().send("USERS");
+        gameWindow.getCommunicator().send("NICK");
 
         Label versusLabel = new Label("Versus");
         versusLabel.getStyleClass().add("heading");
@@ -248,8 +266,26 @@ public class MultiplayerScene extends BaseScene {
         Label playerScoresFormatLabel = new Label("<Score>:<Lives>");
         playerScoresFormatLabel.getStyleClass().add("channelItem");
 
-        VBox playerScoresVBox = new VBox();
-        playerScoresVBox.setAlignment(Pos.CENTER);
+        // Cells are reused as scores change, and only the rows on screen have cells
+        ListView<Message.PlayerScore> playerScoresList = new ListView<>(playerScores);
+        playerScoresList.getStyleClass().add("scoreList");
+        playerScoresList.setFocusTraversable(false);
+        playerScoresList.setFixedCellSize(SCORE_ROW_HEIGHT);
+        playerScoresList.prefHeightProperty().bind(Bindings.min(Bindings.size(playerScores), SCORE_ROWS_SHOWN)
+            .multiply(SCORE_ROW_HEIGHT).add(2));
+        playerScoresList.setCellFactory(list -> new ListCell<>() {
+            @Override
+            protected void updateItem(Message.PlayerScore score, boolean empty) {
+                super.updateItem(score, empty);
+                if (empty || score == null) {
+                    setText(null);
+                    setStyle(null);
+                } else {
+                    setText(score.toString());
+                    setStyle("-fx-text-fill: " + SCORE_COLOURS[getIndex() % SCORE_COLOURS.length] + ";");
+                }
+            }
+        });
 
         Label incomingLabel = new Label("Incoming");
         incomingLabel.getStyleClass().add("heading");
@@ -264,7 +300,7 @@ public class MultiplayerScene extends BaseScene {
 
         game.setOnLineClear(board::fadeOut);
 
-        rightBar.getChildren().addAll(versusLabel, playerScoresFormatLabel, playerScoresVBox,
+        rightBar.getChildren().addAll(versusLabel, playerScoresFormatLabel, playerScoresList,
                                         incomingLabel, currentPieceBoard, nextPieceBoard);
 
         rightBar.setSpacing(5);
@@ -282,29 +318,8 @@ public class MultiplayerScene extends BaseScene {
         });
 
         // Timer bar at the bottom of the screen
-        Rectangle rectangle = new Rectangle(gameWindow.getWidth() - 20, (double) gameWindow.getHeight() / 30);
-        rectangle.setFill(Color.GREEN);
-        game.setGameLoopListener((event) -> {
-            Timeline timeline = new Timeline();
-            timeline.getKeyFrames().addAll(
-                    new KeyFrame(Duration.ZERO,
-                            new KeyValue(rectangle.widthProperty(), gameWindow.getWidth() - 20),
-                            new KeyValue(rectangle.fillProperty(), Color.GREEN)
-                    ),
-                    new KeyFrame(
-                            Duration.millis(event / 2),
-                            new KeyValue(rectangle.widthProperty(), (gameWindow.getWidth() - 20) / 2),
-                            new KeyValue(rectangle.fillProperty(), Color.YELLOW)
-                    ),
-                    new KeyFrame(
-                            Duration.millis(event),
-                            new KeyValue(rectangle.widthProperty(), 0),
-                            new KeyValue(rectangle.fillProperty(), Color.RED)
-                    )
-            );
-            timeline.setCycleCount(Timeline.INDEFINITE);
-            timeline.play();
-        });
+        TimerBar timerBar = new TimerBar(gameWindow.getWidth() - 20, (double) gameWindow.getHeight() / 30);
+        game.setOnClockTick(timerBar::update);
 
         Label inGameChatLabel = new Label("In-Game Chat: Press T to send a chat message");
         inGameChatLabel.getStyleClass().add("messages");
@@ -330,7 +345,7 @@ public class MultiplayerScene extends BaseScene {
         boardAndChatVBox.getChildren().add(tempVBox);
         boardAndChatVBox.setAlignment(Pos.CENTER);
 
-        VBox timerVBox = new VBox(rectangle);
+        VBox timerVBox = new VBox(timerBar);
         timerVBox.setSpacing(5);
 
         mainPane.setTop(topBar);
@@ -354,59 +369,36 @@ public class MultiplayerScene extends BaseScene {
         }
 
         // Handle receiving scores from the server
-        gameWindow.getCommunicator().addListener((message) -> {
-            logger.info(message);
-            if (message.startsWith("SCORES ")) {
-                // Update scoreboard
-                message = message.substring(7);
-                String[] scores = message.split("\n");
-                Platform.runLater(() -> {
-                    String[] colours = {"Fuchsia", "Red", "DarkOrange", "Yellow", "YellowGreen", "LimeGreen", "MediumSpringGreen", "SkyBlue", "DeepSkyBlue", "DodgerBlue"};
-                    playerScoresVBox.getChildren().clear();
-                    int index = 0;
-                    for (String score : scores) {
-                        Label playerScore = new Label(score);
-                        playerScore.getStyleClass().add("channelItem");
-                        playerScore.setStyle("-fx-text-fill: " + colours[index] + ";");
-                        playerScoresVBox.getChildren().add(playerScore);
-
-                        FadeTransition fade = new FadeTransition(Duration.seconds(0.3), playerScore);
-                        fade.setFromValue(0);
-                        fade.setToValue(1);
-
-                        fade.play();
-                        index++;
-
-                        if (!score.endsWith("DEAD")) {
-                            int tempScore = Integer.valueOf(score.split(":")[1]);
-                            String tempPlayerName = score.split(":")[0];
-
-                            if (tempScore > playerScoresHashMap.get(tempPlayerName)) {
-                                playerScoresHashMap.put(tempPlayerName, tempScore);
-                            }
-                        }
-
-                    }
-                });
-            } else if (message.startsWith("MSG ")) {
-                Multimedia.switchAudioFile("message.wav");
-                String messageSenderName = message.split(":")[0];
-                String messageText = message.split(":")[1];
-                Platform.runLater(() -> {
-                    messageInputVisible.set(false);
-                    inGameChatLabel.setText("<" + messageSenderName + "> " + messageText);
-                });
-            } else if (message.startsWith("BOARD ")) {
-                    message = message.substring(6);
-                    String playerWhoseBoardItIs = message.split(":")[0];
-                    String actualBoard = message.split(":")[1];
-                    playerBoards.put(playerWhoseBoardItIs, actualBoard);
-
-                    // If the current board is the same as playerWhoseBoardItIs, then update the board
-                    if (playerWhoseBoardItIs.equals(otherPlayerBoardHeading.getText())) {
-                        otherPlayerBoard.updateBoard(playerBoards.get(playerWhoseBoardItIs));
+        communicator.addListener(Message.Scores.class, (message) -> {
+            // Update scoreboard
+            Platform.runLater(() -> {
+                showScores(message.scores());
+                for (Message.PlayerScore score : message.scores()) {
+                    if (!score.isDead() && score.score() > playerScoresHashMap.getOrDefault(score.name(), 0)) {
+                        playerScoresHashMap.put(score.name(), score.score());
                     }
-            }
+                }
+            });
+        });
+        communicator.addListener(Message.Msg.class, (message) -> {
+            Multimedia.switchAudioFile("message.wav");
+            Platform.runLater(() -> {
+                messageInputVisible.set(false);
+                inGameChatLabel.setText("<" + message.player() + "> " + message.text());
+            });
+        });
+        communicator.addListener(Message.Board.class, (message) -> {
+            Platform.runLater(() -> {
+                // Apply the full or delta board to the last known board of that player
+                Grid playerBoard = playerBoards.computeIfAbsent(message.player(),
+                    player -> new Grid(game.getCols(), game.getRows()));
+                BoardCodec.decode(message.board(), 0, playerBoard);
+
+                // If the current board is the same as the player whose board it is, then update the board
+                if (message.player().equals(otherPlayerBoardHeading.getText())) {
+                    otherPlayerBoard.showGrid(playerBoard);
+                }
+            });
         });
 
         // If user is only player in the game, then NICK command is not sent by the server, and the scoreHeading
@@ -418,6 +410,23 @@ public class MultiplayerScene extends BaseScene {
 
     }
 
+    /**
+     * Show the latest scores, changing only the rows which differ from the scores shown
+     * @param scores the scores, in the order the server sent them
+     */
+    private void showScores(List<Message.PlayerScore> scores) {
+        for (var i = 0; i < scores.size(); i++) {
+            if (i == playerScores.size()) {
+                playerScores.add(scores.get(i));
+            } else if (!playerScores.get(i).equals(scores.get(i))) {
+                playerScores.set(i, scores.get(i));
+            }
+        }
+        if (playerScores.size() > scores.size()) {
+            playerScores.remove(scores.size(), playerScores.size());
+        }
+    }
+
     /**
      * Handles what happens if the next piece GameBoard is left-clicked
      */
@@ -434,10 +443,11 @@ public class MultiplayerScene extends BaseScene {
 
     /**
      * Handle when a block is clicked
-     * @param gameBlock the Game Block that was clocked
+     * @param x the column of the block that was clicked
+     * @param y the row of the block that was clicked
      */
-    private void blockClicked(GameBlock gameBlock) {
-        game.blockClicked(gameBlock);
+    private void blockClicked(int x, int y) {
+        game.playPiece(x, y);
     }
 
     /**
@@ -445,7 +455,7 @@ public class MultiplayerScene extends BaseScene {
      */
     public void setupGame() {
         //Start new game
-        game = new MultiplayerGame(5, 5, gameWindow.getCommunicator());
+        game = new MultiplayerGame(5, 5, gameWindow.getCommunicator(), gameWindow.getExecutor().getScheduler());
     }
 
     /**
@@ -0,0 +1,277 @@
+package uk.ac.soton.comp1206.scene;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import javafx.animation.AnimationTimer;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.Label;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Pane;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.StackPane;
+import javafx.scene.layout.VBox;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import uk.ac.soton.comp1206.component.GameBoard;
+import uk.ac.soton.comp1206.component.PieceBoard;
+import uk.ac.soton.comp1206.game.GameEngine;
+import uk.ac.soton.comp1206.replay.Replay;
+import uk.ac.soton.comp1206.replay.ReplayPlayer;
+import uk.ac.soton.comp1206.ui.GamePane;
+import uk.ac.soton.comp1206.ui.GameWindow;
+
+/**
+ * Plays back a recorded game on a GameBoard. Events are applied at the pace they were recorded, scaled by an
+ * adjustable speed. Space pauses, up and down change the speed, right steps one event while paused, end jumps to
+ * the end and escape returns to the menu.
+ */
+public class ReplayScene extends BaseScene {
+
+    private static final Logger logger = LogManager.getLogger(ReplayScene.class);
+
+    /**
+     * Slowest playback speed
+     */
+    private static final double MIN_SPEED = 0.25;
+
+    /**
+     * Fastest playback speed
+     */
+    private static final double MAX_SPEED = 64;
+
+    /**
+     * The replay file to play
+     */
+    private final Path file;
+
+    /**
+     * Plays the replay through an engine, or null if the file could not be loaded
+     */
+    private ReplayPlayer player;
+
+    /**
+     * Shows the recorded game
+     */
+    private GameBoard board;
+
+    /**
+     * Shows the score, level and lives
+     */
+    private final Label statusLabel = new Label();
+
+    /**
+     * Shows the speed and how far through the replay playback is
+     */
+    private final Label progressLabel = new Label();
+
+    /**
+     * Shows the current piece
+     */
+    private PieceBoard currentPieceBoard;
+
+    /**
+     * Shows the next piece
+     */
+    private PieceBoard nextPieceBoard;
+
+    /**
+     * Playback speed, as a multiple of the recorded pace
+     */
+    private double speed = 1;
+
+    /**
+     * Whether playback is paused
+     */
+    private boolean paused = false;
+
+    /**
+     * Position in the recording, in milliseconds since recording started
+     */
+    private double replayTime = 0;
+
+    /**
+     * Applies the events which are due on every frame
+     */
+    private final AnimationTimer playback = new AnimationTimer() {
+
+        /**
+         * Time of the previous frame, or -1 before the first frame
+         */
+        private long lastFrame = -1;
+
+        /**
+         * Advance the recording by the time since the previous frame
+         * @param now time of this frame in nanoseconds
+         */
+        @Override
+        public void handle(long now) {
+            if (lastFrame >= 0 && !paused) {
+                replayTime += (now - lastFrame) / 1e6 * speed;
+                boolean changed = false;
+                Replay replay = player.getReplay();
+                while (!player.isFinished() && replay.getTime(player.getPosition()) <= replayTime) {
+                    player.step();
+                    changed = true;
+                }
+                if (changed) {
+                    updateLabels();
+                }
+            }
+            lastFrame = now;
+        }
+    };
+
+    /**
+     * Create a new replay scene
+     * @param gameWindow the Game Window
+     * @param file the replay file to play
+     */
+    public ReplayScene(GameWindow gameWindow, Path file) {
+        super(gameWindow);
+        this.file = file;
+        logger.info("Creating ReplayScene for {}", file);
+    }
+
+    /**
+     * Build the replay layout
+     */
+    @Override
+    public void build() {
+        logger.info("Building " + this.getClass().getName());
+
+        root = new GamePane(gameWindow.getWidth(), gameWindow.getHeight());
+
+        var replayPane = new StackPane();
+        replayPane.setMaxWidth(gameWindow.getWidth());
+        replayPane.setMaxHeight(gameWindow.getHeight());
+        replayPane.getStyleClass().add("menu-background");
+        root.getChildren().add(replayPane);
+
+        var mainPane = new BorderPane();
+        mainPane.setPadding(new Insets(10, 10, 10, 10));
+        replayPane.getChildren().add(mainPane);
+
+        Label titleLabel = new Label("Replay");
+        titleLabel.getStyleClass().add("title");
+        mainPane.setTop(titleLabel);
+        BorderPane.setAlignment(titleLabel, Pos.CENTER);
+
+        try {
+            player = new ReplayPlayer(Replay.load(file));
+        } catch (IOException e) {
+            logger.error("Unable to load replay {}", file, e);
+            Label errorLabel = new Label("Unable to load replay");
+            errorLabel.getStyleClass().add("heading");
+            mainPane.setCenter(errorLabel);
+            return;
+        }
+
+        GameEngine engine = player.getEngine();
+        board = new GameBoard(engine.getGrid(), gameWindow.getWidth() / 2, gameWindow.getWidth() / 2);
+        mainPane.setCenter(board);
+        player.setOnLineClear(board::fadeOut);
+
+        currentPieceBoard = new PieceBoard(3, 3, 132, 132, false);
+        nextPieceBoard = new PieceBoard(3, 3, 80, 80, false);
+        engine.setNextPieceListener((currentGamePiece, nextGamePiece) -> {
+            currentPieceBoard.displayPiece(currentGamePiece);
+            nextPieceBoard.displayPiece(nextGamePiece);
+        });
+
+        Label incomingLabel = new Label("Incoming");
+        incomingLabel.getStyleClass().add("heading");
+        VBox rightBar = new VBox(incomingLabel, currentPieceBoard, nextPieceBoard);
+        rightBar.setSpacing(10);
+        rightBar.setAlignment(Pos.CENTER);
+        mainPane.setRight(rightBar);
+
+        statusLabel.getStyleClass().add("heading");
+        progressLabel.getStyleClass().add("heading");
+        Pane spacer = new Pane();
+        HBox.setHgrow(spacer, Priority.ALWAYS);
+        HBox bottomBar = new HBox(statusLabel, spacer, progressLabel);
+        bottomBar.setAlignment(Pos.CENTER);
+        mainPane.setBottom(bottomBar);
+
+        updateLabels();
+    }
+
+    /**
+     * Show the current score, level, lives, speed and progress
+     */
+    private void updateLabels() {
+        GameEngine engine = player.getEngine();
+        statusLabel.setText("Score " + engine.getScore() + "  Level " + engine.getLevel() + "  Lives "
+            + Math.max(engine.getLives(), 0));
+        progressLabel.setText((paused ? "Paused" : speed + "x") + "  " + player.getPosition() + "/"
+            + player.getReplay().getEventCount());
+    }
+
+    /**
+     * Change the playback speed
+     * @param factor amount to multiply the speed by
+     */
+    private void changeSpeed(double factor) {
+        speed = Math.max(MIN_SPEED, Math.min(MAX_SPEED, speed * factor));
+        updateLabels();
+    }
+
+    /**
+     * Stop playback and return to the menu
+     */
+    private void exit() {
+        playback.stop();
+        gameWindow.startMenu();
+    }
+
+    /**
+     * Initialise the scene and start playback
+     */
+    @Override
+    public void initialise() {
+        logger.info("Initialising ReplayScene");
+
+        scene.addEventHandler(KeyEvent.KEY_PRESSED, event -> {
+            if (player == null) {
+                if (event.getCode() == KeyCode.ESCAPE) {
+                    gameWindow.startMenu();
+                }
+                return;
+            }
+            switch (event.getCode()) {
+                case ESCAPE:
+                    exit();
+                    break;
+                case SPACE:
+                    paused = !paused;
+                    updateLabels();
+                    break;
+                case UP:
+                    changeSpeed(2);
+                    break;
+                case DOWN:
+                    changeSpeed(0.5);
+                    break;
+                case RIGHT:
+                    if (paused && player.step()) {
+                        replayTime = player.getReplay().getTime(player.getPosition() - 1);
+                        updateLabels();
+                    }
+                    break;
+                case END:
+                    player.fastForward();
+                    replayTime = player.getReplay().getDuration();
+                    updateLabels();
+                    break;
+            }
+        });
+
+        if (player != null) {
+            playback.start();
+        }
+    }
+}
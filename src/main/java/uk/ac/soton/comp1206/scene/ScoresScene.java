@@ -6,7 +6,6 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.regex.Pattern;
@@ -32,6 +31,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import uk.ac.soton.comp1206.component.ScoresList;
 import uk.ac.soton.comp1206.game.Game;
+import uk.ac.soton.comp1206.network.Message;
 import uk.ac.soton.comp1206.ui.GamePane;
 import uk.ac.soton.comp1206.ui.GameWindow;
 import uk.ac.soton.comp1206.utility.Multimedia;
@@ -239,16 +239,11 @@ public class ScoresScene extends BaseScene {
      * Request online high scores from the server and store them in ScoresScene.remoteScores
      */
     private void loadOnlineScores() {
-        gameWindow.getCommunicator().addListener((message) -> {
-            String messageWithoutPrefix = message.split(" ")[1];
-            String[] scoresList = messageWithoutPrefix.split("\n");
-            logger.info("{}", Arrays.toString(scoresList));
-            for (int i = 0; i < 10; i++) {
-                logger.info("{}", i);
-                var scorePair = scoresList[i];
-                logger.info("Adding to remoteScores: {}:{}", scorePair.split(":")[0], scorePair.split(":")[1]);
-                remoteScores.add(new Pair(scorePair.split(":")[0], Integer.valueOf(scorePair.split(":")[1])));
-
+        gameWindow.getCommunicator().addListener(Message.HiScores.class, (message) -> {
+            // Keep the top 10 online scores
+            for (Message.HiScore score : message.scores().subList(0, Math.min(10, message.scores().size()))) {
+                logger.info("Adding to remoteScores: {}:{}", score.name(), score.score());
+                remoteScores.add(new Pair<>(score.name(), score.score()));
             }
         });
         gameWindow.getCommunicator().send("HISCORES");
@@ -0,0 +1,116 @@
+package uk.ac.soton.comp1206.server;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+
+/**
+ * One client connected to the LocalServer: its socket and buffers, and the player it is playing as. Only used on
+ * the server's event loop thread.
+ */
+class Connection {
+
+    /**
+     * Size of the read buffer a connection starts with
+     */
+    static final int INITIAL_BUFFER = 4096;
+
+    /**
+     * The client's socket
+     */
+    final SocketChannel socket;
+
+    /**
+     * The socket's registration with the selector
+     */
+    final SelectionKey key;
+
+    /**
+     * Bytes read but not yet parsed, in write mode
+     */
+    ByteBuffer in = ByteBuffer.allocate(INITIAL_BUFFER);
+
+    /**
+     * Frames waiting to be written, oldest first
+     */
+    final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+
+    /**
+     * Number of bytes waiting in out
+     */
+    int pendingBytes;
+
+    /**
+     * Whether the connection is waiting to be flushed at the end of this turn of the event loop
+     */
+    boolean dirty;
+
+    /**
+     * Whether the web socket handshake has completed
+     */
+    boolean open;
+
+    /**
+     * Whether the connection is closing, so nothing more is read from it
+     */
+    boolean closing;
+
+    /**
+     * Payload of a fragmented text message received so far, or null if none is in progress
+     */
+    ByteArrayOutputStream fragments;
+
+    /**
+     * The player's nickname
+     */
+    String nickname;
+
+    /**
+     * The channel the player is in, or null
+     */
+    ServerChannel channel;
+
+    /**
+     * The player's score in the current game
+     */
+    int score;
+
+    /**
+     * The player's lives in the current game
+     */
+    int lives;
+
+    /**
+     * Whether the player is out of the current game
+     */
+    boolean dead;
+
+    /**
+     * Number of pieces dealt to the player in the current game
+     */
+    int piecesDealt;
+
+    /**
+     * Create a connection
+     * @param socket the client's socket
+     * @param key the socket's registration with the selector
+     * @param nickname the player's starting nickname
+     */
+    Connection(SocketChannel socket, SelectionKey key, String nickname) {
+        this.socket = socket;
+        this.key = key;
+        this.nickname = nickname;
+    }
+
+    /**
+     * Reset the player's game state on joining a channel
+     */
+    void resetGame() {
+        score = 0;
+        lives = ServerChannel.STARTING_LIVES;
+        dead = false;
+        piecesDealt = 0;
+    }
+}
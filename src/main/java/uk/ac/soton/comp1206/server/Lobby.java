@@ -0,0 +1,433 @@
+package uk.ac.soton.comp1206.server;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import uk.ac.soton.comp1206.game.GamePiece;
+
+/**
+ * The TetrECS protocol as served by the LocalServer: the channels, the players in them, their games and the high
+ * score table. Handles each command a client sends and replies as the real server does. Only used on the server's
+ * event loop thread, so nothing here is locked.
+ */
+class Lobby {
+
+    /**
+     * Number of scores sent in a HISCORES reply
+     */
+    private static final int HISCORES_SHOWN = 10;
+
+    /**
+     * Number of scores kept in the high score table
+     */
+    private static final int HISCORES_KEPT = 100;
+
+    /**
+     * Sends the replies
+     */
+    private final LocalServer server;
+
+    /**
+     * The channels, by name, in the order they were created
+     */
+    private final Map<String, ServerChannel> channels = new LinkedHashMap<>();
+
+    /**
+     * The nicknames in use
+     */
+    private final Set<String> nicknames = new HashSet<>();
+
+    /**
+     * The high score table, best first
+     */
+    private final List<Score> hiScores = new ArrayList<>();
+
+    /**
+     * Seeds each channel's pieces, and deals pieces to players outside a channel
+     */
+    private final SplittableRandom random;
+
+    /**
+     * Number of players who have connected, used to name guests
+     */
+    private int guests;
+
+    /**
+     * An entry in the high score table
+     * @param name player name
+     * @param score the score
+     */
+    private record Score(String name, int score) {}
+
+    /**
+     * Create the lobby
+     * @param server sends the replies
+     * @param seed seed for the pieces dealt
+     */
+    Lobby(LocalServer server, long seed) {
+        this.server = server;
+        this.random = new SplittableRandom(seed);
+        for (var i = 1; i <= HISCORES_SHOWN; i++) {
+            hiScores.add(new Score("Default" + i, 1000 * (HISCORES_SHOWN + 1 - i)));
+        }
+    }
+
+    /**
+     * Choose a nickname for a new player
+     * @return an unused guest nickname
+     */
+    String newNickname() {
+        String nickname;
+        do {
+            nickname = "Guest" + (++guests);
+        } while (!nicknames.add(nickname));
+        return nickname;
+    }
+
+    /**
+     * Handle a command from a player
+     * @param player the player
+     * @param message the command and its arguments
+     */
+    void handle(Connection player, String message) {
+        int space = message.indexOf(' ');
+        String command = space < 0 ? message : message.substring(0, space);
+        String argument = space < 0 ? "" : message.substring(space + 1);
+
+        switch (command) {
+            case "LIST" -> server.send(player, "CHANNELS " + String.join("\n", channels.keySet()));
+            case "CREATE" -> create(player, argument);
+            case "JOIN" -> join(player, argument);
+            case "PART" -> part(player);
+            case "START" -> start(player);
+            case "NICK" -> nick(player, argument);
+            case "USERS" -> users(player);
+            case "PIECE" -> piece(player);
+            case "BOARD" -> broadcastOthers(player, "BOARD " + player.nickname + ":" + argument);
+            case "SCORE" -> {
+                player.score = parse(argument, player.score);
+                scores(player.channel);
+            }
+            case "LIVES" -> {
+                player.lives = parse(argument, player.lives);
+                scores(player.channel);
+            }
+            case "DIE" -> {
+                player.dead = true;
+                scores(player.channel);
+            }
+            case "SCORES" -> {
+                if (player.channel != null) {
+                    server.send(player, scoresMessage(player.channel));
+                }
+            }
+            case "MSG" -> {
+                if (player.channel == null) {
+                    server.send(player, "ERROR You are not in a channel");
+                } else {
+                    broadcast(player.channel, "MSG " + player.nickname + ":" + argument);
+                }
+            }
+            case "HISCORES" -> hiScores(player, argument);
+            case "HISCORE" -> hiScore(player, argument);
+            case "QUIT" -> server.close(player);
+            default -> server.send(player, "ERROR Unknown command " + command);
+        }
+    }
+
+    /**
+     * Remove a player who has disconnected
+     * @param player the player
+     */
+    void disconnected(Connection player) {
+        leave(player);
+        nicknames.remove(player.nickname);
+    }
+
+    /**
+     * Create a channel and join it as its host
+     * @param player the player
+     * @param name the channel name
+     */
+    private void create(Connection player, String name) {
+        if (name.isBlank()) {
+            server.send(player, "ERROR Channel name cannot be empty");
+        } else if (channels.containsKey(name)) {
+            server.send(player, "ERROR Channel " + name + " already exists");
+        } else if (player.channel != null) {
+            server.send(player, "ERROR You are already in a channel");
+        } else {
+            channels.put(name, new ServerChannel(name, random.nextLong()));
+            join(player, name);
+        }
+    }
+
+    /**
+     * Join a channel, becoming its host if it is empty
+     * @param player the player
+     * @param name the channel name
+     */
+    private void join(Connection player, String name) {
+        ServerChannel channel = channels.get(name);
+        if (channel == null) {
+            server.send(player, "ERROR Channel " + name + " does not exist");
+            return;
+        }
+        if (player.channel == channel) {
+            server.send(player, "JOIN " + name);
+            return;
+        }
+        if (player.channel != null) {
+            server.send(player, "ERROR You are already in a channel");
+            return;
+        }
+
+        player.channel = channel;
+        player.resetGame();
+        channel.members.add(player);
+        server.send(player, "JOIN " + name);
+        if (channel.host == null) {
+            channel.host = player;
+            server.send(player, "HOST");
+        }
+        broadcast(channel, usersMessage(channel));
+    }
+
+    /**
+     * Leave the current channel
+     * @param player the player
+     */
+    private void part(Connection player) {
+        if (player.channel == null) {
+            server.send(player, "ERROR You are not in a channel");
+            return;
+        }
+        leave(player);
+        server.send(player, "PARTED");
+    }
+
+    /**
+     * Take a player out of their channel, passing on the host and removing the channel once it is empty
+     * @param player the player
+     */
+    private void leave(Connection player) {
+        ServerChannel channel = player.channel;
+        if (channel == null) return;
+        player.channel = null;
+        channel.members.remove(player);
+
+        if (channel.members.isEmpty()) {
+            channels.remove(channel.name);
+            return;
+        }
+        if (channel.host == player) {
+            channel.host = channel.members.get(0);
+            server.send(channel.host, "HOST");
+        }
+        broadcast(channel, usersMessage(channel));
+        if (channel.started) {
+            scores(channel);
+        }
+    }
+
+    /**
+     * Start the game in the host's channel
+     * @param player the player, who must be the host
+     */
+    private void start(Connection player) {
+        ServerChannel channel = player.channel;
+        if (channel == null || channel.host != player) {
+            server.send(player, "ERROR Only the host can start the game");
+        } else if (channel.started) {
+            server.send(player, "ERROR The game has already started");
+        } else {
+            channel.started = true;
+            for (Connection member : channel.members) {
+                member.resetGame();
+            }
+            broadcast(channel, "START");
+        }
+    }
+
+    /**
+     * Get or change the player's nickname
+     * @param player the player
+     * @param nickname the new nickname, or empty to get the current one
+     */
+    private void nick(Connection player, String nickname) {
+        if (nickname.isEmpty() || nickname.equals(player.nickname)) {
+            server.send(player, "NICK " + player.nickname);
+        } else if (nickname.contains(":") || nickname.contains("\n")) {
+            server.send(player, "ERROR Nicknames cannot contain : or new lines");
+        } else if (!nicknames.add(nickname)) {
+            server.send(player, "ERROR Nickname " + nickname + " is already in use");
+        } else {
+            nicknames.remove(player.nickname);
+            player.nickname = nickname;
+            server.send(player, "NICK " + nickname);
+            if (player.channel != null) {
+                broadcast(player.channel, usersMessage(player.channel));
+            }
+        }
+    }
+
+    /**
+     * Send the players in the current channel
+     * @param player the player
+     */
+    private void users(Connection player) {
+        if (player.channel == null) {
+            server.send(player, "ERROR You are not in a channel");
+        } else {
+            server.send(player, usersMessage(player.channel));
+        }
+    }
+
+    /**
+     * Deal the player's next piece: the next in their channel's sequence, or a random one outside a channel
+     * @param player the player
+     */
+    private void piece(Connection player) {
+        int piece = player.channel == null
+            ? random.nextInt(GamePiece.PIECES)
+            : player.channel.piece(player.piecesDealt++);
+        server.send(player, "PIECE " + piece);
+    }
+
+    /**
+     * Send the high score table
+     * @param player the player
+     * @param option UNIQUE for only the best score of each player, otherwise every score
+     */
+    private void hiScores(Connection player, String option) {
+        StringBuilder reply = new StringBuilder("HISCORES ");
+        Set<String> seen = new HashSet<>();
+        int shown = 0;
+        for (Score score : hiScores) {
+            if (shown == HISCORES_SHOWN) break;
+            if (option.equals("UNIQUE") && !seen.add(score.name())) continue;
+            if (shown > 0) {
+                reply.append('\n');
+            }
+            reply.append(score.name()).append(':').append(score.score());
+            shown++;
+        }
+        server.send(player, reply.toString());
+    }
+
+    /**
+     * Add a score to the high score table
+     * @param player the player
+     * @param entry the name and score, as name:score
+     */
+    private void hiScore(Connection player, String entry) {
+        int colon = entry.lastIndexOf(':');
+        int score = colon < 0 ? -1 : parse(entry.substring(colon + 1), -1);
+        if (colon <= 0 || score < 0) {
+            server.send(player, "ERROR Invalid high score " + entry);
+            return;
+        }
+
+        String name = entry.substring(0, colon);
+        int position = 0;
+        while (position < hiScores.size() && hiScores.get(position).score() >= score) {
+            position++;
+        }
+        hiScores.add(position, new Score(name, score));
+        if (hiScores.size() > HISCORES_KEPT) {
+            hiScores.remove(hiScores.size() - 1);
+        }
+        server.send(player, "NEWSCORE " + name + ":" + score);
+    }
+
+    /**
+     * Send every player in a channel its scores, if the player is in one
+     * @param channel the channel, or null
+     */
+    private void scores(ServerChannel channel) {
+        if (channel != null) {
+            broadcast(channel, scoresMessage(channel));
+        }
+    }
+
+    /**
+     * Build a USERS message for a channel
+     * @param channel the channel
+     * @return the message
+     */
+    private static String usersMessage(ServerChannel channel) {
+        StringBuilder message = new StringBuilder("USERS ");
+        for (var i = 0; i < channel.members.size(); i++) {
+            if (i > 0) {
+                message.append('\n');
+            }
+            message.append(channel.members.get(i).nickname);
+        }
+        return message.toString();
+    }
+
+    /**
+     * Build a SCORES message for a channel, with each player as name:score:lives, or DEAD in place of lives
+     * @param channel the channel
+     * @return the message
+     */
+    private static String scoresMessage(ServerChannel channel) {
+        StringBuilder message = new StringBuilder("SCORES ");
+        for (var i = 0; i < channel.members.size(); i++) {
+            Connection member = channel.members.get(i);
+            if (i > 0) {
+                message.append('\n');
+            }
+            message.append(member.nickname).append(':').append(member.score).append(':');
+            if (member.dead) {
+                message.append("DEAD");
+            } else {
+                message.append(member.lives);
+            }
+        }
+        return message.toString();
+    }
+
+    /**
+     * Send a message to every player in a channel
+     * @param channel the channel
+     * @param message the message
+     */
+    private void broadcast(ServerChannel channel, String message) {
+        for (Connection member : channel.members) {
+            server.send(member, message);
+        }
+    }
+
+    /**
+     * Send a message to every other player in the sender's channel
+     * @param sender the player who sent it
+     * @param message the message
+     */
+    private void broadcastOthers(Connection sender, String message) {
+        if (sender.channel == null) return;
+        for (Connection member : sender.channel.members) {
+            if (member != sender) {
+                server.send(member, message);
+            }
+        }
+    }
+
+    /**
+     * Parse a number sent by a player
+     * @param text the text
+     * @param fallback value to use if the text is not a number
+     * @return the number
+     */
+    private static int parse(String text, int fallback) {
+        try {
+            return Integer.parseInt(text.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+}
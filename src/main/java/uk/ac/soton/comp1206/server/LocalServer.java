@@ -0,0 +1,602 @@
+package uk.ac.soton.comp1206.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A local stand-in for the TetrECS server, so multiplayer can be played and load tested offline. It speaks the same
+ * text protocol over web sockets (RFC 6455), with the channels, games and high scores held in memory.
+ *
+ * All sockets are served by one event loop thread using non-blocking IO, so thousands of players cost a buffer each
+ * rather than a thread each, and the protocol state needs no locking. Replies produced while handling a turn of the
+ * loop are written together at the end of it.
+ *
+ * Run it on its own with: LocalServer [--port N] [--seed N]
+ */
+public class LocalServer {
+
+    private static final Logger logger = LogManager.getLogger(LocalServer.class);
+
+    /**
+     * Port used when running the server on its own
+     */
+    public static final int DEFAULT_PORT = 9700;
+
+    /**
+     * Largest message accepted from a client, in bytes
+     */
+    private static final int MAX_MESSAGE = 1 << 20;
+
+    /**
+     * Most bytes allowed to wait to be written to one client before it is disconnected as too slow
+     */
+    private static final int MAX_PENDING = 4 << 20;
+
+    /**
+     * Appended to a client's key to accept the web socket handshake
+     */
+    private static final String HANDSHAKE_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    /**
+     * Opcode of a frame continuing a fragmented message
+     */
+    private static final int CONTINUATION = 0x0;
+
+    /**
+     * Opcode of a text frame
+     */
+    private static final int TEXT = 0x1;
+
+    /**
+     * Opcode of a binary frame
+     */
+    private static final int BINARY = 0x2;
+
+    /**
+     * Opcode of a close frame
+     */
+    private static final int CLOSE = 0x8;
+
+    /**
+     * Opcode of a ping frame
+     */
+    private static final int PING = 0x9;
+
+    /**
+     * Opcode of a pong frame
+     */
+    private static final int PONG = 0xA;
+
+    /**
+     * Port to listen on, or 0 for any free port
+     */
+    private final int requestedPort;
+
+    /**
+     * Handles the protocol
+     */
+    private final Lobby lobby;
+
+    /**
+     * Connections with replies waiting to be written at the end of this turn of the loop
+     */
+    private final List<Connection> dirty = new ArrayList<>();
+
+    /**
+     * Waits for sockets to be ready
+     */
+    private Selector selector;
+
+    /**
+     * The listening socket
+     */
+    private ServerSocketChannel listener;
+
+    /**
+     * Runs the event loop
+     */
+    private Thread loop;
+
+    /**
+     * Whether the server is running
+     */
+    private volatile boolean running;
+
+    /**
+     * Number of clients connected
+     */
+    private volatile int connections;
+
+    /**
+     * Number of messages received from clients
+     */
+    private volatile long received;
+
+    /**
+     * Number of messages sent to clients
+     */
+    private volatile long sent;
+
+    /**
+     * Create a server
+     * @param port port to listen on, or 0 for any free port
+     * @param seed seed for the pieces dealt
+     */
+    public LocalServer(int port, long seed) {
+        this.requestedPort = port;
+        this.lobby = new Lobby(this, seed);
+    }
+
+    /**
+     * Run the server on its own until the process is stopped
+     * @param args command line options
+     * @throws IOException if the port cannot be listened on
+     * @throws InterruptedException if interrupted while serving
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = DEFAULT_PORT;
+        long seed = System.nanoTime();
+        for (var i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--port" -> port = Integer.parseInt(value);
+                case "--seed" -> seed = Long.parseLong(value);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        LocalServer server = new LocalServer(port, seed);
+        server.start();
+        System.out.println("Serving TetrECS on " + server.getUrl());
+        server.join();
+    }
+
+    /**
+     * Start listening and serving clients on a new daemon thread, so an embedded server does not keep the game
+     * running once it exits
+     * @throws IOException if the port cannot be listened on
+     */
+    public synchronized void start() throws IOException {
+        if (running) return;
+        selector = Selector.open();
+        listener = ServerSocketChannel.open();
+        listener.bind(new InetSocketAddress("127.0.0.1", requestedPort), 1024);
+        listener.configureBlocking(false);
+        listener.register(selector, SelectionKey.OP_ACCEPT);
+
+        running = true;
+        loop = new Thread(this::run, "LocalServer");
+        loop.setDaemon(true);
+        loop.start();
+        logger.info("Local server listening on {}", getUrl());
+    }
+
+    /**
+     * Stop serving, disconnecting every client
+     */
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        selector.wakeup();
+        try {
+            loop.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Wait until the server stops
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void join() throws InterruptedException {
+        loop.join();
+    }
+
+    /**
+     * Get the port the server is listening on
+     * @return the port
+     */
+    public int getPort() {
+        return listener.socket().getLocalPort();
+    }
+
+    /**
+     * Get the URL clients connect to
+     * @return the web socket URL
+     */
+    public String getUrl() {
+        return "ws://127.0.0.1:" + getPort();
+    }
+
+    /**
+     * Get the number of clients connected
+     * @return number of connections
+     */
+    public int getConnections() {
+        return connections;
+    }
+
+    /**
+     * Get the number of messages received from clients
+     * @return messages received
+     */
+    public long getReceived() {
+        return received;
+    }
+
+    /**
+     * Get the number of messages sent to clients
+     * @return messages sent
+     */
+    public long getSent() {
+        return sent;
+    }
+
+    /**
+     * Event loop: accept, read and handle until stopped, writing the replies at the end of each turn
+     */
+    private void run() {
+        try {
+            while (running) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    if (key.isReadable()) {
+                        read(connection);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        flush(connection);
+                    }
+                }
+                flushDirty();
+            }
+        } catch (IOException e) {
+            logger.error("Local server stopped: {}", e.getMessage());
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection connection) {
+                    disconnect(connection);
+                }
+            }
+            try {
+                listener.close();
+                selector.close();
+            } catch (IOException e) {
+                logger.error("Unable to close local server: {}", e.getMessage());
+            }
+            running = false;
+        }
+    }
+
+    /**
+     * Accept every waiting client
+     * @throws IOException if the listening socket fails
+     */
+    private void accept() throws IOException {
+        SocketChannel socket;
+        while ((socket = listener.accept()) != null) {
+            socket.configureBlocking(false);
+            socket.socket().setTcpNoDelay(true);
+            SelectionKey key = socket.register(selector, SelectionKey.OP_READ);
+            key.attach(new Connection(socket, key, lobby.newNickname()));
+            connections++;
+        }
+    }
+
+    /**
+     * Read what a client has sent, completing the handshake or handling each complete frame
+     * @param connection the client
+     */
+    private void read(Connection connection) {
+        int count;
+        try {
+            count = connection.socket.read(connection.in);
+        } catch (IOException e) {
+            count = -1;
+        }
+        if (count < 0) {
+            disconnect(connection);
+            return;
+        }
+
+        connection.in.flip();
+        if (!connection.open) {
+            handshake(connection);
+        }
+        while (connection.open && !connection.closing && readFrame(connection)) {
+            //Keep going until the buffer holds no complete frame
+        }
+        connection.in.compact();
+
+        //Make room for a frame larger than the buffer
+        if (!connection.in.hasRemaining() && !connection.closing) {
+            if (connection.in.capacity() >= MAX_MESSAGE) {
+                logger.warn("Message from {} is too large", connection.nickname);
+                close(connection);
+            } else {
+                ByteBuffer larger = ByteBuffer.allocate(connection.in.capacity() * 2);
+                connection.in.flip();
+                larger.put(connection.in);
+                connection.in = larger;
+            }
+        }
+    }
+
+    /**
+     * Complete the web socket handshake once the whole request has arrived
+     * @param connection the client, whose buffer is in read mode
+     */
+    private void handshake(Connection connection) {
+        ByteBuffer in = connection.in;
+        int end = -1;
+        for (var i = in.position(); i + 3 < in.limit(); i++) {
+            if (in.get(i) == '\r' && in.get(i + 1) == '\n' && in.get(i + 2) == '\r' && in.get(i + 3) == '\n') {
+                end = i + 4;
+                break;
+            }
+        }
+        if (end < 0) return;
+
+        String request = StandardCharsets.ISO_8859_1.decode(in.slice(in.position(), end - in.position())).toString();
+        in.position(end);
+
+        String key = null;
+        for (String line : request.split("\r\n")) {
+            int colon = line.indexOf(':');
+            if (colon > 0 && line.substring(0, colon).trim().toLowerCase(Locale.ROOT).equals("sec-websocket-key")) {
+                key = line.substring(colon + 1).trim();
+            }
+        }
+        if (key == null) {
+            queue(connection, ByteBuffer.wrap("HTTP/1.1 400 Bad Request\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1)));
+            connection.closing = true;
+            return;
+        }
+
+        String response = "HTTP/1.1 101 Switching Protocols\r\n"
+            + "Upgrade: websocket\r\n"
+            + "Connection: Upgrade\r\n"
+            + "Sec-WebSocket-Accept: " + accept(key) + "\r\n\r\n";
+        queue(connection, ByteBuffer.wrap(response.getBytes(StandardCharsets.ISO_8859_1)));
+        connection.open = true;
+    }
+
+    /**
+     * Work out the accept header for a handshake key
+     * @param key the client's key
+     * @return the value for Sec-WebSocket-Accept
+     */
+    private static String accept(String key) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            byte[] digest = sha1.digest((key + HANDSHAKE_GUID).getBytes(StandardCharsets.ISO_8859_1));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+
+    /**
+     * Handle one frame from the front of a client's buffer, if a complete frame has arrived
+     * @param connection the client, whose buffer is in read mode
+     * @return true if a frame was handled, false if the buffer does not hold a complete frame
+     */
+    private boolean readFrame(Connection connection) {
+        ByteBuffer in = connection.in;
+        int start = in.position();
+        if (in.remaining() < 2) return false;
+
+        int first = in.get(start) & 0xFF;
+        int second = in.get(start + 1) & 0xFF;
+        boolean fin = (first & 0x80) != 0;
+        int opcode = first & 0x0F;
+        boolean masked = (second & 0x80) != 0;
+        long length = second & 0x7F;
+        int header = 2;
+        if (length == 126) {
+            if (in.remaining() < 4) return false;
+            length = in.getShort(start + 2) & 0xFFFF;
+            header = 4;
+        } else if (length == 127) {
+            if (in.remaining() < 10) return false;
+            length = in.getLong(start + 2);
+            header = 10;
+        }
+        if (length < 0 || length > MAX_MESSAGE || !masked) {
+            logger.warn("Invalid frame from {}", connection.nickname);
+            close(connection);
+            return false;
+        }
+        if (in.remaining() < header + 4 + length) return false;
+
+        //Unmask the payload in place
+        int maskAt = start + header;
+        int payloadAt = maskAt + 4;
+        byte[] payload = new byte[(int) length];
+        for (var i = 0; i < payload.length; i++) {
+            payload[i] = (byte) (in.get(payloadAt + i) ^ in.get(maskAt + (i & 3)));
+        }
+        in.position(payloadAt + payload.length);
+
+        switch (opcode) {
+            case TEXT, BINARY, CONTINUATION -> {
+                if (!fin) {
+                    if (connection.fragments == null) {
+                        connection.fragments = new ByteArrayOutputStream();
+                    }
+                    connection.fragments.writeBytes(payload);
+                } else if (connection.fragments != null) {
+                    connection.fragments.writeBytes(payload);
+                    String message = connection.fragments.toString(StandardCharsets.UTF_8);
+                    connection.fragments = null;
+                    handle(connection, message);
+                } else {
+                    handle(connection, new String(payload, StandardCharsets.UTF_8));
+                }
+            }
+            case PING -> queue(connection, frame(PONG, payload));
+            case CLOSE -> {
+                queue(connection, frame(CLOSE, payload));
+                connection.closing = true;
+            }
+            case PONG -> { }
+            default -> close(connection);
+        }
+        return true;
+    }
+
+    /**
+     * Handle a message from a client
+     * @param connection the client
+     * @param message the message
+     */
+    private void handle(Connection connection, String message) {
+        received++;
+        lobby.handle(connection, message);
+    }
+
+    /**
+     * Send a text message to a client, written at the end of this turn of the loop
+     * @param connection the client
+     * @param message the message
+     */
+    void send(Connection connection, String message) {
+        if (connection.closing) return;
+        sent++;
+        queue(connection, frame(TEXT, message.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Close a client's connection once what has been queued for it is written
+     * @param connection the client
+     */
+    void close(Connection connection) {
+        if (connection.closing) return;
+        queue(connection, frame(CLOSE, new byte[0]));
+        connection.closing = true;
+    }
+
+    /**
+     * Build an unmasked frame, as sent by a server
+     * @param opcode the frame's opcode
+     * @param payload the payload
+     * @return the frame, ready to write
+     */
+    private static ByteBuffer frame(int opcode, byte[] payload) {
+        int header = payload.length < 126 ? 2 : payload.length <= 0xFFFF ? 4 : 10;
+        ByteBuffer frame = ByteBuffer.allocate(header + payload.length);
+        frame.put((byte) (0x80 | opcode));
+        if (header == 2) {
+            frame.put((byte) payload.length);
+        } else if (header == 4) {
+            frame.put((byte) 126).putShort((short) payload.length);
+        } else {
+            frame.put((byte) 127).putLong(payload.length);
+        }
+        return frame.put(payload).flip();
+    }
+
+    /**
+     * Queue bytes to write to a client at the end of this turn of the loop
+     * @param connection the client
+     * @param bytes the bytes
+     */
+    private void queue(Connection connection, ByteBuffer bytes) {
+        connection.out.addLast(bytes);
+        connection.pendingBytes += bytes.remaining();
+        if (!connection.dirty) {
+            connection.dirty = true;
+            dirty.add(connection);
+        }
+    }
+
+    /**
+     * Write the replies queued this turn of the loop
+     */
+    private void flushDirty() {
+        //Disconnecting a client can queue messages to the rest of its channel, so the list may grow as it is walked
+        for (var i = 0; i < dirty.size(); i++) {
+            Connection connection = dirty.get(i);
+            connection.dirty = false;
+            if (connection.key.isValid()) {
+                flush(connection);
+            }
+        }
+        dirty.clear();
+    }
+
+    /**
+     * Write as much as the socket will take, waiting to be writable for the rest, and disconnect clients which
+     * fall too far behind or have finished closing
+     * @param connection the client
+     */
+    private void flush(Connection connection) {
+        try {
+            while (!connection.out.isEmpty()) {
+                ByteBuffer next = connection.out.peekFirst();
+                connection.pendingBytes -= connection.socket.write(next);
+                if (next.hasRemaining()) break;
+                connection.out.removeFirst();
+            }
+        } catch (IOException e) {
+            disconnect(connection);
+            return;
+        }
+
+        if (connection.out.isEmpty()) {
+            if (connection.closing) {
+                disconnect(connection);
+                return;
+            }
+            connection.key.interestOps(SelectionKey.OP_READ);
+        } else if (connection.pendingBytes > MAX_PENDING) {
+            logger.warn("Disconnecting {}, who has fallen {} bytes behind", connection.nickname,
+                connection.pendingBytes);
+            disconnect(connection);
+        } else {
+            connection.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * Drop a client straight away and take them out of the game
+     * @param connection the client
+     */
+    private void disconnect(Connection connection) {
+        if (!connection.key.isValid()) return;
+        connection.key.cancel();
+        try {
+            connection.socket.close();
+        } catch (IOException e) {
+            logger.debug("Unable to close socket: {}", e.getMessage());
+        }
+        connection.closing = true;
+        connections--;
+        lobby.disconnected(connection);
+    }
+}
@@ -0,0 +1,79 @@
+package uk.ac.soton.comp1206.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import uk.ac.soton.comp1206.game.GamePiece;
+
+/**
+ * A channel on the LocalServer: the players in it, its host, and the pieces dealt in its game. Every player in the
+ * channel is dealt the same sequence of pieces, each at their own pace.
+ */
+class ServerChannel {
+
+    /**
+     * Lives each player starts a game with
+     */
+    static final int STARTING_LIVES = 3;
+
+    /**
+     * The channel's name
+     */
+    final String name;
+
+    /**
+     * The players in the channel, in the order they joined
+     */
+    final List<Connection> members = new ArrayList<>();
+
+    /**
+     * The player who can start the game
+     */
+    Connection host;
+
+    /**
+     * Whether the game has started
+     */
+    boolean started;
+
+    /**
+     * Deals the channel's pieces
+     */
+    private final SplittableRandom random;
+
+    /**
+     * The pieces dealt so far, shared by every player
+     */
+    private int[] pieces = new int[64];
+
+    /**
+     * Number of pieces in the sequence so far
+     */
+    private int generated;
+
+    /**
+     * Create a channel
+     * @param name the channel's name
+     * @param seed seed for the channel's pieces
+     */
+    ServerChannel(String name, long seed) {
+        this.name = name;
+        this.random = new SplittableRandom(seed);
+    }
+
+    /**
+     * Get a piece from the channel's sequence, extending the sequence if no player has got this far yet
+     * @param index position in the sequence
+     * @return the piece number
+     */
+    int piece(int index) {
+        while (generated <= index) {
+            if (generated == pieces.length) {
+                pieces = Arrays.copyOf(pieces, pieces.length * 2);
+            }
+            pieces[generated++] = random.nextInt(GamePiece.PIECES);
+        }
+        return pieces[index];
+    }
+}
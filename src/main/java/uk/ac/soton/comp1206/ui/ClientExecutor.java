@@ -0,0 +1,154 @@
+package uk.ac.soton.comp1206.ui;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Runs the client's background work, so the number of threads stays the same however many scenes are loaded. Timed
+ * tasks, such as the game timer, the heartbeat and polling the server, share one scheduler thread. Work which blocks,
+ * such as writing to or connecting to the server, runs on the background executor, which uses a virtual thread for
+ * each task when the JVM has them and a pool of reused threads otherwise.
+ *
+ * Tasks scheduled for a scene are cancelled when the GameWindow loads the next one. Everything stops when the
+ * window closes.
+ */
+public class ClientExecutor {
+
+    private static final Logger logger = LogManager.getLogger(ClientExecutor.class);
+
+    /**
+     * Runs the timed tasks
+     */
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    /**
+     * Runs the work which blocks
+     */
+    private final ExecutorService background;
+
+    /**
+     * Tasks scheduled for the current scene, cancelled when the scene changes
+     */
+    private final Set<ScheduledFuture<?>> sceneTasks = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Create the scheduler and background executor. Their threads are daemons, so they do not stop the application
+     * from exiting.
+     */
+    public ClientExecutor() {
+        scheduler = new ScheduledThreadPoolExecutor(1, daemonThreads("client-scheduler"));
+        // Cancelled tasks are removed straight away rather than left in the queue until they were due
+        scheduler.setRemoveOnCancelPolicy(true);
+
+        ExecutorService virtual = newVirtualThreadExecutor();
+        if (virtual != null) {
+            logger.info("Background work runs on virtual threads");
+            background = virtual;
+        } else {
+            background = Executors.newCachedThreadPool(daemonThreads("client-background"));
+        }
+    }
+
+    /**
+     * Create an executor which runs each task on a new virtual thread. Virtual threads are looked up by reflection,
+     * so this still compiles and runs on Java 17, which does not have them.
+     * @return the executor, or null if the JVM does not have virtual threads
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Create a factory for numbered daemon threads
+     * @param name prefix of the thread names
+     * @return the factory
+     */
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Get the scheduler shared by every timed task. Tasks scheduled directly on it are not cancelled when the
+     * scene changes, so they must be cancelled by whatever scheduled them.
+     * @return the scheduler
+     */
+    public ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Get the executor for work which blocks
+     * @return the background executor
+     */
+    public ExecutorService getBackground() {
+        return background;
+    }
+
+    /**
+     * Run a task repeatedly for as long as the current scene is shown
+     * @param task the task, which should not block
+     * @param initialDelay delay before the first run
+     * @param delay delay between the end of one run and the start of the next
+     * @param unit unit of the delays
+     * @return the scheduled task, which can be cancelled sooner
+     */
+    public ScheduledFuture<?> scheduleForScene(Runnable task, long initialDelay, long delay, TimeUnit unit) {
+        ScheduledFuture<?> future = scheduler.scheduleWithFixedDelay(task, initialDelay, delay, unit);
+        sceneTasks.add(future);
+        return future;
+    }
+
+    /**
+     * Run a task once after a delay, unless the scene changes first
+     * @param task the task, which should not block
+     * @param delay delay before it runs
+     * @param unit unit of the delay
+     * @return the scheduled task, which can be cancelled sooner
+     */
+    public ScheduledFuture<?> scheduleForScene(Runnable task, long delay, TimeUnit unit) {
+        //Forget tasks which have already run, so a scene rescheduling itself does not build up a list of them
+        sceneTasks.removeIf(ScheduledFuture::isDone);
+        ScheduledFuture<?> future = scheduler.schedule(task, delay, unit);
+        sceneTasks.add(future);
+        return future;
+    }
+
+    /**
+     * Cancel every task scheduled for the scene being left
+     */
+    public void cancelSceneTasks() {
+        for (ScheduledFuture<?> task : sceneTasks) {
+            task.cancel(false);
+        }
+        sceneTasks.clear();
+        logger.debug("{} threads running", Thread.activeCount());
+    }
+
+    /**
+     * Cancel every task and stop the threads
+     */
+    public void shutdown() {
+        cancelSceneTasks();
+        scheduler.shutdownNow();
+        background.shutdownNow();
+    }
+}
@@ -1,8 +1,11 @@
 package uk.ac.soton.comp1206.ui;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Map;
 import javafx.application.Platform;
 import javafx.scene.Scene;
+import javafx.scene.control.Alert;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
@@ -18,8 +21,10 @@ import uk.ac.soton.comp1206.scene.InstructionsScene;
 import uk.ac.soton.comp1206.scene.LobbyScene;
 import uk.ac.soton.comp1206.scene.MenuScene;
 import uk.ac.soton.comp1206.scene.MultiplayerScene;
+import uk.ac.soton.comp1206.scene.ReplayScene;
 import uk.ac.soton.comp1206.scene.ScoresScene;
 import uk.ac.soton.comp1206.scene.StartupScene;
+import uk.ac.soton.comp1206.server.LocalServer;
 
 /**
  * The GameWindow is the single window for the game where everything takes place. To move between screens in the game,
@@ -32,6 +37,16 @@ public class GameWindow {
 
     private static final Logger logger = LogManager.getLogger(GameWindow.class);
 
+    /**
+     * System property giving the URL of the server to connect to, or "local" to run a LocalServer in the game
+     */
+    public static final String SERVER_PROPERTY = "tetrecs.server";
+
+    /**
+     * The TetrECS server
+     */
+    public static final String DEFAULT_SERVER = "ws://ofb-labs.soton.ac.uk:9700";
+
     private final int width;
     private final int height;
 
@@ -42,6 +57,16 @@ public class GameWindow {
 
     final Communicator communicator;
 
+    /**
+     * Runs the background work of every scene and of the communicator
+     */
+    private final ClientExecutor executor = new ClientExecutor();
+
+    /**
+     * Server run in the game when tetrecs.server is "local", otherwise null
+     */
+    private LocalServer localServer;
+
     /**
      * Create a new GameWindow attached to the given stage with the specified width and height
      * @param stage stage
@@ -65,12 +90,44 @@ public class GameWindow {
 
         //Setup communicator
         logger.info("Connecting to the server from {}", this.getClass().getName());
-        communicator = new Communicator("ws://ofb-labs.soton.ac.uk:9700");
+        String server = serverUrl();
+        communicator = new Communicator(server, executor.getScheduler(), executor.getBackground());
+        if (server != null && !communicator.isConnected()) {
+            //The communicator keeps trying in the background, so single player games can still be played meanwhile
+            Alert error = new Alert(Alert.AlertType.ERROR, "Unable to communicate with the TetrECS server\n\n"
+                + "Please ensure you are connected to the VPN. The game will keep trying to connect in the background.");
+            error.show();
+        }
 
         //Go to menu
         startStartupScene();
     }
 
+    /**
+     * Get the server to connect to, from the tetrecs.server system property. "local" starts a LocalServer in this
+     * process and connects to that. If the local server cannot start, the error is shown and the game stays
+     * offline rather than connecting to the TetrECS server instead.
+     * @return the web socket URL of the server, or null to stay disconnected
+     */
+    private String serverUrl() {
+        String server = System.getProperty(SERVER_PROPERTY, DEFAULT_SERVER);
+        if (!server.equals("local")) {
+            return server;
+        }
+
+        try {
+            localServer = new LocalServer(0, System.nanoTime());
+            localServer.start();
+            return localServer.getUrl();
+        } catch (IOException e) {
+            logger.error("Unable to start the local server: {}", e.getMessage());
+            Alert error = new Alert(Alert.AlertType.ERROR, "Unable to start the local server\n\n" + e.getMessage()
+                + "\n\nMultiplayer is unavailable until the game is restarted.");
+            error.show();
+            return null;
+        }
+    }
+
     /**
      * Setup the font and any other resources we need
      */
@@ -122,6 +179,12 @@ public class GameWindow {
      */
     public void startMultiplayerGame() { loadScene(new MultiplayerScene(this)); }
 
+    /**
+     * Display the replay of a recorded game
+     * @param file the replay file
+     */
+    public void startReplay(Path file) { loadScene(new ReplayScene(this, file)); }
+
     /**
      * Display the startup animation
      */
@@ -136,6 +199,11 @@ public class GameWindow {
         stage.setMinHeight(height + 20);
         stage.setOnCloseRequest(event -> {
             communicator.send("QUIT");
+            communicator.close();
+            if (localServer != null) {
+                localServer.stop();
+            }
+            executor.shutdown();
             App.getInstance().shutdown();
         });
     }
@@ -167,11 +235,16 @@ public class GameWindow {
     }
 
     /**
-     * When switching scenes, perform any cleanup needed, such as removing previous listeners
+     * When switching scenes, perform any cleanup needed, such as removing previous listeners and cancelling the
+     * previous scene's scheduled tasks
      */
     public void cleanup() {
         logger.info("Clearing up previous scene");
+        if (currentScene != null) {
+            currentScene.cleanup();
+        }
         communicator.clearListeners();
+        executor.cancelSceneTasks();
     }
 
     /**
@@ -205,4 +278,12 @@ public class GameWindow {
     public Communicator getCommunicator() {
         return communicator;
     }
+
+    /**
+     * Get the executor for background work. Tasks scheduled with scheduleForScene stop when the scene changes.
+     * @return executor
+     */
+    public ClientExecutor getExecutor() {
+        return executor;
+    }
 }
@@ -0,0 +1,111 @@
+package uk.ac.soton.comp1206.utility;
+
+import java.util.ArrayList;
+import javafx.collections.ObservableListBase;
+
+/**
+ * An observable list holding at most a fixed number of items, kept in a ring buffer. Adding to a full list drops
+ * the oldest item, so a list of chat messages stays the same size however long a lobby runs. Each add is reported
+ * to listeners as a single change, so a ListView showing the list only updates the cells affected.
+ *
+ * Like any list backing a ListView, it must only be changed on the FX thread.
+ *
+ * @param <E> the type of item
+ */
+public class RingBufferList<E> extends ObservableListBase<E> {
+
+    /**
+     * The items, oldest at head
+     */
+    private final Object[] items;
+
+    /**
+     * Position of the oldest item
+     */
+    private int head;
+
+    /**
+     * Number of items held
+     */
+    private int size;
+
+    /**
+     * Create an empty list
+     * @param capacity the most items held before the oldest are dropped
+     */
+    public RingBufferList(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1: " + capacity);
+        }
+        items = new Object[capacity];
+    }
+
+    /**
+     * Get an item
+     * @param index position in the list, 0 being the oldest item
+     * @return the item
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        return (E) items[(head + index) % items.length];
+    }
+
+    /**
+     * Get the number of items held
+     * @return the size
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the most items held before the oldest are dropped
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return items.length;
+    }
+
+    /**
+     * Add an item to the end of the list, dropping the oldest item if the list is full
+     * @param item the item
+     * @return true
+     */
+    @Override
+    public boolean add(E item) {
+        beginChange();
+        if (size == items.length) {
+            E oldest = get(0);
+            items[head] = null;
+            head = (head + 1) % items.length;
+            size--;
+            nextRemove(0, oldest);
+        }
+        items[(head + size) % items.length] = item;
+        size++;
+        nextAdd(size - 1, size);
+        endChange();
+        return true;
+    }
+
+    /**
+     * Remove every item
+     */
+    @Override
+    public void clear() {
+        if (size == 0) return;
+        beginChange();
+        nextRemove(0, new ArrayList<>(this));
+        for (var i = 0; i < size; i++) {
+            items[(head + i) % items.length] = null;
+        }
+        head = 0;
+        size = 0;
+        endChange();
+    }
+}